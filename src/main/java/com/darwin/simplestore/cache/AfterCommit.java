@@ -0,0 +1,37 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helper deferring cache invalidations until the current transaction commits.
+ * Invalidating before the commit would let a concurrent read cache the old row again
+ */
+final class AfterCommit {
+    private AfterCommit() { }
+
+    /**
+     * Run an action once the current transaction commits, or right away outside a transaction.
+     * The action does not run if the transaction is rolled back
+     * @param action The action to run
+     */
+    static void run(final Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
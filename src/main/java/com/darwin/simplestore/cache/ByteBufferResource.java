@@ -0,0 +1,147 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Resource reading its content from a byte buffer, which may be outside the heap.
+ * Every read works on its own view of the buffer, so the resource can be read concurrently
+ */
+public class ByteBufferResource extends AbstractResource {
+    private final ByteBuffer buffer;
+    private final String description;
+
+    /**
+     * Create the resource
+     * @param buffer The buffer holding the content between its position and limit
+     * @param description A description of the content
+     */
+    public ByteBufferResource(final ByteBuffer buffer, final String description) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.description = description;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        final ByteBuffer view = buffer.duplicate();
+
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(final byte[] target, final int offset, final int length) {
+                if (length == 0) {
+                    return 0;
+                }
+
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+
+                final int count = Math.min(length, view.remaining());
+                view.get(target, offset, count);
+
+                return count;
+            }
+
+            @Override
+            public long skip(final long count) {
+                // Skipping only moves the position, so ranges are served without reading the skipped content
+                final int skipped = (int) Math.max(0, Math.min(count, view.remaining()));
+                view.position(view.position() + skipped);
+
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    @Override
+    public ReadableByteChannel readableChannel() {
+        final ByteBuffer view = buffer.duplicate();
+
+        return new ReadableByteChannel() {
+            private boolean open = true;
+
+            @Override
+            public int read(final ByteBuffer target) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+
+                final int length = Math.min(view.remaining(), target.remaining());
+                target.put(view.slice(view.position(), length));
+                view.position(view.position() + length);
+
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+    }
+
+    /**
+     * Write the content to a channel straight from the buffer, without going through an input stream
+     * @param channel The channel to write to, which is not closed
+     * @return The number of bytes written
+     * @throws IOException If writing to the channel fails
+     */
+    public long writeTo(final WritableByteChannel channel) throws IOException {
+        final ByteBuffer view = buffer.duplicate();
+        long written = 0;
+
+        while (view.hasRemaining()) {
+            written += channel.write(view);
+        }
+
+        return written;
+    }
+
+    @Override
+    public byte[] getContentAsByteArray() {
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.duplicate().get(content);
+
+        return content;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Byte buffer resource [" + description + "]";
+    }
+}
@@ -0,0 +1,36 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+/**
+ * Message converter writing cached image content to the response straight from its buffer,
+ * instead of copying it through an input stream. Range requests are still served by the resource region converter
+ */
+public class ByteBufferResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+    @Override
+    protected boolean supports(final Class<?> clazz) {
+        return ByteBufferResource.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(final Class<?> clazz, final MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected void writeContent(final Resource resource, final HttpOutputMessage outputMessage) throws IOException {
+        // The channel is not closed, since the response stream is closed by the container
+        ((ByteBufferResource) resource).writeTo(Channels.newChannel(outputMessage.getBody()));
+    }
+}
@@ -0,0 +1,144 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Function;
+
+/**
+ * Cache of image content, keeping the bytes in direct buffers outside the Java heap.
+ * The cache is bounded by the total size of the content and evicts by frequency and recency of use.
+ * Hit, miss and eviction counters are published as the "images" cache metrics, and the size of the
+ * cached content as the "simplestore.cache.images.resident" gauge.
+ * Direct buffers are limited by the -XX:MaxDirectMemorySize JVM flag, which defaults to the maximum heap size.
+ * The cache is never allowed more than half of that limit, leaving the rest to the I/O buffers of the server
+ */
+@Slf4j
+@Component
+public class ImageContentCache {
+    private final Cache<String, ByteBuffer> contents;
+
+    /**
+     * Create the cache
+     * @param meterRegistry The registry to publish the cache metrics to
+     * @param maximumSize The maximum total size of the cached content
+     */
+    public ImageContentCache(final MeterRegistry meterRegistry,
+                             @Value("${simplestore.cache.images.maximum-size:512MB}") final DataSize maximumSize) {
+        final long directMemoryLimit = directMemoryLimit();
+        final long maximumWeight = maximumWeight(maximumSize.toBytes(), directMemoryLimit);
+
+        if (maximumWeight < maximumSize.toBytes()) {
+            log.warn("Image cache size of {} bytes lowered to {} bytes, half the direct memory limit. " +
+                    "Raise the limit with -XX:MaxDirectMemorySize to use the configured size", maximumSize.toBytes(), maximumWeight);
+        }
+
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((String key, ByteBuffer content) -> content.capacity())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "images");
+        Gauge.builder("simplestore.cache.images.resident", this, ImageContentCache::residentBytes)
+                .description("The size of the image content kept in the cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get image content, loading it into the cache if it is not cached.
+     * Exceptions thrown while loading are propagated and nothing is cached
+     * @param key The key of the content
+     * @param loader Function returning a resource to read the content from
+     * @return A resource reading the cached content
+     */
+    public Resource get(final String key, final Function<String, Resource> loader) {
+        return new ByteBufferResource(contents.get(key, k -> read(loader.apply(k))), key);
+    }
+
+    /**
+     * Remove content from the cache
+     * @param key The key of the content
+     */
+    public void invalidate(final String key) {
+        contents.invalidate(key);
+    }
+
+    /**
+     * Get the total size of the cached content
+     * @return The size in bytes
+     */
+    public long residentBytes() {
+        // Apply pending writes and removals, so the size is exact
+        contents.cleanUp();
+
+        return contents.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    /**
+     * Get the size the cache may use, within half the direct memory limit
+     * @param maximumSize The configured maximum size of the cache
+     * @param directMemoryLimit The maximum size of the direct buffers, or a negative value if it is unknown
+     * @return The maximum size the cache may use
+     */
+    static long maximumWeight(final long maximumSize, final long directMemoryLimit) {
+        return directMemoryLimit < 0 ? maximumSize : Math.min(maximumSize, directMemoryLimit / 2);
+    }
+
+    /**
+     * Read the maximum size of the direct buffers of the JVM
+     * @return The direct memory limit in bytes, or -1 if it cannot be read on this JVM
+     */
+    private static long directMemoryLimit() {
+        try {
+            final HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            final long limit = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+
+            // Without the flag, direct buffers are limited to the maximum heap size
+            return limit > 0 ? limit : Runtime.getRuntime().maxMemory();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read content into a direct buffer
+     * @param resource The resource to read
+     * @return A read-only buffer holding the content
+     */
+    private static ByteBuffer read(final Resource resource) {
+        try (ReadableByteChannel channel = resource.readableChannel()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.toIntExact(resource.contentLength()));
+
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the content ends
+            }
+
+            return buffer.flip().asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
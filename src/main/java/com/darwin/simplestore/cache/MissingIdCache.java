@@ -0,0 +1,148 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the ids which were looked up and not found, so repeated lookups of missing
+ * resources are answered without a query. Ids are removed from the cache when a resource is created with them.
+ * Hit, miss and eviction counters are published as the "missingIds" cache metrics
+ */
+@Component
+public class MissingIdCache {
+    /**
+     * The types of resources whose missing ids are cached
+     */
+    public enum ResourceType {
+        PRODUCT,
+        CART,
+        ORDER
+    }
+
+    private final Cache<MissingId, Boolean> missingIds;
+    private final Map<ResourceType, AtomicLong> generations = new EnumMap<>(ResourceType.class);
+
+    /**
+     * Create the cache
+     * @param meterRegistry The registry to publish the cache metrics to
+     * @param maximumSize The maximum number of cached ids
+     * @param timeToLive How long an id stays cached after it was not found
+     */
+    public MissingIdCache(final MeterRegistry meterRegistry,
+                          @Value("${simplestore.cache.missing-ids.maximum-size:100000}") final long maximumSize,
+                          @Value("${simplestore.cache.missing-ids.ttl:30s}") final Duration timeToLive) {
+        this.missingIds = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        for (final ResourceType resourceType : ResourceType.values()) {
+            generations.put(resourceType, new AtomicLong());
+        }
+
+        CaffeineCacheMetrics.monitor(meterRegistry, missingIds, "missingIds");
+    }
+
+    /**
+     * Check whether the id of a resource is known to be missing
+     * @param resourceType The type of the resource
+     * @param id The id of the resource
+     * @return Whether the id was recently not found
+     */
+    public boolean isMissing(final ResourceType resourceType, final Long id) {
+        return missingIds.getIfPresent(new MissingId(resourceType, id)) != null;
+    }
+
+    /**
+     * Find a resource, unless its id is known to be missing.
+     * If the loader does not find the resource, its id is cached as missing, unless a resource
+     * of the same type was created while the loader was running
+     * @param resourceType The type of the resource
+     * @param id The id of the resource
+     * @param loader Supplier loading the resource from the repository
+     * @param <T> The type of the loaded value
+     * @return The loaded value, or empty if the resource does not exist
+     */
+    public <T> Optional<T> find(final ResourceType resourceType, final Long id, final Supplier<Optional<T>> loader) {
+        final MissingId missingId = new MissingId(resourceType, id);
+
+        if (missingIds.getIfPresent(missingId) != null) {
+            return Optional.empty();
+        }
+
+        final AtomicLong generation = generations.get(resourceType);
+        final long loadedGeneration = generation.get();
+        final Optional<T> result = loader.get();
+
+        if (result.isEmpty() && generation.get() == loadedGeneration) {
+            missingIds.put(missingId, Boolean.TRUE);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check whether a resource exists, unless its id is known to be missing
+     * @param resourceType The type of the resource
+     * @param id The id of the resource
+     * @param loader Supplier checking the existence of the resource in the repository
+     * @return Whether the resource exists
+     */
+    public boolean exists(final ResourceType resourceType, final Long id, final BooleanSupplier loader) {
+        return find(resourceType, id, () -> loader.getAsBoolean() ? Optional.of(Boolean.TRUE) : Optional.empty()).isPresent();
+    }
+
+    /**
+     * Remove an id from the cache, once a resource was created with it.
+     * Inside a transaction the id is removed once the transaction commits
+     * @param resourceType The type of the resource
+     * @param id The id of the resource
+     */
+    public void invalidate(final ResourceType resourceType, final Long id) {
+        if (id == null) {
+            return;
+        }
+
+        AfterCommit.run(() -> {
+            generations.get(resourceType).incrementAndGet();
+            missingIds.invalidate(new MissingId(resourceType, id));
+        });
+    }
+
+    /**
+     * Remove all the ids of a resource type from the cache, once resources were created in bulk.
+     * Inside a transaction the ids are removed once the transaction commits
+     * @param resourceType The type of the resources
+     */
+    public void invalidateAll(final ResourceType resourceType) {
+        AfterCommit.run(() -> {
+            generations.get(resourceType).incrementAndGet();
+            missingIds.asMap().keySet().removeIf(missingId -> missingId.resourceType() == resourceType);
+        });
+    }
+
+    /**
+     * The key of a missing id
+     * @param resourceType The type of the resource
+     * @param id The id of the resource
+     */
+    private record MissingId(ResourceType resourceType, Long id) { }
+}
@@ -0,0 +1,229 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache of product DTOs, looked up by id or by name.
+ * Products loaded by name are not cached if a product was invalidated while they were loaded,
+ * since the loaded value may predate the change.
+ * Hit, miss and eviction counters are published as the "products" cache metrics
+ */
+@Component
+public class ProductCache {
+    private final Cache<Long, ProductDto> productsById;
+    private final Cache<String, Long> idsByName;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create the cache
+     * @param meterRegistry The registry to publish the cache metrics to
+     * @param maximumSize The maximum number of cached products
+     * @param timeToLive How long a product stays cached after it was loaded
+     */
+    public ProductCache(final MeterRegistry meterRegistry,
+                        @Value("${simplestore.cache.products.maximum-size:10000}") final long maximumSize,
+                        @Value("${simplestore.cache.products.ttl:10m}") final Duration timeToLive) {
+        this.productsById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        this.idsByName = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, productsById, "products");
+    }
+
+    /**
+     * Get a product by its id, loading it if it is not cached.
+     * Exceptions thrown by the loader are propagated and nothing is cached
+     * @param id The id of the product
+     * @param loader Function loading the product from the repository
+     * @return The product DTO
+     */
+    public ProductDto getById(final Long id, final Function<Long, ProductDto> loader) {
+        final ProductDto productDto = productsById.get(id, loader);
+        idsByName.put(productDto.name(), productDto.id());
+
+        return productDto;
+    }
+
+    /**
+     * Get multiple products by their ids, loading all the products which are not cached at once.
+     * Products the loader does not return are left out of the result, and nothing is cached for them.
+     * The loaded products are only cached if no product was invalidated while they were loaded,
+     * since the bulk load of the cache is not atomic with its evictions
+     * @param ids The ids of the products
+     * @param loader Function loading the products which are not cached from the repository, mapped by id
+     * @return The product DTOs found, mapped by id, in the order of the ids
+     */
+    public Map<Long, ProductDto> getAllById(final Collection<Long> ids,
+                                            final Function<Set<? extends Long>, Map<Long, ProductDto>> loader) {
+        final Map<Long, ProductDto> cached = productsById.getAllPresent(ids);
+        final Set<Long> missing = new LinkedHashSet<>(ids);
+        missing.removeAll(cached.keySet());
+
+        final Map<Long, ProductDto> loaded = missing.isEmpty() ? Map.of() : load(missing, loader);
+        final Map<Long, ProductDto> products = new LinkedHashMap<>();
+
+        for (final Long id : ids) {
+            final ProductDto productDto = cached.containsKey(id) ? cached.get(id) : loaded.get(id);
+
+            if (productDto != null) {
+                products.put(id, productDto);
+            }
+        }
+
+        return products;
+    }
+
+    /**
+     * Load products which are not cached, and cache them unless a product was invalidated meanwhile
+     * @param ids The ids of the products
+     * @param loader Function loading the products from the repository, mapped by id
+     * @return The loaded product DTOs, mapped by id
+     */
+    private Map<Long, ProductDto> load(final Set<Long> ids,
+                                       final Function<Set<? extends Long>, Map<Long, ProductDto>> loader) {
+        final long loadedGeneration = generation.get();
+        final Map<Long, ProductDto> loaded = loader.apply(Collections.unmodifiableSet(ids));
+
+        if (generation.get() == loadedGeneration) {
+            loaded.values().forEach(this::put);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Get a product by its name, loading it if it is not cached.
+     * Exceptions thrown by the loader are propagated and nothing is cached.
+     * The loaded product is only cached if no product was invalidated while it was loaded
+     * @param name The name of the product
+     * @param loader Function loading the product from the repository
+     * @return The product DTO
+     */
+    public ProductDto getByName(final String name, final Function<String, ProductDto> loader) {
+        final Long id = idsByName.getIfPresent(name);
+
+        if (id != null) {
+            final ProductDto cached = productsById.getIfPresent(id);
+
+            // The product may have been renamed since the name was cached
+            if (cached != null && name.equals(cached.name())) {
+                return cached;
+            }
+        }
+
+        final long loadedGeneration = generation.get();
+        final ProductDto productDto = loader.apply(name);
+
+        if (generation.get() == loadedGeneration) {
+            put(productDto);
+        }
+
+        return productDto;
+    }
+
+    /**
+     * Get a product if it is cached
+     * @param id The id of the product
+     * @return The product DTO, or null if it is not cached
+     */
+    public ProductDto getIfPresent(final Long id) {
+        return productsById.getIfPresent(id);
+    }
+
+    /**
+     * Add a product to the cache
+     * @param productDto The product DTO
+     */
+    public void put(final ProductDto productDto) {
+        if (productDto.id() == null || productDto.name() == null) {
+            return;
+        }
+
+        productsById.put(productDto.id(), productDto);
+        idsByName.put(productDto.name(), productDto.id());
+    }
+
+    /**
+     * Remove a product from the cache.
+     * Inside a transaction the product is removed once the transaction commits
+     * @param id The id of the product
+     */
+    public void invalidate(final Long id) {
+        if (id == null) {
+            return;
+        }
+
+        AfterCommit.run(() -> evict(id));
+    }
+
+    /**
+     * Remove a product from the cache.
+     * Inside a transaction the product is removed once the transaction commits
+     * @param name The name of the product
+     */
+    public void invalidateByName(final String name) {
+        if (name == null) {
+            return;
+        }
+
+        AfterCommit.run(() -> evict(idsByName.asMap().remove(name)));
+    }
+
+    /**
+     * Remove multiple products from the cache.
+     * Inside a transaction the products are removed once the transaction commits
+     * @param ids The ids of the products
+     */
+    public void invalidateAll(final Collection<Long> ids) {
+        final List<Long> evicted = List.copyOf(ids);
+
+        AfterCommit.run(() -> evicted.forEach(this::evict));
+    }
+
+    /**
+     * Remove a product and its name from the cache
+     * @param id The id of the product, may be null
+     */
+    private void evict(final Long id) {
+        // Products loaded by name while this runs may be stale, even if the product was not cached
+        generation.incrementAndGet();
+
+        if (id == null) {
+            return;
+        }
+
+        final ProductDto removed = productsById.asMap().remove(id);
+
+        if (removed != null && removed.name() != null) {
+            idsByName.invalidate(removed.name());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the number of products, in total and per category.
+ * Counts are dropped whenever the products change, and expire after a while
+ * so that writes made by other instances are eventually picked up as well
+ */
+@Component
+public class ProductCountCache {
+    private static final String ALL_CATEGORIES = "*";
+
+    private final ProductRepository productRepository;
+    private final long timeToLiveNanos;
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create the cache
+     * @param productRepository The repository to count the products in
+     * @param timeToLive How long a count is served before it is recomputed
+     */
+    public ProductCountCache(final ProductRepository productRepository,
+                             @Value("${simplestore.cache.product-counts.ttl:60s}") final Duration timeToLive) {
+        this.productRepository = productRepository;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Get the number of products
+     * @param category The category to count the products of, or null to count all the products
+     * @return The number of products
+     */
+    public long count(final ProductCategory category) {
+        final String key = category == null ? ALL_CATEGORIES : category.name();
+        final long currentGeneration = generation.get();
+        final CachedCount cached = counts.get(key);
+
+        if (cached != null && cached.generation() == currentGeneration
+                && System.nanoTime() - cached.loadedAt() < timeToLiveNanos) {
+            return cached.count();
+        }
+
+        final long count = category == null ? productRepository.count() : productRepository.countByCategory(category);
+
+        // A write that happened while counting makes the result unreliable, so it is not kept
+        if (generation.get() == currentGeneration) {
+            counts.put(key, new CachedCount(count, currentGeneration, System.nanoTime()));
+        }
+
+        return count;
+    }
+
+    /**
+     * Drop all the cached counts, after the products have changed.
+     * Inside a transaction the counts are dropped once the transaction commits
+     */
+    public void invalidate() {
+        AfterCommit.run(() -> {
+            generation.incrementAndGet();
+            counts.clear();
+        });
+    }
+
+    /**
+     * A count along with the state it was computed in
+     * @param count The number of products
+     * @param generation The generation of the cache when the count was computed
+     * @param loadedAt The time the count was computed at, in nanoseconds
+     */
+    private record CachedCount(long count, long generation, long loadedAt) { }
+}
@@ -0,0 +1,339 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.repositories.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter of the product names, used to skip the name existence query for names which were never used.
+ * The filter is loaded once the application is ready, and until then every name is looked up in the repository.
+ * Names are added as products are created or renamed. The bits of deleted or renamed names cannot be cleared,
+ * so they only cause false positives, and the filter is rebuilt from the repository when such names accumulate.
+ * The filter may miss a name created while it is rebuilt, so the unique index on the names stays the final check.
+ * The outcomes of the checks are counted by the "simplestore.products.name-filter.checks" counters,
+ * and the observed false positive rate is published by the "simplestore.products.name-filter.false-positive-rate" gauge
+ */
+@Slf4j
+@Component
+public class ProductNameFilter {
+    private static final String CHECKS_METER = "simplestore.products.name-filter.checks";
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long expectedNames;
+    private final double falsePositiveProbability;
+    private final AtomicLong removedNames = new AtomicLong();
+    private final Counter absentChecks;
+    private final Counter presentChecks;
+    private final Counter falsePositiveChecks;
+
+    private volatile Bits bits;
+    private volatile Bits rebuilt;
+
+    /**
+     * Create the filter. It stays empty until it is loaded
+     * @param productRepository The product repository the names are loaded from
+     * @param transactionManager The transaction manager used to stream the names
+     * @param meterRegistry The registry to publish the check counters to
+     * @param expectedNames The minimum number of names the filter is sized for
+     * @param falsePositiveProbability The false positive probability the filter is sized for
+     */
+    public ProductNameFilter(final ProductRepository productRepository,
+                             final PlatformTransactionManager transactionManager,
+                             final MeterRegistry meterRegistry,
+                             @Value("${simplestore.products.name-filter.expected-names:100000}") final long expectedNames,
+                             @Value("${simplestore.products.name-filter.false-positive-probability:0.01}") final double falsePositiveProbability) {
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.expectedNames = expectedNames;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.absentChecks = checksCounter(meterRegistry, "absent");
+        this.presentChecks = checksCounter(meterRegistry, "present");
+        this.falsePositiveChecks = checksCounter(meterRegistry, "false-positive");
+
+        Gauge.builder("simplestore.products.name-filter.false-positive-rate", this, ProductNameFilter::falsePositiveRate)
+                .description("The share of the unused names checked which the filter could not rule out")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether a product name is used, only running the lookup if the filter cannot rule the name out
+     * @param name The product name
+     * @param lookup Predicate checking whether the name is used in the repository
+     * @return Whether the name is used
+     */
+    public boolean exists(final String name, final Predicate<String> lookup) {
+        final Bits current = bits;
+
+        if (current != null && !current.mightContain(hash(name))) {
+            absentChecks.increment();
+
+            return false;
+        }
+
+        final boolean exists = lookup.test(name);
+
+        if (current != null) {
+            (exists ? presentChecks : falsePositiveChecks).increment();
+        }
+
+        return exists;
+    }
+
+    /**
+     * Add a product name to the filter. Names are added right away, not after the transaction commits,
+     * so a name whose creation is rolled back only causes false positives
+     * @param name The product name
+     */
+    public void put(final String name) {
+        final long hash = hash(name);
+        final Bits current = bits;
+        final Bits building = rebuilt;
+
+        if (current != null) {
+            current.put(hash);
+        }
+
+        if (building != null) {
+            building.put(hash);
+        }
+    }
+
+    /**
+     * Record that a product name is no longer used. The name stays in the filter until it is rebuilt
+     * @param name The product name
+     */
+    public void remove(final String name) {
+        removedNames.incrementAndGet();
+    }
+
+    /**
+     * Load the filter once the application is ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Product name filter could not be loaded, names will be looked up in the repository", e);
+        }
+    }
+
+    /**
+     * Rebuild the filter from the repository if names were removed since it was built,
+     * or if it holds more names than it was sized for
+     */
+    @Scheduled(
+            initialDelayString = "${simplestore.products.name-filter.rebuild-delay:1h}",
+            fixedDelayString = "${simplestore.products.name-filter.rebuild-delay:1h}"
+    )
+    public void rebuildIfStale() {
+        final Bits current = bits;
+
+        if (current == null || removedNames.get() > 0 || current.size() > current.capacity()) {
+            load();
+        }
+    }
+
+    /**
+     * Build a new filter from all the product names, and replace the current one.
+     * Names added while the filter is built are added to both filters
+     */
+    private synchronized void rebuild() {
+        final long removed = removedNames.get();
+        final long names = productRepository.count();
+        final Bits building = new Bits(Math.max(expectedNames, 2 * names), falsePositiveProbability);
+
+        rebuilt = building;
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<String> allNames = productRepository.streamAllNames()) {
+                    allNames.forEach(name -> building.put(hash(name)));
+                }
+            });
+
+            bits = building;
+            removedNames.addAndGet(-removed);
+        } finally {
+            rebuilt = null;
+        }
+
+        log.info("Product name filter loaded with {} names in {} bits", building.size(), building.bitCount());
+    }
+
+    /**
+     * Get the share of the checked names which were not used, but could not be ruled out by the filter
+     * @return The observed false positive rate
+     */
+    private double falsePositiveRate() {
+        final double falsePositives = falsePositiveChecks.count();
+        final double unused = falsePositives + absentChecks.count();
+
+        return unused == 0 ? 0.0 : falsePositives / unused;
+    }
+
+    /**
+     * Register the counter of a check outcome
+     * @param meterRegistry The meter registry
+     * @param outcome The outcome of the check
+     * @return The counter
+     */
+    private static Counter checksCounter(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder(CHECKS_METER)
+                .description("The number of product name checks")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hash a product name to 64 bits, using FNV-1a over the UTF-8 bytes followed by the MurmurHash3 finalizer
+     * @param name The product name
+     * @return The hash of the name
+     */
+    static long hash(final String name) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (final byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * The MurmurHash3 64 bit finalizer
+     * @param hash The value to mix
+     * @return The mixed value
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    /**
+     * The bits of a Bloom filter, safe to update concurrently.
+     * The bit indexes of a hash are derived from its two halves, using double hashing
+     */
+    static final class Bits {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private final AtomicLong size = new AtomicLong();
+
+        /**
+         * Create the bits of a filter sized for a number of names
+         * @param capacity The number of names the filter is sized for
+         * @param falsePositiveProbability The false positive probability at capacity
+         */
+        Bits(final long capacity, final double falsePositiveProbability) {
+            final double optimalBits = -capacity * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+            final int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(optimalBits / Long.SIZE)));
+
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount * Long.SIZE;
+            this.hashCount = (int) Math.max(1, Math.round((double) bitCount / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        /**
+         * Add a hash to the filter
+         * @param hash The hash of a name
+         */
+        void put(final long hash) {
+            for (int i = 0; i < hashCount; i++) {
+                final long index = index(hash, i);
+                final int word = (int) (index >>> 6);
+                final long mask = 1L << index;
+                long value;
+
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+
+            size.incrementAndGet();
+        }
+
+        /**
+         * Check whether a hash may have been added to the filter
+         * @param hash The hash of a name
+         * @return False if the hash was never added, true if it may have been
+         */
+        boolean mightContain(final long hash) {
+            for (int i = 0; i < hashCount; i++) {
+                final long index = index(hash, i);
+
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Get the bit index of a hash for one of the hash functions
+         * @param hash The hash of a name
+         * @param i The number of the hash function
+         * @return The index of the bit
+         */
+        private long index(final long hash, final int i) {
+            final long combined = (hash >>> 32) + i * ((hash & 0xffffffffL) | 1L);
+
+            return Long.remainderUnsigned(combined, bitCount);
+        }
+
+        /**
+         * Get the number of names added to the filter
+         * @return The number of names added
+         */
+        long size() {
+            return size.get();
+        }
+
+        /**
+         * Get the number of names the filter is sized for
+         * @return The capacity of the filter
+         */
+        long capacity() {
+            return capacity;
+        }
+
+        /**
+         * Get the number of bits of the filter
+         * @return The number of bits
+         */
+        long bitCount() {
+            return bitCount;
+        }
+    }
+}
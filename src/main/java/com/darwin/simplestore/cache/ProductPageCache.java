@@ -0,0 +1,166 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductFields;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PagedModel;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of serialized product listing pages, keyed by the normalized page request.
+ * Every product write bumps the catalog version, and the version of the categories it touched,
+ * so the pages read before the write are no longer looked up. Pages also expire after a while
+ * so that writes made by other instances are eventually picked up as well.
+ * Hit, miss and eviction counters are published as the "productPages" cache metrics
+ */
+@Component
+public class ProductPageCache {
+    private final ObjectMapper objectMapper;
+    private final Cache<PageKey, SerializedPage> pages;
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Map<ProductCategory, AtomicLong> categoryVersions = new EnumMap<>(ProductCategory.class);
+
+    /**
+     * Create the cache
+     * @param meterRegistry The registry to publish the cache metrics to
+     * @param objectMapper The object mapper serializing the pages
+     * @param maximumSize The maximum total size of the cached pages
+     * @param timeToLive How long a page is served before it is serialized again
+     */
+    public ProductPageCache(final MeterRegistry meterRegistry,
+                            final ObjectMapper objectMapper,
+                            @Value("${simplestore.cache.product-pages.maximum-size:64MB}") final DataSize maximumSize,
+                            @Value("${simplestore.cache.product-pages.ttl:60s}") final Duration timeToLive) {
+        this.objectMapper = objectMapper;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maximumSize.toBytes())
+                .weigher((PageKey key, SerializedPage page) -> page.json().length + page.gzip().length)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        for (ProductCategory category : ProductCategory.values()) {
+            categoryVersions.put(category, new AtomicLong());
+        }
+
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "productPages");
+    }
+
+    /**
+     * Get a serialized page of products, loading and serializing it if it is not cached.
+     * Exceptions thrown by the loader are propagated and nothing is cached
+     * @param pageable The requested page
+     * @param category The category of the products, or null for all the products
+     * @param summary Whether the page holds product summaries
+     * @param fields The product fields to serialize
+     * @param loader Supplier loading the page from the repository
+     * @return The serialized page
+     */
+    public SerializedPage get(final Pageable pageable,
+                              final ProductCategory category,
+                              final boolean summary,
+                              final ProductFields fields,
+                              final Supplier<Page<?>> loader) {
+        final PageKey key = new PageKey(
+                pageable.getPageNumber(),
+                pageable.getPageSize(),
+                pageable.getSort().toString(),
+                category,
+                summary,
+                fields.normalized(),
+                version(category).get());
+
+        return pages.get(key, k -> serialize(loader.get(), fields));
+    }
+
+    /**
+     * Drop the pages listing products of the given categories, along with the pages listing all the products.
+     * Inside a transaction the pages are dropped once the transaction commits
+     * @param categories The categories of the changed products
+     */
+    public void invalidate(final ProductCategory... categories) {
+        AfterCommit.run(() -> {
+            catalogVersion.incrementAndGet();
+
+            for (ProductCategory category : categories) {
+                if (category != null) {
+                    categoryVersions.get(category).incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop all the cached pages, after products of any category have changed.
+     * Inside a transaction the pages are dropped once the transaction commits
+     */
+    public void invalidateAll() {
+        invalidate(ProductCategory.values());
+    }
+
+    /**
+     * Get the version counter of the pages listing products of a category
+     * @param category The category, or null for the pages listing all the products
+     * @return The version counter
+     */
+    private AtomicLong version(final ProductCategory category) {
+        return category == null ? catalogVersion : categoryVersions.get(category);
+    }
+
+    /**
+     * Serialize a page the way Spring Data serializes pages in responses, and compress it
+     * @param page The page of products
+     * @param fields The product fields to serialize
+     * @return The serialized page
+     */
+    private SerializedPage serialize(final Page<?> page, final ProductFields fields) {
+        try {
+            final byte[] json = objectMapper.writer(fields.getFilters()).writeValueAsBytes(new PagedModel<>(page));
+            final ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 32);
+
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(json);
+            }
+
+            return new SerializedPage(json, gzip.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The normalized request of a page, along with the version of the listed products it was read at
+     * @param page The page number
+     * @param size The page size
+     * @param sort The sort order
+     * @param category The category of the products, or null for all the products
+     * @param summary Whether the page holds product summaries
+     * @param fields The normalized product fields
+     * @param version The version of the listed products
+     */
+    private record PageKey(int page, int size, String sort, ProductCategory category,
+                           boolean summary, String fields, long version) { }
+}
@@ -0,0 +1,144 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent identical reads. The first caller asking for a key runs the read,
+ * while the callers asking for the same key before it finishes wait for its result instead of
+ * running the read again. Nothing is kept once the read finishes, so later callers read again.
+ * The results are shared between the callers, so only immutable results should be coalesced.
+ * Reads inside a transaction are never shared, since they may see changes the transaction did not commit yet.
+ * Executed and collapsed calls are counted by the "simplestore.coalescer.calls" counters,
+ * tagged with the operation and the outcome
+ */
+@Component
+public class RequestCoalescer {
+    private static final String CALLS_METER = "simplestore.coalescer.calls";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CallCounters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Create the coalescer
+     * @param meterRegistry The registry to publish the call counters to
+     */
+    public RequestCoalescer(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("simplestore.coalescer.in-flight", inFlight, Map::size)
+                .description("The number of reads currently shared by concurrent callers")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a read, or wait for the identical read already running.
+     * Exceptions thrown by the read are propagated to all the callers sharing it
+     * @param operation The name of the read operation
+     * @param key The key identifying the read within the operation
+     * @param loader Supplier running the read
+     * @param <T> The type of the result
+     * @return The result of the read
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final String operation, final Object key, final Supplier<T> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+
+        final CallKey callKey = new CallKey(operation, key);
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> running = inFlight.putIfAbsent(callKey, future);
+        final CallCounters callCounters = counters.computeIfAbsent(operation, this::createCounters);
+
+        if (running != null) {
+            callCounters.collapsed().increment();
+
+            return (T) join(running);
+        }
+
+        callCounters.executed().increment();
+
+        try {
+            final T result = loader.get();
+            future.complete(result);
+
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            inFlight.remove(callKey, future);
+        }
+    }
+
+    /**
+     * Wait for a read run by another caller
+     * @param running The future completed by the read
+     * @return The result of the read
+     */
+    private static Object join(final CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Register the counters of an operation
+     * @param operation The name of the operation
+     * @return The counters of the operation
+     */
+    private CallCounters createCounters(final String operation) {
+        return new CallCounters(
+                Counter.builder(CALLS_METER)
+                        .description("The number of reads run by the coalescer")
+                        .tag("operation", operation)
+                        .tag("outcome", "executed")
+                        .register(meterRegistry),
+                Counter.builder(CALLS_METER)
+                        .description("The number of reads run by the coalescer")
+                        .tag("operation", operation)
+                        .tag("outcome", "collapsed")
+                        .register(meterRegistry));
+    }
+
+    /**
+     * The key of a read
+     * @param operation The name of the read operation
+     * @param key The key identifying the read within the operation
+     */
+    private record CallKey(String operation, Object key) { }
+
+    /**
+     * The counters of an operation
+     * @param executed Counter of the reads which were run
+     * @param collapsed Counter of the calls which waited for a read run by another caller
+     */
+    private record CallCounters(Counter executed, Counter collapsed) { }
+}
@@ -0,0 +1,13 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+/**
+ * A page of products serialized to JSON, along with its gzip compressed form
+ * @param json The JSON bytes of the page
+ * @param gzip The JSON bytes of the page compressed with gzip
+ */
+public record SerializedPage(byte[] json, byte[] gzip) { }
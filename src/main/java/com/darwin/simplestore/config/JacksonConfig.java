@@ -0,0 +1,26 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.config;
+
+import com.darwin.simplestore.dto.ProductFields;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for JSON serialization
+ */
+@Configuration
+public class JacksonConfig {
+    /**
+     * Serialize all the product fields by default, when a response does not select the fields itself
+     * @return The customizer registering the default product filter
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer productFieldsCustomizer() {
+        return builder -> builder.filters(ProductFields.all().getFilters());
+    }
+}
@@ -0,0 +1,40 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+/**
+ * Configuration class for JPA transactions.
+ * Connections are not prepared when a transaction begins, so Hibernate only takes a connection
+ * from the pool when the first statement runs and returns it when the transaction ends.
+ * Transactions served entirely from the caches never take a connection
+ */
+@Configuration
+public class JpaConfig {
+    /**
+     * Stop the JPA vendor adapter from preparing connections when transactions begin.
+     * Otherwise read-only transactions take a connection eagerly to mark it read-only,
+     * and the connection is held until the entity manager is closed
+     * @return The post processor configuring the vendor adapter
+     */
+    @Bean
+    public static BeanPostProcessor lazyConnectionPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+                if (bean instanceof HibernateJpaVendorAdapter vendorAdapter) {
+                    vendorAdapter.setPrepareConnection(false);
+                }
+
+                return bean;
+            }
+        };
+    }
+}
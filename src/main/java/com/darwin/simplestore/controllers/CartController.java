@@ -7,6 +7,10 @@ package com.darwin.simplestore.controllers;
 
 import com.darwin.simplestore.dto.CartDto;
 import com.darwin.simplestore.dto.CartItemDto;
+import com.darwin.simplestore.dto.ProductFields;
+import com.darwin.simplestore.dto.ProductView;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.services.CartItemService;
 import com.darwin.simplestore.services.CartService;
@@ -14,8 +18,10 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
@@ -74,33 +80,81 @@ public class CartController {
     /**
      * Get a cart
      * @param cartId the id of the cart
-     * @return DTO representing the cart
+     * @param view The view of the cart items, summary or full
+     * @param fields The fields of the products in the full view to return, or null for all the fields
+     * @param ifNoneMatch The entity tags of the cart known to the client, or null if absent
+     * @return DTO representing the cart, or the cart summary for the summary view, or an empty response if the cart was not modified
      * @throws ResourceNotFoundException If the cart could not be found
+     * @throws InvalidRequestException If the view or the fields are not valid, or fields are requested for the summary view
      */
     @GetMapping(value = "/{cartId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get cart", description = "Retrieve and return an existing cart")
-    public ResponseEntity<CartDto> getCart(
+    public ResponseEntity<?> getCart(
             @Parameter(description = "The id of the cart", example = "1")
-            @PathVariable final Long cartId) throws ResourceNotFoundException {
-
-        return ResponseEntity.ok().body(cartService.getCart(cartId));
+            @PathVariable final Long cartId,
+            @Parameter(description = "The view of the cart items, summary only includes the product name and price", example = "summary")
+            @RequestParam(defaultValue = "full") final String view,
+            @Parameter(description = "The comma separated product fields to return in the full view, all the fields when omitted", example = "id,name,price")
+            @RequestParam(required = false) final String fields,
+            @Parameter(description = "The entity tags of the cart known to the client", example = "W/\"2.5\"")
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResourceNotFoundException, InvalidRequestException {
+
+        final ProductView productView = ProductView.fromName(view);
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        if (productView == ProductView.SUMMARY) {
+            if (fields != null) {
+                throw new InvalidRequestException("The product fields can not be selected for the summary view");
+            }
+
+            // The tag is read before the summary, so a cart changed in between is sent with an older tag and is read again next time
+            final String versionTag = cartService.getCartVersionTag(cartId);
+
+            if (ifNoneMatch != null && ETags.matches(ifNoneMatch, versionTag)) {
+                return ETags.notModified(versionTag);
+            }
+
+            return ResponseEntity.ok()
+                    .eTag(ETags.weak(versionTag))
+                    .body(cartService.getCartSummary(cartId));
+        }
+
+        if (ifNoneMatch != null) {
+            final String versionTag = cartService.getCartVersionTag(cartId);
+
+            if (ETags.matches(ifNoneMatch, versionTag)) {
+                return ETags.notModified(versionTag);
+            }
+        }
+
+        final CartDto cart = cartService.getCart(cartId);
+
+        return ResponseEntity.ok()
+                .eTag(ETags.weak(CartService.versionTag(cart)))
+                .body(productFields.apply(cart));
     }
 
     /**
      * Get a certain cart item
      * @param cartId The id of the cart
      * @param productId The id of the product
+     * @param fields The product fields to return, or null for all the fields
      * @return Cart item
      * @throws ResourceNotFoundException If the cart or the product could not be found
+     * @throws InvalidRequestException If the fields are not valid
      */
     @GetMapping(value = "/{cartId}/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get cart item", description = "Retrieve and return an item from teh cart")
-    public ResponseEntity<CartItemDto> getCartItem(
+    public ResponseEntity<MappingJacksonValue> getCartItem(
             @Parameter(description = "The id of the cart", example = "1")
             @PathVariable final Long cartId,
             @Parameter(description = "The id of the product", example = "1")
-            @PathVariable final Long productId) throws ResourceNotFoundException {
-        return ResponseEntity.ok().body(cartItemService.getCartItem(cartId, productId));
+            @PathVariable final Long productId,
+            @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+            @RequestParam(required = false) final String fields) throws ResourceNotFoundException, InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        return ResponseEntity.ok().body(productFields.apply(cartItemService.getCartItem(cartId, productId)));
     }
 
     /**
@@ -125,8 +179,11 @@ public class CartController {
      * @param cartId The id of the cart
      * @param productId The id of the product
      * @param quantity The new quantity of the product
+     * @param ifMatch The entity tag the cart must still have, or null to update any version
      * @return Response object
      * @throws ResourceNotFoundException If the cart or the product could not be found
+     * @throws PreconditionFailedException If the cart was changed since the client read it
+     * @throws InvalidRequestException If the If-Match header is not valid
      */
     @PutMapping("/{cartId}/{productId}")
     @Operation(summary = "Update quantity", description = "Updates the quantity of a cart item")
@@ -136,9 +193,11 @@ public class CartController {
             @Parameter(description = "The id of the product", example = "1")
             @PathVariable final Long productId,
             @Parameter(description = "The new quantity of the product", example = "4")
-            @RequestParam final Long quantity) throws ResourceNotFoundException {
+            @RequestParam final Long quantity,
+            @Parameter(description = "The entity tag the cart must still have", example = "W/\"2.5\"")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch) throws ResourceNotFoundException, PreconditionFailedException, InvalidRequestException {
 
-        cartItemService.updateItemQuantity(cartId, productId, quantity);
+        cartItemService.updateItemQuantity(cartId, productId, quantity, ETags.version(ifMatch));
 
         return ResponseEntity.ok().build();
     }
@@ -0,0 +1,93 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.controllers;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Helpers for the weak entity tags built from the version tags of the resources
+ */
+final class ETags {
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    private ETags() { }
+
+    /**
+     * Build a weak entity tag from a version tag
+     * @param versionTag The version tag of the resource
+     * @return The weak entity tag
+     */
+    static String weak(final String versionTag) {
+        return WEAK_PREFIX + "\"" + versionTag + "\"";
+    }
+
+    /**
+     * Check whether an If-None-Match header matches a version tag, using the weak comparison
+     * @param ifNoneMatch The value of the If-None-Match header
+     * @param versionTag The current version tag of the resource
+     * @return True if the header lists the version tag or any tag, false otherwise
+     */
+    static boolean matches(final String ifNoneMatch, final String versionTag) {
+        for (final String tag : ifNoneMatch.split(",")) {
+            final String trimmed = tag.trim();
+
+            if (trimmed.equals(ANY) || opaqueTag(trimmed).equals(versionTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Read the version a resource must have from an If-Match header.
+     * Only the first part of the tag is used, which is the version of the resource itself
+     * @param ifMatch The value of the If-Match header, or null if absent
+     * @return The expected version, or null if any version is accepted
+     * @throws InvalidRequestException If the header does not hold a single tag of this service
+     */
+    static Long version(final String ifMatch) throws InvalidRequestException {
+        if (ifMatch == null || ifMatch.trim().equals(ANY)) {
+            return null;
+        }
+
+        final String tag = opaqueTag(ifMatch.trim());
+        final int separator = tag.indexOf('.');
+
+        try {
+            return Long.parseLong(separator < 0 ? tag : tag.substring(0, separator));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid If-Match header: " + ifMatch);
+        }
+    }
+
+    /**
+     * Build the response for a resource which was not modified
+     * @param versionTag The current version tag of the resource
+     * @return An empty response with the 304 status and the entity tag
+     */
+    static <T> ResponseEntity<T> notModified(final String versionTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(weak(versionTag)).build();
+    }
+
+    /**
+     * Remove the weakness indicator and the quotes of an entity tag
+     * @param tag The entity tag
+     * @return The opaque tag
+     */
+    private static String opaqueTag(final String tag) {
+        String opaque = tag.startsWith(WEAK_PREFIX) ? tag.substring(WEAK_PREFIX.length()) : tag;
+
+        if (opaque.length() >= 2 && opaque.startsWith("\"") && opaque.endsWith("\"")) {
+            opaque = opaque.substring(1, opaque.length() - 1);
+        }
+
+        return opaque;
+    }
+}
@@ -5,50 +5,155 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.dto.Base64Content;
+import com.darwin.simplestore.dto.ImageContentDto;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageVariant;
 import com.darwin.simplestore.dto.NewImageDto;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.services.ImageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 
 /**
  * Controller for images
  */
 @RestController
 @RequestMapping("/images")
-@RequiredArgsConstructor
 @Tag(name = "Images", description = "Endpoints for managing images")
 public class ImageController {
+    private static final String NO_SNIFF_HEADER = "X-Content-Type-Options";
+
     private final ImageService imageService;
+    private final Duration cacheMaxAge;
+
+    /**
+     * Create the controller
+     * @param imageService The image service
+     * @param cacheMaxAge How long clients may use image content before revalidating it
+     */
+    public ImageController(final ImageService imageService,
+                           @Value("${simplestore.images.cache-max-age:1h}") final Duration cacheMaxAge) {
+        this.imageService = imageService;
+        this.cacheMaxAge = cacheMaxAge;
+    }
 
     /**
      * Add a new image
      * @param newImageDto The DTO representing the new image
      * @return The DTO of the new image
+     * @throws InvalidRequestException If the content is missing or too large
+     * @throws IOException If the decoded content could not be released
      */
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Add new image", description = "Add a new image to the database, and return the created image")
     public ResponseEntity<ImageDto> addImage(
             @Parameter(description = "The contents of the new image")
-            @RequestBody final NewImageDto newImageDto) {
+            @RequestBody final NewImageDto newImageDto) throws InvalidRequestException, IOException {
 
-        final ImageDto imageDto = imageService.addImage(newImageDto);
-        final URI location = ServletUriComponentsBuilder
-                .fromCurrentRequest()
-                .path("/{imageId}")
-                .buildAndExpand(imageDto.id())
-                .toUri();
+        try (Base64Content ignored = newImageDto.base64Content()) {
+            final ImageDto imageDto = imageService.addImage(newImageDto);
 
-        return ResponseEntity.created(location).body(imageDto);
+            return ResponseEntity.created(imageLocation(imageDto.id())).body(imageDto);
+        }
+    }
+
+    /**
+     * Upload a new image as a multipart form. The media type is detected from the content,
+     * the content type declared for the file is ignored
+     * @param file The image file
+     * @return The description of the new image
+     * @throws InvalidRequestException If the file is too large or is not a supported image
+     * @throws IOException If the uploaded file could not be opened
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Upload image file", description = "Upload a new image from a multipart form, without base64 encoding it")
+    public ResponseEntity<ImageMetadataDto> uploadImageFile(
+            @Parameter(description = "The image file")
+            @RequestPart("file") final MultipartFile file) throws InvalidRequestException, IOException {
+
+        try (InputStream content = file.getInputStream()) {
+            final ImageMetadataDto imageMetadataDto = imageService.addImage(content);
+
+            return ResponseEntity.created(imageLocation(imageMetadataDto.id())).body(imageMetadataDto);
+        }
+    }
+
+    /**
+     * Upload a new image as the raw request body. The media type is detected from the content,
+     * the declared content type is ignored
+     * @param content The content of the image
+     * @return The description of the new image
+     * @throws InvalidRequestException If the content could not be read, is too large or is not a supported image
+     */
+    @PostMapping(consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "image/*"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Upload image content", description = "Upload a new image from the raw request body, without base64 encoding it")
+    public ResponseEntity<ImageMetadataDto> uploadImageContent(
+            @Parameter(hidden = true)
+            final InputStream content) throws InvalidRequestException {
+
+        final ImageMetadataDto imageMetadataDto = imageService.addImage(content);
+
+        return ResponseEntity.created(imageLocation(imageMetadataDto.id())).body(imageMetadataDto);
+    }
+
+    /**
+     * Get a page of image descriptions, without their content
+     * @param page The page number
+     * @param pageSize The size of the page
+     * @return A page of image metadata DTOs
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get images page", description = "Get a page of image descriptions, without loading their content")
+    public ResponseEntity<Page<ImageMetadataDto>> getImagesPage(
+            @Parameter(description = "The page number to return", example = "0")
+            @RequestParam(defaultValue = "0") final Integer page,
+            @Parameter(description = "The number of images per page", example = "5")
+            @RequestParam(defaultValue = "5") final Integer pageSize) {
+
+        final Pageable pageable = PageRequest.of(page, pageSize, Sort.by("id").ascending());
+
+        return ResponseEntity.ok(imageService.getImagesMetadata(pageable));
+    }
+
+    /**
+     * Get the description of an image, without its content
+     * @param imageId The id of the image
+     * @return The image metadata DTO
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    @GetMapping(value = "/{imageId}/metadata", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get image metadata", description = "Get the description of an existing image, without loading its content")
+    public ResponseEntity<ImageMetadataDto> getImageMetadata(
+            @Parameter(description = "The id of the image to be described", example = "1")
+            @PathVariable final Long imageId) throws ResourceNotFoundException {
+
+        return ResponseEntity.ok(imageService.getImageMetadata(imageId));
     }
 
     /**
@@ -66,27 +171,143 @@ public class ImageController {
         return ResponseEntity.ok(imageService.getImage(imageId));
     }
 
+    /**
+     * Get a resized variant of an image
+     * @param imageId The id of the image
+     * @param variant The name of the variant
+     * @param request The current request, used to evaluate its preconditions
+     * @return The content of the variant with its media type and validators, or a not modified response
+     * @throws ResourceNotFoundException If the image could not be found
+     * @throws InvalidRequestException If the variant does not exist
+     */
+    @GetMapping(value = "/{imageId}", params = "variant")
+    @Operation(summary = "Get image variant", description = "Get a resized variant of an existing image, or the original image if it has no such variant")
+    public ResponseEntity<Resource> getImageVariant(
+            @Parameter(description = "The id of the image to be retrieved", example = "1")
+            @PathVariable final Long imageId,
+            @Parameter(description = "The variant to be retrieved", example = "thumb")
+            @RequestParam final String variant,
+            @Parameter(hidden = true)
+            final HttpServletRequest request) throws ResourceNotFoundException, InvalidRequestException {
+
+        return getImageContent(imageId, variant, request);
+    }
+
+    /**
+     * Get the binary content of an image. Conditional requests are answered without loading the content,
+     * and range requests are served from the stored content.
+     * The validators of a full response are taken from the content which is served, since the image
+     * may have been updated after its description was read
+     * @param imageId The id of the image
+     * @param variant The name of a resized variant to retrieve instead of the original, may be null
+     * @param request The current request, used to evaluate its preconditions
+     * @return The content of the image with its media type and validators, or a not modified response
+     * @throws ResourceNotFoundException If the image could not be found
+     * @throws InvalidRequestException If the variant does not exist
+     */
+    @GetMapping("/{imageId}/content")
+    @Operation(summary = "Get image content", description = "Get the binary content of an existing image. Supports range and conditional requests")
+    public ResponseEntity<Resource> getImageContent(
+            @Parameter(description = "The id of the image to be retrieved", example = "1")
+            @PathVariable final Long imageId,
+            @Parameter(description = "The resized variant to be retrieved instead of the original", example = "thumb")
+            @RequestParam(required = false) final String variant,
+            @Parameter(hidden = true)
+            final HttpServletRequest request) throws ResourceNotFoundException, InvalidRequestException {
+
+        final ImageVariant imageVariant = variant == null ? null : ImageVariant.fromName(variant);
+        final ImageMetadataDto imageMetadata = imageService.getImageMetadata(imageId);
+        final String eTag = imageVariant == null ? imageMetadata.hash() : imageVariant.tag(imageMetadata.hash());
+
+        // Without a response, the preconditions are evaluated without setting the validators
+        final ServletWebRequest preconditions = new ServletWebRequest(request);
+        final boolean notModified = imageMetadata.lastModified() == null
+                ? preconditions.checkNotModified(eTag)
+                : preconditions.checkNotModified(eTag, imageMetadata.lastModified().toEpochMilli());
+
+        final CacheControl cacheControl = CacheControl.maxAge(cacheMaxAge).cachePublic().mustRevalidate();
+
+        if (notModified) {
+            return validators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), eTag, imageMetadata.lastModified())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        final ImageContentDto imageContent = imageVariant == null
+                ? imageService.getImageContent(imageId)
+                : imageService.getImageContent(imageId, imageVariant);
+
+        // Images stored before the uploads were restricted to raster types are not served with their stored type
+        final MediaType mediaType = imageContent.mediaType() != null && ImageService.SUPPORTED_MEDIA_TYPES.contains(imageContent.mediaType())
+                ? MediaType.parseMediaType(imageContent.mediaType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+
+        return validators(ResponseEntity.ok(), imageContent.hash(), imageContent.lastModified())
+                .contentType(mediaType)
+                .cacheControl(cacheControl)
+                .header(NO_SNIFF_HEADER, "nosniff")
+                .body(imageContent.content());
+    }
+
+    /**
+     * Set the validators of image content on a response
+     * @param response The response builder
+     * @param eTag The entity tag of the content
+     * @param lastModified The modification time of the content, may be null
+     * @return The response builder
+     */
+    private static ResponseEntity.BodyBuilder validators(final ResponseEntity.BodyBuilder response,
+                                                         final String eTag,
+                                                         final Instant lastModified) {
+        response.eTag(eTag);
+
+        if (lastModified != null) {
+            response.lastModified(lastModified);
+        }
+
+        return response;
+    }
+
     /**
      * Update an image
      * @param imageId The id of the image
      * @param newImageDto The updated data of the image
      * @return Response object
      * @throws ResourceNotFoundException If the image could not be found
+     * @throws InvalidRequestException If the content is missing or too large, or the image is used by more than one product
+     * @throws ResourceExistsException If another image already has the same content
+     * @throws IOException If the decoded content could not be released
      */
     @PutMapping(value = "/{imageId}", consumes = MediaType.APPLICATION_JSON_VALUE)
-    @Operation(summary = "Update image", description = "Update the contents of an existing image")
+    @Operation(summary = "Update image", description = "Update the contents of an existing image. Images used by more than one product cannot be updated")
     public ResponseEntity<Void> updateImage(
             @Parameter(description = "The id of the image to be updated", example = "1")
             @PathVariable final Long imageId,
             @Parameter(description = "The new contents to be put")
-            @RequestBody final NewImageDto newImageDto) throws ResourceNotFoundException {
+            @RequestBody final NewImageDto newImageDto) throws ResourceNotFoundException, InvalidRequestException, ResourceExistsException, IOException {
 
-        final ImageDto imageDto = new ImageDto(
-                imageId,
-                newImageDto.base64Content()
-        );
+        try (Base64Content ignored = newImageDto.base64Content()) {
+            final ImageDto imageDto = new ImageDto(
+                    imageId,
+                    newImageDto.base64Content()
+            );
+
+            imageService.updateImage(imageDto);
+        }
 
-        imageService.updateImage(imageDto);
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Build the location of an image
+     * @param imageId The id of the image
+     * @return The URI of the image
+     */
+    private static URI imageLocation(final Long imageId) {
+        return ServletUriComponentsBuilder
+                .fromCurrentRequest()
+                .path("/{imageId}")
+                .buildAndExpand(imageId)
+                .toUri();
+    }
 }
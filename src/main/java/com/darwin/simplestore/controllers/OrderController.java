@@ -6,7 +6,9 @@
 package com.darwin.simplestore.controllers;
 
 import com.darwin.simplestore.dto.OrderDto;
+import com.darwin.simplestore.dto.ProductFields;
 import com.darwin.simplestore.exceptions.BadOrderStateException;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
 import com.darwin.simplestore.exceptions.NotEnoughProductsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.services.OrderService;
@@ -14,8 +16,10 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
@@ -57,15 +61,36 @@ public class OrderController {
     /**
      * Get an order
      * @param orderId The id of the order
-     * @return The DTO representing the order
+     * @param fields The fields of the ordered products to return, or null for all the fields
+     * @param ifNoneMatch The entity tags of the order known to the client, or null if absent
+     * @return The DTO representing the order, or an empty response if the order was not modified
      * @throws ResourceNotFoundException If the order could not be found
+     * @throws InvalidRequestException If the fields are not valid
      */
     @GetMapping(value = "/{orderId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get order", description = "Retrieve and return an existing order")
-    public ResponseEntity<OrderDto> getOrder(
+    public ResponseEntity<MappingJacksonValue> getOrder(
             @Parameter(description = "The id of the order", example = "1")
-            @PathVariable final Long orderId) throws ResourceNotFoundException {
-        return ResponseEntity.ok(orderService.getOrder(orderId));
+            @PathVariable final Long orderId,
+            @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+            @RequestParam(required = false) final String fields,
+            @Parameter(description = "The entity tags of the order known to the client", example = "W/\"1.2.5\"")
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResourceNotFoundException, InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        if (ifNoneMatch != null) {
+            final String versionTag = orderService.getOrderVersionTag(orderId);
+
+            if (ETags.matches(ifNoneMatch, versionTag)) {
+                return ETags.notModified(versionTag);
+            }
+        }
+
+        final OrderDto order = orderService.getOrder(orderId);
+
+        return ResponseEntity.ok()
+                .eTag(ETags.weak(OrderService.versionTag(order)))
+                .body(productFields.apply(order));
     }
 
     /**
@@ -5,27 +5,45 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.cache.ProductPageCache;
+import com.darwin.simplestore.cache.SerializedPage;
 import com.darwin.simplestore.dto.ImageDto;
 import com.darwin.simplestore.dto.NewProductDto;
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductCursor;
 import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductFields;
+import com.darwin.simplestore.dto.ProductFileFormat;
+import com.darwin.simplestore.dto.ProductImportReportDto;
+import com.darwin.simplestore.dto.ProductSortField;
+import com.darwin.simplestore.dto.ProductView;
+import com.darwin.simplestore.dto.SliceDto;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
+import com.darwin.simplestore.services.ProductImportService;
 import com.darwin.simplestore.services.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.InputStream;
 import java.net.URI;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 /**
@@ -37,6 +55,8 @@ import java.util.Optional;
 @Tag(name = "Products", description = "Endpoints for managing products")
 public class ProductsController {
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final ProductPageCache productPageCache;
 
     /**
      * Get a page of products
@@ -45,11 +65,15 @@ public class ProductsController {
      * @param sortBy Field inside the product object to sort by
      * @param ascending If true sorts ascending, otherwise sorts descending
      * @param category If present filters the products by a category
-     * @return A page of product DTOs
+     * @param view The view of the products, summary or full
+     * @param fields The product fields to return, or null for all the fields
+     * @param acceptEncoding The encodings accepted by the client, or null if absent
+     * @return The serialized page of product DTOs, or product summaries for the summary view
+     * @throws InvalidRequestException If the view or the fields are not valid, or the summary view does not hold the fields
      */
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get products page", description = "Get a page of products")
-    public ResponseEntity<Page<ProductDto>> getProductsPage(
+    public ResponseEntity<byte[]> getProductsPage(
         @Parameter(description = "The page number to return", example = "0")
         @RequestParam(defaultValue = "0") final Integer page,
         @Parameter(description = "The number of products per page", example = "5")
@@ -59,19 +83,171 @@ public class ProductsController {
         @Parameter(description = "Whether to sort the page in ascending order", example = "true")
         @RequestParam(defaultValue = "true") final Boolean ascending,
         @Parameter(description = "The category of products to find", example = "FOOD")
-        @RequestParam(required = false) final ProductCategory category
-    ) {
+        @RequestParam(required = false) final ProductCategory category,
+        @Parameter(description = "The view of the products, summary leaves out the description", example = "summary")
+        @RequestParam(defaultValue = "full") final String view,
+        @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+        @RequestParam(required = false) final String fields,
+        @Parameter(hidden = true)
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding
+    ) throws InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+        final boolean summary = productFields.isSummary(ProductView.fromName(view));
         Sort sort = ascending ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, pageSize, sort);
-        Page<ProductDto> result = null;
 
-        if (category == null) {
-            result = productService.getProducts(pageable);
+        final SerializedPage result = productPageCache.get(pageable, category, summary, productFields, () -> {
+            if (summary) {
+                return productService.getProductSummaries(pageable, category);
+            } else if (category == null) {
+                return productService.getProducts(pageable);
+            } else {
+                return productService.getProductsByCategory(pageable, category);
+            }
+        });
+
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+
+        if (acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(result.gzip());
+        }
+
+        return response.body(result.json());
+    }
+
+    /**
+     * Get a slice of products, which skips counting all the matching products
+     * @param page The page number
+     * @param pageSize The size of the page
+     * @param sortBy Field inside the product object to sort by
+     * @param ascending If true sorts ascending, otherwise sorts descending
+     * @param category If present filters the products by a category
+     * @param includeTotal If true includes the cached total number of matching products
+     * @param view The view of the products, summary or full
+     * @param fields The product fields to return, or null for all the fields
+     * @return A slice of product DTOs, or product summaries for the summary view
+     * @throws InvalidRequestException If the view or the fields are not valid, or the summary view does not hold the fields
+     */
+    @GetMapping(value = "/slice", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get products slice", description = "Get a page of products, only telling whether there is a next page instead of counting all the products")
+    public ResponseEntity<MappingJacksonValue> getProductsSlice(
+        @Parameter(description = "The page number to return", example = "0")
+        @RequestParam(defaultValue = "0") final Integer page,
+        @Parameter(description = "The number of products per page", example = "5")
+        @RequestParam(defaultValue = "5") final Integer pageSize,
+        @Parameter(description = "The field to sort the products by", example = "name")
+        @RequestParam(defaultValue = "name") final String sortBy,
+        @Parameter(description = "Whether to sort the page in ascending order", example = "true")
+        @RequestParam(defaultValue = "true") final Boolean ascending,
+        @Parameter(description = "The category of products to find", example = "FOOD")
+        @RequestParam(required = false) final ProductCategory category,
+        @Parameter(description = "Whether to include the cached total number of products", example = "false")
+        @RequestParam(defaultValue = "false") final Boolean includeTotal,
+        @Parameter(description = "The view of the products, summary leaves out the description", example = "summary")
+        @RequestParam(defaultValue = "full") final String view,
+        @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+        @RequestParam(required = false) final String fields
+    ) throws InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+        Sort sort = ascending ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
+        Pageable pageable = PageRequest.of(page, pageSize, sort);
+        Slice<?> result = null;
+
+        if (productFields.isSummary(ProductView.fromName(view))) {
+            result = productService.getProductSummariesSlice(pageable, category);
+        } else if (category == null) {
+            result = productService.getProductsSlice(pageable);
         } else {
-            result = productService.getProductsByCategory(pageable, category);
+            result = productService.getProductsSliceByCategory(pageable, category);
         }
 
-        return ResponseEntity.ok(result);
+        final Long totalElements = includeTotal ? productService.countProducts(category) : null;
+
+        return ResponseEntity.ok(productFields.apply(new SliceDto<>(
+                result.getContent(),
+                result.getNumber(),
+                result.getSize(),
+                result.hasNext(),
+                totalElements
+        )));
+    }
+
+    /**
+     * Get a page of products using keyset pagination.
+     * When a cursor is provided, the sorting and filtering parameters are taken from it
+     * @param cursor The token returned by the previous page, absent for the first page
+     * @param pageSize The size of the page
+     * @param sortBy Field inside the product object to sort by
+     * @param ascending If true sorts ascending, otherwise sorts descending
+     * @param category If present filters the products by a category
+     * @param fields The product fields to return, or null for all the fields
+     * @return A page of product DTOs, along with the token for the next page
+     * @throws InvalidRequestException If the cursor, sort field, page size or fields are not valid
+     */
+    @GetMapping(value = "/scroll", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Scroll products", description = "Get a page of products using keyset pagination, which stays fast for deep pages")
+    public ResponseEntity<MappingJacksonValue> scrollProducts(
+        @Parameter(description = "The token returned by the previous page, omitted for the first page")
+        @RequestParam(required = false) final String cursor,
+        @Parameter(description = "The number of products per page", example = "5")
+        @RequestParam(defaultValue = "5") final Integer pageSize,
+        @Parameter(description = "The field to sort the products by (id, name, price or quantity)", example = "name")
+        @RequestParam(defaultValue = "name") final String sortBy,
+        @Parameter(description = "Whether to sort the page in ascending order", example = "true")
+        @RequestParam(defaultValue = "true") final Boolean ascending,
+        @Parameter(description = "The category of products to find", example = "FOOD")
+        @RequestParam(required = false) final ProductCategory category,
+        @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+        @RequestParam(required = false) final String fields
+    ) throws InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+        final ProductCursor productCursor = cursor == null
+                ? ProductCursor.first(ProductSortField.fromProperty(sortBy), ascending, category)
+                : ProductCursor.decode(cursor);
+
+        return ResponseEntity.ok(productFields.apply(productService.getProductsAfter(productCursor, pageSize)));
+    }
+
+    /**
+     * Get multiple products by their ids
+     * @param ids The ids of the products
+     * @param fields The product fields to return, or null for all the fields
+     * @return The products found in the requested order, along with the ids which were not found
+     * @throws InvalidRequestException If too many ids are requested, or the fields are not valid
+     */
+    @GetMapping(params = "ids", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get products by ids", description = "Get multiple products by their ids, reporting the ids which do not exist")
+    public ResponseEntity<MappingJacksonValue> getProductsByIds(
+        @Parameter(description = "The comma separated ids of the products", example = "1,2,3")
+        @RequestParam final List<Long> ids,
+        @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+        @RequestParam(required = false) final String fields
+    ) throws InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        return ResponseEntity.ok(productFields.apply(productService.getProductsByIds(ids)));
+    }
+
+    /**
+     * Get multiple products by their ids, sent in the body for lists too long for the query string
+     * @param ids The ids of the products
+     * @param fields The product fields to return, or null for all the fields
+     * @return The products found in the requested order, along with the ids which were not found
+     * @throws InvalidRequestException If too many ids are requested, or the fields are not valid
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get products batch", description = "Get multiple products by the ids in the body, reporting the ids which do not exist")
+    public ResponseEntity<MappingJacksonValue> getProductsBatch(
+        @Parameter(description = "The ids of the products")
+        @RequestBody final List<Long> ids,
+        @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+        @RequestParam(required = false) final String fields
+    ) throws InvalidRequestException {
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        return ResponseEntity.ok(productFields.apply(productService.getProductsByIds(ids)));
     }
 
     /**
@@ -96,29 +272,92 @@ public class ProductsController {
         return ResponseEntity.created(location).body(product);
     }
 
+    /**
+     * Import products in bulk. The body is read as it arrives, so files of any size can be imported
+     * @param contentType The content type of the body, NDJSON or CSV
+     * @param body The products to import, one per line. CSV files must start with a header line
+     * @return The report of the import, listing the rejected rows
+     * @throws InvalidRequestException If the body could not be read, or the CSV header is invalid
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, ProductFileFormat.CSV_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Import products", description = "Import products from an NDJSON or CSV file, skipping invalid rows and existing names")
+    public ResponseEntity<ProductImportReportDto> importProducts(
+            @Parameter(hidden = true)
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) final MediaType contentType,
+            @Parameter(hidden = true)
+            final InputStream body) throws InvalidRequestException {
+        return ResponseEntity.ok(productImportService.importProducts(body, ProductFileFormat.fromMediaType(contentType)));
+    }
+
+    /**
+     * Export all the products. The response is streamed while the products are read from the database
+     * @param format The format to export the products in
+     * @return The products, one per line
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Export products", description = "Export all the products as an NDJSON or CSV file")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @Parameter(description = "The format of the exported file", example = "CSV")
+            @RequestParam(defaultValue = "NDJSON") final ProductFileFormat format) {
+        final StreamingResponseBody body = outputStream -> productService.exportProducts(outputStream, format);
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products." + format.name().toLowerCase(Locale.ROOT) + "\"")
+                .body(body);
+    }
+
     /**
      * Return a product by its id
      * @param productId The id of the product
-     * @return The DTO of the requested product
+     * @param includeImage Whether to include the metadata of the image of the product
+     * @param fields The product fields to return, or null for all the fields
+     * @param ifNoneMatch The entity tags of the product known to the client, or null if absent
+     * @return The DTO of the requested product, or an empty response if the product was not modified
      * @throws ResourceNotFoundException If the specified product could not be found
+     * @throws InvalidRequestException If the fields are not valid
      */
     @GetMapping(value = "/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get product", description = "Retrieve and return a product from the database")
-    public ResponseEntity<ProductDto> getProduct(
+    public ResponseEntity<MappingJacksonValue> getProduct(
             @Parameter(description = "The id of the product", example = "1")
-            @PathVariable final Long productId) throws ResourceNotFoundException {
+            @PathVariable final Long productId,
+            @Parameter(description = "Whether to include the metadata of the product image, without its content")
+            @RequestParam(defaultValue = "false") final Boolean includeImage,
+            @Parameter(description = "The comma separated product fields to return, all the fields when omitted", example = "id,name,price")
+            @RequestParam(required = false) final String fields,
+            @Parameter(description = "The entity tags of the product known to the client", example = "W/\"0\"")
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResourceNotFoundException, InvalidRequestException {
+
+        final ProductFields productFields = ProductFields.parse(fields);
+
+        if (ifNoneMatch != null) {
+            final String versionTag = productService.getProductVersionTag(productId, includeImage);
+
+            if (ETags.matches(ifNoneMatch, versionTag)) {
+                return ETags.notModified(versionTag);
+            }
+        }
 
-        final ProductDto product = productService.getProductById(productId);
+        final ProductDto product = productService.getProductById(productId, includeImage);
 
-        return ResponseEntity.ok(product);
+        return ResponseEntity.ok()
+                .eTag(ETags.weak(ProductService.versionTag(product)))
+                .body(productFields.apply(product));
     }
 
     /**
      * Update a product
      * @param productId The id of the product
      * @param productDto The DTO of the product
+     * @param ifMatch The entity tag the product must still have, or null to update any version
      * @return Response object
      * @throws ResourceNotFoundException If the requested product does not exist
+     * @throws PreconditionFailedException If the product was changed since the client read it
+     * @throws InvalidRequestException If the If-Match header is not valid
+     * @throws ResourceExistsException If the product is renamed to the name of another product
      */
     @PutMapping(value = "/{productId}", consumes = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Update product", description = "Update an existing product")
@@ -126,11 +365,12 @@ public class ProductsController {
             @Parameter(description = "The id of the product", example = "1")
             @PathVariable final Long productId,
             @Parameter(description = "The new description of the product")
-            @RequestBody final NewProductDto productDto) throws ResourceNotFoundException {
+            @RequestBody final NewProductDto productDto,
+            @Parameter(description = "The entity tag the product must still have", example = "W/\"0\"")
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch) throws ResourceNotFoundException, PreconditionFailedException, InvalidRequestException, ResourceExistsException {
 
-        final ProductDto product = productService.getProductById(productId);
         final ProductDto updatedProduct = new ProductDto(
-                product.id(),
+                productId,
                 productDto.name(),
                 productDto.description(),
                 productDto.price(),
@@ -138,7 +378,7 @@ public class ProductsController {
                 productDto.category()
         );
 
-        productService.updateProductById(updatedProduct);
+        productService.updateProductById(updatedProduct, ETags.version(ifMatch));
 
         return ResponseEntity.ok().build();
     }
@@ -213,4 +453,25 @@ public class ProductsController {
 
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Check whether a client accepts gzip compressed responses
+     * @param acceptEncoding The value of the Accept-Encoding header, or null if absent
+     * @return True if gzip is listed and not refused with a zero quality, false otherwise
+     */
+    private static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String encoding : acceptEncoding.split(",")) {
+            final String[] parts = encoding.split(";");
+
+            if (parts[0].strip().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].strip().matches("q=0(\\.0*)?");
+            }
+        }
+
+        return false;
+    }
 }
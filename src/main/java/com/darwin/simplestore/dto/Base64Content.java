@@ -0,0 +1,216 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.entities.Image;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Binary content which is base64 encoded in JSON.
+ * The content is encoded and decoded while the JSON is written or parsed, so the encoded
+ * text is never held in memory. Parsed content is kept in a temporary file until it is closed.
+ * When it is parsed from a request body, the file is also deleted once the request completes,
+ * even if the request is rejected before it reaches its handler
+ */
+@Schema(type = "string", format = "byte", description = "Base64 encoded content", example = "SGVsbG8gd29ybGQh")
+@JsonSerialize(using = Base64Content.Serializer.class)
+@JsonDeserialize(using = Base64Content.Deserializer.class)
+public final class Base64Content implements AutoCloseable {
+    private final Resource resource;
+    private final Path temporaryFile;
+
+    /**
+     * Create the content
+     * @param resource The resource reading the content
+     * @param temporaryFile The temporary file holding the content, deleted when the content is closed, may be null
+     */
+    private Base64Content(final Resource resource, final Path temporaryFile) {
+        this.resource = resource;
+        this.temporaryFile = temporaryFile;
+    }
+
+    /**
+     * Create content read from a resource
+     * @param resource The resource reading the content
+     * @return The content
+     */
+    public static Base64Content of(final Resource resource) {
+        return new Base64Content(resource, null);
+    }
+
+    /**
+     * Create content from bytes
+     * @param content The content
+     * @return The content
+     */
+    public static Base64Content of(final byte[] content) {
+        return of(new ByteArrayResource(content));
+    }
+
+    /**
+     * Create content from base64 encoded text
+     * @param base64Content The base64 encoded content
+     * @return The content
+     * @throws IllegalArgumentException If the text is not valid base64
+     */
+    public static Base64Content decode(final String base64Content) throws IllegalArgumentException {
+        return of(Base64.getDecoder().decode(base64Content));
+    }
+
+    /**
+     * Open a stream reading the decoded content
+     * @return The stream reading the content
+     * @throws IOException If the content could not be opened
+     */
+    public InputStream getInputStream() throws IOException {
+        return resource.getInputStream();
+    }
+
+    /**
+     * Get the size of the decoded content
+     * @return The size of the content in bytes
+     * @throws IOException If the content could not be read
+     */
+    public long contentLength() throws IOException {
+        return resource.contentLength();
+    }
+
+    /**
+     * Delete the temporary file holding parsed content
+     * @throws IOException If the file could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (temporaryFile != null) {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Serializer encoding the content while it is written
+     */
+    public static class Serializer extends JsonSerializer<Base64Content> {
+        @Override
+        public void serialize(final Base64Content value,
+                              final JsonGenerator generator,
+                              final SerializerProvider serializers) throws IOException {
+            try (InputStream content = value.getInputStream()) {
+                generator.writeBinary(content, (int) value.contentLength());
+            }
+        }
+    }
+
+    /**
+     * Deserializer decoding the content into a temporary file while it is parsed,
+     * so only a small buffer is used regardless of the size of the content
+     */
+    public static class Deserializer extends JsonDeserializer<Base64Content> {
+        @Override
+        public Base64Content deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                return (Base64Content) context.handleUnexpectedToken(Base64Content.class, parser);
+            }
+
+            final Path temporaryFile = Files.createTempFile("image-upload-", ".tmp");
+
+            try (OutputStream output = new LimitedOutputStream(Files.newOutputStream(temporaryFile), Image.MAX_SIZE, parser)) {
+                parser.readBinaryValue(output);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporaryFile);
+                throw e;
+            }
+
+            deleteOnRequestCompletion(temporaryFile);
+
+            return new Base64Content(new FileSystemResource(temporaryFile), temporaryFile);
+        }
+    }
+
+    /**
+     * Delete a temporary file once the current request completes, if the content is parsed while handling a request
+     * @param temporaryFile The temporary file
+     */
+    private static void deleteOnRequestCompletion(final Path temporaryFile) {
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        if (requestAttributes == null) {
+            return;
+        }
+
+        // Failing to delete must not stop the other callbacks of the request from running
+        requestAttributes.registerDestructionCallback(Base64Content.class.getName() + "." + temporaryFile,
+                () -> temporaryFile.toFile().delete(), RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Output stream failing once more than a maximum number of bytes is written
+     */
+    private static class LimitedOutputStream extends FilterOutputStream {
+        private final long maxSize;
+        private final JsonParser parser;
+        private long size;
+
+        /**
+         * Create the stream
+         * @param output The stream to write to
+         * @param maxSize The maximum number of bytes
+         * @param parser The parser reading the content, used to locate the error
+         */
+        LimitedOutputStream(final OutputStream output, final long maxSize, final JsonParser parser) {
+            super(output);
+            this.maxSize = maxSize;
+            this.parser = parser;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            checkSize(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            checkSize(len);
+            out.write(b, off, len);
+        }
+
+        /**
+         * Count written bytes
+         * @param length The number of bytes about to be written
+         * @throws JsonMappingException If the maximum size would be exceeded
+         */
+        private void checkSize(final int length) throws JsonMappingException {
+            size += length;
+
+            if (size > maxSize) {
+                throw JsonMappingException.from(parser, "Image content can be maximum " + maxSize + " bytes");
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.darwin.simplestore.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 import java.util.Set;
@@ -13,10 +14,14 @@ import java.util.Set;
  * Record representing a cart
  * @param id Id of the cart
  * @param cartItems Items inside the cart
+ * @param version The version of the cart, changed whenever its items change
  */
 @Schema(description = "An existing cart object")
 public record CartDto(
         @Schema(description = "The id of the cart", example = "1")
         Long id,
         @Schema(description = "The items inside the cart")
-        Set<CartItemDto> cartItems) { }
+        Set<CartItemDto> cartItems,
+        @Schema(description = "The version of the cart, changed whenever its items change", example = "3", accessMode = Schema.AccessMode.READ_ONLY)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Long version) { }
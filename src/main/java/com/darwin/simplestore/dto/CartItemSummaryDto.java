@@ -0,0 +1,29 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Record representing the summary of a cart item, as shown in cart views
+ * @param id The id of the cart item
+ * @param productId The id of the product
+ * @param name The name of the product
+ * @param price The price of the product
+ * @param quantity The quantity of the product in the cart
+ */
+@Schema(description = "The summary of an existing cart item")
+public record CartItemSummaryDto(
+        @Schema(description = "The id of the cart item", example = "1")
+        Long id,
+        @Schema(description = "The id of the product", example = "1")
+        Long productId,
+        @Schema(description = "The name of the product", example = "Cheese")
+        String name,
+        @Schema(description = "The price of the product", example = "2.5")
+        Double price,
+        @Schema(description = "The quantity of the product in the cart", example = "5")
+        Long quantity) { }
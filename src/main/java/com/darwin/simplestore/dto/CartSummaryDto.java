@@ -0,0 +1,22 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Record representing the summary of a cart
+ * @param id Id of the cart
+ * @param cartItems Summaries of the items inside the cart
+ */
+@Schema(description = "The summary of an existing cart")
+public record CartSummaryDto(
+        @Schema(description = "The id of the cart", example = "1")
+        Long id,
+        @Schema(description = "The summaries of the items inside the cart")
+        List<CartItemSummaryDto> cartItems) { }
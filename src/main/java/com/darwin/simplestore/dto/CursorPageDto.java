@@ -0,0 +1,26 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Record representing a page of a keyset paginated list
+ * @param content The elements of the page
+ * @param nextCursor The token to request the next page with, or null if this is the last page
+ * @param hasNext Whether there are more elements after this page
+ * @param <T> The type of the elements
+ */
+@Schema(description = "A page of elements, retrieved using keyset pagination")
+public record CursorPageDto<T>(
+        @Schema(description = "The elements of the page")
+        List<T> content,
+        @Schema(description = "Opaque token used to retrieve the next page", example = "TkFNRXx0cnVlfC18MXxDaGVlc2U")
+        String nextCursor,
+        @Schema(description = "Whether there are more elements after this page", example = "true")
+        boolean hasNext) { }
@@ -0,0 +1,27 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import org.springframework.core.io.Resource;
+
+import java.time.Instant;
+
+/**
+ * Record representing the binary content of an image, along with what is needed to serve it
+ * @param id The id of the image
+ * @param mediaType The media type of the image
+ * @param size The size of the image in bytes
+ * @param hash The SHA-256 hash of the image content, in hex
+ * @param lastModified When the content of the image was last changed, may be null
+ * @param content The content of the image
+ */
+public record ImageContentDto(
+        Long id,
+        String mediaType,
+        long size,
+        String hash,
+        Instant lastModified,
+        Resource content) { }
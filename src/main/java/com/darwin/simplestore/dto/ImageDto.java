@@ -17,4 +17,4 @@ public record ImageDto(
         @Schema(description = "The id of the image", example = "1")
         Long id,
         @Schema(description = "Bse64 encoded image content", example = "SGVsbG8gd29ybGQh")
-        String base64Content) { }
+        Base64Content base64Content) { }
@@ -0,0 +1,40 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+/**
+ * Record representing the description of an image, without its content
+ * @param id The id of the image
+ * @param mediaType The media type of the image
+ * @param size The size of the image in bytes
+ * @param width The width of the image in pixels, null if it could not be decoded
+ * @param height The height of the image in pixels, null if it could not be decoded
+ * @param hash The SHA-256 hash of the image content, in hex
+ * @param createdAt When the image was created, may be null
+ * @param lastModified When the content of the image was last changed, may be null
+ */
+@Schema(description = "The description of an existing image")
+public record ImageMetadataDto(
+        @Schema(description = "The id of the image", example = "1")
+        Long id,
+        @Schema(description = "The media type of the image", example = "image/png")
+        String mediaType,
+        @Schema(description = "The size of the image in bytes", example = "1024")
+        Long size,
+        @Schema(description = "The width of the image in pixels", example = "640")
+        Integer width,
+        @Schema(description = "The height of the image in pixels", example = "480")
+        Integer height,
+        @Schema(description = "The SHA-256 hash of the image content", example = "c0535e4be2b79ffd93291305436bf889314e4a3faec05ecffcbb7df31ad9e51a")
+        String hash,
+        @Schema(description = "When the image was created", example = "2025-01-01T00:00:00Z")
+        Instant createdAt,
+        @Schema(description = "When the content of the image was last changed", example = "2025-01-01T00:00:00Z")
+        Instant lastModified) { }
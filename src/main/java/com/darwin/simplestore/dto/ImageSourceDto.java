@@ -0,0 +1,26 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import java.time.Instant;
+
+/**
+ * Record representing an image along with the location of its content, read without the legacy content columns.
+ * Only used internally to serve the content of images
+ * @param id The id of the image
+ * @param mediaType The media type of the image
+ * @param size The size of the image in bytes
+ * @param hash The SHA-256 hash of the image content, in hex
+ * @param storageKey The key of the content in the image storage, null if the content was not moved there yet
+ * @param lastModified When the content of the image was last changed, may be null
+ */
+public record ImageSourceDto(
+        Long id,
+        String mediaType,
+        Long size,
+        String hash,
+        String storageKey,
+        Instant lastModified) { }
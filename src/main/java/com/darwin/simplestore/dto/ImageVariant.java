@@ -0,0 +1,70 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Enum representing the resized variants generated for images.
+ * A variant fits the original image inside a square of its size, keeping the aspect ratio
+ */
+@Schema(description = "A resized variant of an image")
+public enum ImageVariant {
+    THUMB("thumb", 64),
+    SMALL("small", 256),
+    LARGE("large", 1024);
+
+    private final String name;
+    private final int size;
+
+    ImageVariant(final String name, final int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    /**
+     * Get the name of the variant, as used in requests
+     * @return The variant name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the maximum width and height of the variant
+     * @return The size in pixels
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the entity tag of this variant of some content.
+     * The tag is the same whether the variant is served or the original content in its place
+     * @param hash The hash of the original content
+     * @return The entity tag
+     */
+    public String tag(final String hash) {
+        return hash + "-" + name;
+    }
+
+    /**
+     * Find a variant by its name
+     * @param name The name of the variant
+     * @return The variant
+     * @throws InvalidRequestException If no variant has that name
+     */
+    public static ImageVariant fromName(final String name) throws InvalidRequestException {
+        for (ImageVariant variant : values()) {
+            if (variant.name.equalsIgnoreCase(name)) {
+                return variant;
+            }
+        }
+
+        throw new InvalidRequestException("Unknown image variant: " + name);
+    }
+}
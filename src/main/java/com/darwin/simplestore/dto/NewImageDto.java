@@ -9,9 +9,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
 
 /**
  * Record representing an image
- * @param base64Content Base64 encoded content of the image
+ * @param base64Content Base64 encoded content of the image, decoded while the request is parsed
  */
 @Schema(description = "A new image to be create")
 public record NewImageDto(
         @Schema(description = "The base64 encoded content of the image", example = "SGVsbG8gd29ybGQh")
-        String base64Content) { }
+        Base64Content base64Content) { }
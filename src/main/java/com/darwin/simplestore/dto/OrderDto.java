@@ -5,6 +5,7 @@
 
 package com.darwin.simplestore.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 /**
@@ -12,6 +13,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
  * @param id Id of the order
  * @param cartDto Dto representing teh cart associated with the order
  * @param status The status of the order
+ * @param version The version of the order, changed whenever its status changes
  */
 @Schema(description = "An existing order")
 public record OrderDto(
@@ -20,4 +22,7 @@ public record OrderDto(
         @Schema(description = "The cart associated with the order")
         CartDto cartDto,
         @Schema(description = "The status of the order", example = "AWAITING_PAYMENT")
-        OrderStatus status) { }
+        OrderStatus status,
+        @Schema(description = "The version of the order, changed whenever its status changes", example = "1", accessMode = Schema.AccessMode.READ_ONLY)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Long version) { }
@@ -0,0 +1,22 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Record representing the result of looking up multiple products by id
+ * @param products The products found, in the order they were requested
+ * @param missingIds The requested ids for which no product exists
+ */
+@Schema(description = "Products looked up by id")
+public record ProductBatchDto(
+        @Schema(description = "The products found, in the order they were requested")
+        List<ProductDto> products,
+        @Schema(description = "The requested ids for which no product exists", example = "[4, 7]")
+        List<Long> missingIds) { }
@@ -0,0 +1,108 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Record representing a position inside a keyset paginated list of products.
+ * The position is serialized to an opaque token, so that clients can continue from it
+ * @param sortField The field the products are sorted by
+ * @param ascending Whether the products are sorted in ascending order
+ * @param category The category the products are filtered by, or null
+ * @param lastValue The sort field value of the last returned product, or null for the first page
+ * @param lastId The id of the last returned product, or null for the first page
+ */
+public record ProductCursor(
+        ProductSortField sortField,
+        boolean ascending,
+        ProductCategory category,
+        String lastValue,
+        Long lastId) {
+    private static final String SEPARATOR = "|";
+    private static final String NO_CATEGORY = "-";
+
+    /**
+     * Create a cursor pointing before the first product
+     * @param sortField The field the products are sorted by
+     * @param ascending Whether the products are sorted in ascending order
+     * @param category The category the products are filtered by, or null
+     * @return A cursor for the first page
+     */
+    public static ProductCursor first(final ProductSortField sortField,
+                                      final boolean ascending,
+                                      final ProductCategory category) {
+        return new ProductCursor(sortField, ascending, category, null, null);
+    }
+
+    /**
+     * Create a cursor pointing right after a product
+     * @param productDto The last product of the current page
+     * @return A cursor for the next page
+     */
+    public ProductCursor after(final ProductDto productDto) {
+        return new ProductCursor(sortField, ascending, category, sortField.valueOf(productDto), productDto.id());
+    }
+
+    /**
+     * Get the typed sort field value of the last returned product
+     * @return The typed value, or null for the first page
+     */
+    public Object typedLastValue() {
+        return lastValue == null ? null : sortField.parse(lastValue);
+    }
+
+    /**
+     * Serialize the cursor to an opaque token
+     * @return The token
+     */
+    public String encode() {
+        final String raw = String.join(SEPARATOR,
+                sortField.name(),
+                Boolean.toString(ascending),
+                category == null ? NO_CATEGORY : category.name(),
+                String.valueOf(lastId),
+                lastValue);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deserialize a cursor from a token
+     * @param token The token returned by a previous page
+     * @return The cursor
+     * @throws InvalidRequestException If the token is malformed
+     */
+    public static ProductCursor decode(final String token) throws InvalidRequestException {
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // The value goes last, so it may contain the separator itself
+            final String[] parts = raw.split("\\" + SEPARATOR, 5);
+
+            if (parts.length != 5) {
+                throw new InvalidRequestException("Invalid cursor: " + token);
+            }
+
+            final ProductSortField sortField = ProductSortField.valueOf(parts[0]);
+            final ProductCategory category = NO_CATEGORY.equals(parts[2]) ? null : ProductCategory.valueOf(parts[2]);
+            final ProductCursor cursor = new ProductCursor(
+                    sortField,
+                    Boolean.parseBoolean(parts[1]),
+                    category,
+                    parts[4],
+                    Long.valueOf(parts[3]));
+
+            cursor.typedLastValue();
+
+            return cursor;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor: " + token);
+        }
+    }
+}
@@ -5,6 +5,8 @@
 
 package com.darwin.simplestore.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 /**
@@ -15,8 +17,11 @@ import io.swagger.v3.oas.annotations.media.Schema;
  * @param price The price of the product
  * @param quantity The quantity of the product
  * @param category The category of the product
+ * @param image The description of the product image, only set when it was requested
+ * @param version The version of the product, changed by every update
  */
 @Schema(description = "An existing product description")
+@JsonFilter(ProductFields.FILTER)
 public record ProductDto(
         @Schema(description = "The id of the product", example = "1")
         Long id,
@@ -30,4 +35,37 @@ public record ProductDto(
         Long quantity,
 
 
-        ProductCategory category) { }
+        ProductCategory category,
+        @Schema(description = "The description of the product image, when requested", accessMode = Schema.AccessMode.READ_ONLY)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        ImageMetadataDto image,
+        @Schema(description = "The version of the product, changed by every update", example = "3", accessMode = Schema.AccessMode.READ_ONLY)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Long version) {
+    /**
+     * Create a product DTO without its image and version
+     * @param id The id of the product
+     * @param name The name of the product
+     * @param description The description of the product
+     * @param price The price of the product
+     * @param quantity The quantity of the product
+     * @param category The category of the product
+     */
+    public ProductDto(final Long id,
+                      final String name,
+                      final String description,
+                      final Double price,
+                      final Long quantity,
+                      final ProductCategory category) {
+        this(id, name, description, price, quantity, category, null, null);
+    }
+
+    /**
+     * Copy the product DTO with the description of its image
+     * @param image The description of the product image
+     * @return The product DTO including the image
+     */
+    public ProductDto withImage(final ImageMetadataDto image) {
+        return new ProductDto(id, name, description, price, quantity, category, image, version);
+    }
+}
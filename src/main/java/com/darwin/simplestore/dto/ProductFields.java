@@ -0,0 +1,152 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * The product fields requested by a client. The other fields are left out while the response is serialized,
+ * wherever products appear in it, including the products inside carts and orders
+ */
+public final class ProductFields {
+    /**
+     * The id of the Jackson filter applied to product DTOs
+     */
+    public static final String FILTER = "productFields";
+
+    private static final Set<String> PRODUCT_FIELDS = componentNames(ProductDto.class);
+    private static final Set<String> SUMMARY_FIELDS = componentNames(ProductSummaryDto.class);
+    private static final ProductFields ALL = new ProductFields(PRODUCT_FIELDS, SimpleBeanPropertyFilter.serializeAll());
+
+    private final Set<String> fields;
+    private final FilterProvider filters;
+
+    /**
+     * Create the requested fields
+     * @param fields The names of the requested fields
+     * @param filter The filter keeping only the requested fields
+     */
+    private ProductFields(final Set<String> fields, final SimpleBeanPropertyFilter filter) {
+        this.fields = fields;
+        this.filters = new SimpleFilterProvider().addFilter(FILTER, filter);
+    }
+
+    /**
+     * Get the fields selecting the whole product
+     * @return All the product fields
+     */
+    public static ProductFields all() {
+        return ALL;
+    }
+
+    /**
+     * Parse the fields requested by a client
+     * @param fields The comma separated names of the fields, or null for all the fields
+     * @return The requested fields
+     * @throws InvalidRequestException If a field is not a product field, or no field is requested
+     */
+    public static ProductFields parse(final String fields) throws InvalidRequestException {
+        if (fields == null) {
+            return ALL;
+        }
+
+        final Set<String> requested = new LinkedHashSet<>();
+
+        for (String field : fields.split(",")) {
+            final String name = field.strip();
+
+            if (!PRODUCT_FIELDS.contains(name)) {
+                throw new InvalidRequestException("Unknown product field: " + name + ", the fields are: " + String.join(", ", PRODUCT_FIELDS));
+            }
+
+            requested.add(name);
+        }
+
+        return new ProductFields(Collections.unmodifiableSet(requested), SimpleBeanPropertyFilter.filterOutAllExcept(requested));
+    }
+
+    /**
+     * Check whether all the requested fields are part of the product summary,
+     * in which case the products can be read through the summary projection
+     * @return True if the summary holds all the requested fields
+     */
+    public boolean isSummary() {
+        return SUMMARY_FIELDS.containsAll(fields);
+    }
+
+    /**
+     * Check whether the products can be read through the summary projection for a view,
+     * either because the summary view is requested or because the summary holds all the requested fields
+     * @param view The requested view
+     * @return True if the products are read as summaries
+     * @throws InvalidRequestException If the summary view is requested together with fields it does not hold
+     */
+    public boolean isSummary(final ProductView view) throws InvalidRequestException {
+        if (view != ProductView.SUMMARY) {
+            return isSummary();
+        }
+
+        if (this != ALL && !isSummary()) {
+            final Set<String> missing = new LinkedHashSet<>(fields);
+            missing.removeAll(SUMMARY_FIELDS);
+
+            throw new InvalidRequestException("The summary view does not hold the product fields: " + String.join(", ", missing));
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the requested fields in a normalized form, which is the same for every way of requesting them
+     * @return The sorted, comma separated names of the requested fields
+     */
+    public String normalized() {
+        return String.join(",", new TreeSet<>(fields));
+    }
+
+    /**
+     * Get the Jackson filters keeping only the requested fields
+     * @return The filter provider
+     */
+    public FilterProvider getFilters() {
+        return filters;
+    }
+
+    /**
+     * Wrap a response body, so only the requested fields of its products are serialized
+     * @param body The response body
+     * @return The wrapped body
+     */
+    public MappingJacksonValue apply(final Object body) {
+        final MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(filters);
+
+        return value;
+    }
+
+    /**
+     * Get the names of the components of a record
+     * @param type The record type
+     * @return The component names, in declaration order
+     */
+    private static Set<String> componentNames(final Class<? extends Record> type) {
+        return Arrays.stream(type.getRecordComponents())
+                .map(RecordComponent::getName)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
@@ -0,0 +1,49 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import org.springframework.http.MediaType;
+
+/**
+ * Enum representing the file formats products can be imported from and exported to
+ */
+public enum ProductFileFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON),
+    CSV(new MediaType("text", "csv"));
+
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    ProductFileFormat(final MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Get the media type of the format
+     * @return The media type
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Find the format corresponding to a media type
+     * @param mediaType The media type, parameters such as the charset are ignored
+     * @return The file format
+     * @throws InvalidRequestException If no format corresponds to the media type
+     */
+    public static ProductFileFormat fromMediaType(final MediaType mediaType) throws InvalidRequestException {
+        for (ProductFileFormat format : values()) {
+            if (format.mediaType.equalsTypeAndSubtype(mediaType)) {
+                return format;
+            }
+        }
+
+        throw new InvalidRequestException("Unsupported product file format: " + mediaType);
+    }
+}
@@ -0,0 +1,20 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Record representing a row which could not be imported
+ * @param line The line number of the row in the imported file
+ * @param message The reason the row was rejected
+ */
+@Schema(description = "A row which could not be imported")
+public record ProductImportErrorDto(
+        @Schema(description = "The line number of the row in the imported file", example = "3")
+        long line,
+        @Schema(description = "The reason the row was rejected", example = "Product price cannot be null")
+        String message) { }
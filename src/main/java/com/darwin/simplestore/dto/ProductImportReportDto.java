@@ -0,0 +1,28 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Record representing the result of a bulk product import
+ * @param imported The number of imported products
+ * @param failed The number of rejected rows
+ * @param errors The rejected rows, up to a configured limit
+ * @param errorsTruncated Whether more rows were rejected than are listed in the errors
+ */
+@Schema(description = "The result of a bulk product import")
+public record ProductImportReportDto(
+        @Schema(description = "The number of imported products", example = "1000")
+        long imported,
+        @Schema(description = "The number of rejected rows", example = "2")
+        long failed,
+        @Schema(description = "The rejected rows, up to a configured limit")
+        List<ProductImportErrorDto> errors,
+        @Schema(description = "Whether more rows were rejected than are listed in the errors", example = "false")
+        boolean errorsTruncated) { }
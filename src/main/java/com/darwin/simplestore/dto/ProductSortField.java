@@ -0,0 +1,78 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.function.Function;
+
+/**
+ * Enum representing the product fields that support keyset pagination.
+ * Every field is non-null, so it can be combined with the id into a unique, totally ordered key
+ */
+@Schema(description = "A product field that can be used for keyset pagination")
+public enum ProductSortField {
+    ID("id", Long::valueOf, ProductDto::id),
+    NAME("name", value -> value, ProductDto::name),
+    PRICE("price", Double::valueOf, ProductDto::price),
+    QUANTITY("quantity", Long::valueOf, ProductDto::quantity);
+
+    private final String property;
+    private final Function<String, Object> parser;
+    private final Function<ProductDto, Object> extractor;
+
+    ProductSortField(final String property,
+                     final Function<String, Object> parser,
+                     final Function<ProductDto, Object> extractor) {
+        this.property = property;
+        this.parser = parser;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Get the name of the entity property backing this field
+     * @return The property name
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Convert a value of this field from its string form
+     * @param value The string form of the value
+     * @return The typed value
+     * @throws IllegalArgumentException If the value is not valid for this field
+     */
+    public Object parse(final String value) {
+        return parser.apply(value);
+    }
+
+    /**
+     * Get the value of this field from a product, in its string form
+     * @param productDto The product DTO
+     * @return The string form of the value
+     */
+    public String valueOf(final ProductDto productDto) {
+        return String.valueOf(extractor.apply(productDto));
+    }
+
+    /**
+     * Find the sort field for a property name
+     * @param property The name of the property
+     * @return The matching sort field
+     * @throws InvalidRequestException If the property does not support keyset pagination
+     */
+    public static ProductSortField fromProperty(final String property) throws InvalidRequestException {
+        for (ProductSortField sortField : values()) {
+            if (sortField.property.equals(property)) {
+                return sortField;
+            }
+        }
+
+        throw new InvalidRequestException("Cannot scroll products sorted by: " + property);
+    }
+}
@@ -0,0 +1,32 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Record representing the summary of a product, as shown in product lists.
+ * Leaves out the description, so it can be read without loading the full product
+ * @param id The id of the product
+ * @param name The name of the product
+ * @param price The price of the product
+ * @param quantity The quantity of the product
+ * @param category The category of the product
+ */
+@Schema(description = "The summary of an existing product")
+@JsonFilter(ProductFields.FILTER)
+public record ProductSummaryDto(
+        @Schema(description = "The id of the product", example = "1")
+        Long id,
+        @Schema(description = "The name of the product", example = "Cheese")
+        String name,
+        @Schema(description = "The price of the product", example = "2.5")
+        Double price,
+        @Schema(description = "Available quantity of the product", example = "100")
+        Long quantity,
+        @Schema(description = "The category of the product", example = "FOOD")
+        ProductCategory category) { }
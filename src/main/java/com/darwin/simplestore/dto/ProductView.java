@@ -0,0 +1,40 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Enum representing how much of a product is returned by list and cart endpoints
+ */
+@Schema(description = "How much of a product to return")
+public enum ProductView {
+    /**
+     * Only the columns shown in lists, read without loading the product entities
+     */
+    SUMMARY,
+    /**
+     * The whole product
+     */
+    FULL;
+
+    /**
+     * Find the view for a name, ignoring the case
+     * @param name The name of the view
+     * @return The matching view
+     * @throws InvalidRequestException If no view has such name
+     */
+    public static ProductView fromName(final String name) throws InvalidRequestException {
+        for (ProductView view : values()) {
+            if (view.name().equalsIgnoreCase(name)) {
+                return view;
+            }
+        }
+
+        throw new InvalidRequestException("Unknown product view: " + name);
+    }
+}
@@ -0,0 +1,34 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Record representing a page of elements, without an exact total count
+ * @param content The elements of the page
+ * @param number The number of the page
+ * @param size The requested size of the page
+ * @param hasNext Whether there are more elements after this page
+ * @param totalElements The cached total number of elements, if requested
+ * @param <T> The type of the elements
+ */
+@Schema(description = "A page of elements, which only knows whether there is a next page")
+public record SliceDto<T>(
+        @Schema(description = "The elements of the page")
+        List<T> content,
+        @Schema(description = "The number of the page", example = "0")
+        int number,
+        @Schema(description = "The requested size of the page", example = "5")
+        int size,
+        @Schema(description = "Whether there are more elements after this page", example = "true")
+        boolean hasNext,
+        @Schema(description = "The total number of elements, served from a cache that may briefly lag behind writes", example = "42")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Long totalElements) { }
@@ -18,10 +18,15 @@ import lombok.*;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "cart_items")
+@Table(name = "cart_items", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_cart_items_cart_product", columnNames = {"cart_id", "product_id"})
+})
 public class CartItem {
+    public static final String CART_CONSTRAINT = "fk_cart_items_cart";
+    public static final String PRODUCT_CONSTRAINT = "fk_cart_items_product";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @NotNull(message = "Cart item quantity cannot be null")
@@ -29,12 +34,12 @@ public class CartItem {
 
     @NotNull(message = "Cart cannot be null")
     @JsonIgnore
-    @ManyToOne
-    @JoinColumn(name = "cart_id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "cart_id", foreignKey = @ForeignKey(name = CART_CONSTRAINT))
     private Cart cart;
 
     @NotNull(message = "Product cannot be null")
-    @ManyToOne
-    @JoinColumn(name = "product_id")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", foreignKey = @ForeignKey(name = PRODUCT_CONSTRAINT))
     private Product product;
 }
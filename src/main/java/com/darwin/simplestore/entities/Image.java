@@ -6,7 +6,6 @@
 package com.darwin.simplestore.entities;
 
 import jakarta.persistence.*;
-import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
@@ -14,6 +13,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.Instant;
+
 /**
  * Entity class for images
  */
@@ -22,15 +23,44 @@ import lombok.Setter;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "images")
+@Table(name = "images", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_images_hash", columnNames = "hash")
+})
 public class Image {
+    public static final int MAX_SIZE = 4194304;
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
-    @NotNull(message = "Image content cannot be null")
-    @NotEmpty(message = "Image content cannot be empty")
-    @Size(max = 4194304, message = "Image content can be maximum 4194304 bytes")
-    @Column(length = 4194304)
-    private String base64Image;
+    // Only set for images stored before the content was moved to the image storage
+    @Size(max = MAX_SIZE, message = "Image content can be maximum 4194304 bytes")
+    @Column(length = MAX_SIZE)
+    private byte[] content;
+
+    @NotNull(message = "Image media type cannot be null")
+    private String mediaType;
+
+    @NotNull(message = "Image size cannot be null")
+    private Long size;
+
+    @NotNull(message = "Image hash cannot be null")
+    @Column(length = 64)
+    private String hash;
+
+    private String storageKey;
+
+    // Not set for images stored before modification times were recorded
+    private Instant lastModified;
+
+    // Not set for images whose content could not be decoded
+    private Integer width;
+
+    private Integer height;
+
+    private Instant createdAt;
+
+    // Number of products using the image, the image is deleted when the last one releases it
+    @Column(nullable = false)
+    private long referenceCount;
 }
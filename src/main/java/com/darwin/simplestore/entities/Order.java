@@ -35,4 +35,7 @@ public class Order {
     @NotNull(message = "Order status cannot be null")
     @Enumerated(EnumType.STRING)
     private OrderStatus status;
+
+    @Version
+    private Long version;
 }
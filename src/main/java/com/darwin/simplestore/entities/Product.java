@@ -20,14 +20,28 @@ import lombok.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "products")
+@Table(name = "products", uniqueConstraints = {
+        @UniqueConstraint(name = Product.NAME_CONSTRAINT, columnNames = "name")
+}, indexes = {
+        @Index(name = "idx_products_name_id", columnList = "name, id"),
+        @Index(name = "idx_products_price_id", columnList = "price, id"),
+        @Index(name = "idx_products_quantity_id", columnList = "quantity, id"),
+        @Index(name = "idx_products_category_id", columnList = "category, id"),
+        @Index(name = "idx_products_category_name_id", columnList = "category, name, id"),
+        @Index(name = "idx_products_category_price_id", columnList = "category, price, id"),
+        @Index(name = "idx_products_category_quantity_id", columnList = "category, quantity, id")
+})
 public class Product {
+    public static final String NAME_CONSTRAINT = "uk_products_name";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
     @NotNull(message = "Product name cannot be null")
     @NotEmpty(message = "Product name cannot be empty")
+    @Size(max = 255, message = "Product name can be at most 255 characters long")
+    @Column(length = 255)
     private String name;
 
     @Size(max = 4096, message = "Product description can be at most 4096 characters long")
@@ -43,7 +57,10 @@ public class Product {
     @Enumerated(EnumType.STRING)
     private ProductCategory category;
 
-    @OneToOne(fetch = FetchType.LAZY, orphanRemoval = true, cascade = CascadeType.ALL)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "image_id", referencedColumnName = "id", nullable = true)
     private Image image;
+
+    @Version
+    private Long version;
 }
@@ -10,6 +10,7 @@ import com.darwin.simplestore.dto.FieldErrorDto;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -110,6 +111,26 @@ public class GlobalControllerAdvice {
         return errorResponseDto;
     }
 
+    /**
+     * Handle invalid request exception
+     * @param e The exception
+     * @param request The associated request
+     * @return Error DTO
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    @ResponseStatus(code = HttpStatus.BAD_REQUEST)
+    public ErrorResponseDto handleInvalidRequestException(
+            final InvalidRequestException e,
+            final HttpServletRequest request) {
+        final ErrorResponseDto errorResponseDto = new ErrorResponseDto();
+
+        errorResponseDto.setFromHttpStatus(HttpStatus.BAD_REQUEST);
+        errorResponseDto.setMessage(e.getMessage());
+        errorResponseDto.setPath(request.getRequestURI());
+
+        return errorResponseDto;
+    }
+
     /**
      * Handle resource not found exception
      * @param e The exception
@@ -129,4 +150,44 @@ public class GlobalControllerAdvice {
 
         return errorResponseDto;
     }
+
+    /**
+     * Handle precondition failed exception
+     * @param e The exception
+     * @param request The associated request
+     * @return Error DTO
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    @ResponseStatus(code = HttpStatus.PRECONDITION_FAILED)
+    public ErrorResponseDto handlePreconditionFailedException(
+            final PreconditionFailedException e,
+            final HttpServletRequest request) {
+        final ErrorResponseDto errorResponseDto = new ErrorResponseDto();
+
+        errorResponseDto.setFromHttpStatus(HttpStatus.PRECONDITION_FAILED);
+        errorResponseDto.setMessage(e.getMessage());
+        errorResponseDto.setPath(request.getRequestURI());
+
+        return errorResponseDto;
+    }
+
+    /**
+     * Handle optimistic locking failures, raised when a concurrent request updated the same resource first
+     * @param e The exception
+     * @param request The associated request
+     * @return Error DTO
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(code = HttpStatus.PRECONDITION_FAILED)
+    public ErrorResponseDto handleOptimisticLockingFailureException(
+            final OptimisticLockingFailureException e,
+            final HttpServletRequest request) {
+        final ErrorResponseDto errorResponseDto = new ErrorResponseDto();
+
+        errorResponseDto.setFromHttpStatus(HttpStatus.PRECONDITION_FAILED);
+        errorResponseDto.setMessage("The resource was changed by another request");
+        errorResponseDto.setPath(request.getRequestURI());
+
+        return errorResponseDto;
+    }
 }
@@ -9,10 +9,12 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
- * Exception class, used for signaling that a requested resource could not be found
+ * Exception class, used for signaling that a requested resource could not be found.
+ * The exception is only used to answer with a 404 response, so it does not capture a stack trace
+ * and does not record suppressed exceptions, which keeps throwing it about as cheap as returning
  */
 public class ResourceNotFoundException extends RuntimeException {
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
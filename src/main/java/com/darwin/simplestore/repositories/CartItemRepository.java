@@ -5,16 +5,68 @@
 
 package com.darwin.simplestore.repositories;
 
+import com.darwin.simplestore.dto.CartItemSummaryDto;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for cart items
  */
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     List<CartItem> findAllByCart(Cart cart);
+
+    @EntityGraph(attributePaths = "product")
+    Optional<CartItem> findByCartIdAndProductId(Long cartId, Long productId);
+
     void deleteAllByCartId(Long cartId);
+
+    /**
+     * Find the summaries of the items of a cart, selecting only the columns shown in cart views
+     * @param cartId The id of the cart
+     * @return The summaries of the cart items, ordered by id
+     */
+    @Query("select new com.darwin.simplestore.dto.CartItemSummaryDto(c.id, p.id, p.name, p.price, c.quantity) " +
+            "from CartItem c join c.product p where c.cart.id = :cartId order by c.id")
+    List<CartItemSummaryDto> findSummariesByCartId(@Param("cartId") Long cartId);
+
+    /**
+     * Add a quantity of a product to a cart, creating the item if the product is not in the cart yet
+     * @param cartId The id of the cart
+     * @param productId The id of the product
+     * @param quantity The quantity to add
+     */
+    @Modifying
+    @Query(value = "insert into cart_items (cart_id, product_id, quantity) values (:cartId, :productId, :quantity) " +
+            "on conflict (cart_id, product_id) do update set quantity = cart_items.quantity + excluded.quantity",
+            nativeQuery = true)
+    void upsertQuantity(@Param("cartId") Long cartId, @Param("productId") Long productId, @Param("quantity") Long quantity);
+
+    /**
+     * Set the quantity of a product in a cart
+     * @param cartId The id of the cart
+     * @param productId The id of the product
+     * @param quantity The new quantity
+     * @return The number of updated items, 0 if the product is not in the cart
+     */
+    @Modifying
+    @Query("update CartItem c set c.quantity = :quantity where c.cart.id = :cartId and c.product.id = :productId")
+    int updateQuantity(@Param("cartId") Long cartId, @Param("productId") Long productId, @Param("quantity") Long quantity);
+
+    /**
+     * Remove a product from a cart
+     * @param cartId The id of the cart
+     * @param productId The id of the product
+     * @return The number of deleted items, 0 if the product is not in the cart
+     */
+    @Modifying
+    @Query("delete from CartItem c where c.cart.id = :cartId and c.product.id = :productId")
+    int deleteByCartIdAndProductId(@Param("cartId") Long cartId, @Param("productId") Long productId);
 }
@@ -6,7 +6,11 @@
 package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.entities.Cart;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -14,5 +18,41 @@ import java.util.Optional;
  * Repository for cart objects
  */
 public interface CartRepository extends JpaRepository<Cart, Long> {
+    /**
+     * Find a cart along with its items and their products, in a single query
+     * @param id The id of the cart
+     * @return The cart, or empty if it does not exist
+     */
+    @EntityGraph(attributePaths = {"cartItems", "cartItems.product"})
+    Optional<Cart> findWithItemsById(Long id);
 
+    /**
+     * Find the version tag of a cart, without loading the cart or its items.
+     * The tag joins the version of the cart with the sum of the versions of its products. The version of the cart
+     * changes whenever its items change, and while they stay the same the sum only grows, so the tag never repeats
+     * @param id The id of the cart
+     * @return The version tag of the cart, or empty if it does not exist
+     */
+    @Query("select concat(str(c.version), '.', str(coalesce(sum(p.version), 0))) " +
+            "from Cart c left join c.cartItems i left join i.product p where c.id = :id group by c.id, c.version")
+    Optional<String> findVersionTagById(@Param("id") Long id);
+
+    /**
+     * Increment the version of a cart, after its items were changed without loading it
+     * @param id The id of the cart
+     * @return The number of updated carts, 0 if the cart does not exist
+     */
+    @Modifying
+    @Query("update Cart c set c.version = c.version + 1 where c.id = :id")
+    int incrementVersion(@Param("id") Long id);
+
+    /**
+     * Increment the version of a cart, only if it still has the expected version
+     * @param id The id of the cart
+     * @param version The expected version of the cart
+     * @return The number of updated carts, 0 if the cart does not exist or has another version
+     */
+    @Modifying
+    @Query("update Cart c set c.version = c.version + 1 where c.id = :id and c.version = :version")
+    int incrementVersion(@Param("id") Long id, @Param("version") Long version);
 }
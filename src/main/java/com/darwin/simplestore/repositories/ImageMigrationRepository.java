@@ -0,0 +1,99 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository fragment for moving the content of legacy images out of the database.
+ * The legacy content columns are not mapped by the image entity, so they are accessed with native SQL
+ */
+public interface ImageMigrationRepository {
+    /**
+     * An image whose content is still kept in the database
+     * @param id The id of the image
+     * @param content The binary content, or null
+     * @param base64Content The base64 encoded content of the original schema, or null
+     */
+    record LegacyImage(Long id, byte[] content, String base64Content) {
+        /**
+         * Get the legacy content, decoding the base64 column of the original schema if needed
+         * @return The content, or null if the image has no legacy content
+         * @throws IllegalArgumentException If the base64 content is not valid
+         */
+        public byte[] decodedContent() throws IllegalArgumentException {
+            if (content != null) {
+                return content;
+            }
+
+            return base64Content == null ? null : Base64.getMimeDecoder().decode(base64Content);
+        }
+    }
+
+    /**
+     * The description of an image whose content was moved to the image storage
+     * @param id The id of the image
+     * @param storageKey The key of the content in the image storage
+     * @param hash The SHA-256 hash of the content
+     * @param size The size of the content in bytes
+     * @param width The width of the image, or null if it could not be decoded
+     * @param height The height of the image, or null if it could not be decoded
+     * @param mediaType The media type of the image, used if none was recorded
+     * @param migratedAt The time of the migration, used if no creation or modification time was recorded
+     */
+    record MigratedImage(Long id, String storageKey, String hash, long size, Integer width, Integer height,
+                         String mediaType, Instant migratedAt) { }
+
+    /**
+     * Check whether the images table still has the base64 content column of the original schema
+     * @return Whether the base64_image column exists
+     */
+    boolean hasBase64Column();
+
+    /**
+     * Find the images whose content was not moved to the image storage, in id order
+     * @param afterId Only images with a greater id are returned
+     * @param limit The maximum number of images to return
+     * @param base64Column Whether the base64_image column exists and should be selected
+     * @return The images with their legacy content
+     */
+    List<LegacyImage> findLegacyImages(long afterId, int limit, boolean base64Column);
+
+    /**
+     * Find an image whose content was not moved to the image storage
+     * @param id The id of the image
+     * @param base64Column Whether the base64_image column exists and should be selected
+     * @return The image with its legacy content, empty if it does not exist or was already migrated
+     */
+    Optional<LegacyImage> findLegacyImage(Long id, boolean base64Column);
+
+    /**
+     * Record that the content of an image was moved to the image storage, and clear its legacy content columns
+     * @param image The description of the moved content
+     * @param base64Column Whether the base64_image column exists and should be cleared
+     * @return The number of updated images, 0 if the image was deleted or already migrated
+     */
+    int completeMigration(MigratedImage image, boolean base64Column);
+
+    /**
+     * Merge an image into another image with the same content. The products referencing the duplicate
+     * are pointed to the other image, which takes over their references, and the duplicate is deleted
+     * @param duplicateId The id of the duplicate image
+     * @param imageId The id of the image which is kept
+     * @return The number of products pointed to the kept image
+     */
+    int mergeInto(Long duplicateId, Long imageId);
+
+    /**
+     * Raise the reference count of every image to the number of products referencing it,
+     * for images created before the references were counted
+     * @return The number of updated images
+     */
+    int backfillReferenceCounts();
+}
@@ -0,0 +1,116 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Implementation of the legacy image fragment
+ */
+@RequiredArgsConstructor
+public class ImageMigrationRepositoryImpl implements ImageMigrationRepository {
+    private static final String BASE64_COLUMN_SQL = "select count(*) from information_schema.columns " +
+            "where table_schema = current_schema() and table_name = 'images' and column_name = 'base64_image'";
+    private static final String LEGACY_IMAGES_SQL =
+            "select id, content, %s as base64_image from images where storage_key is null and id > ? order by id limit ?";
+    private static final String LEGACY_IMAGE_SQL =
+            "select id, content, %s as base64_image from images where id = ? and storage_key is null";
+    private static final String COMPLETE_MIGRATION_SQL = "update images set storage_key = ?, hash = ?, size = ?, width = ?, height = ?, " +
+            "media_type = coalesce(media_type, ?), created_at = coalesce(created_at, ?), last_modified = coalesce(last_modified, ?), " +
+            "content = null%s where id = ? and storage_key is null";
+    private static final String MOVE_PRODUCTS_SQL = "update products set image_id = ? where image_id = ?";
+    private static final String RETAIN_SQL = "update images set reference_count = reference_count + ? where id = ?";
+    private static final String DELETE_SQL = "delete from images where id = ?";
+    private static final String BACKFILL_REFERENCE_COUNTS_SQL = "update images i set reference_count = r.product_count " +
+            "from (select image_id, count(*) as product_count from products where image_id is not null group by image_id) r " +
+            "where i.id = r.image_id and i.reference_count < r.product_count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean hasBase64Column() {
+        final Integer columns = jdbcTemplate.queryForObject(BASE64_COLUMN_SQL, Integer.class);
+
+        return columns != null && columns > 0;
+    }
+
+    @Override
+    public List<LegacyImage> findLegacyImages(final long afterId, final int limit, final boolean base64Column) {
+        // The query bypasses the persistence context, so pending changes must reach the database first
+        entityManager.flush();
+
+        final String sql = LEGACY_IMAGES_SQL.formatted(base64Column ? "base64_image" : "null");
+
+        return jdbcTemplate.query(sql, (resultSet, row) -> new LegacyImage(
+                resultSet.getLong("id"),
+                resultSet.getBytes("content"),
+                resultSet.getString("base64_image")), afterId, limit);
+    }
+
+    @Override
+    public Optional<LegacyImage> findLegacyImage(final Long id, final boolean base64Column) {
+        // Used to serve content outside of transactions, so there is nothing to flush
+        final String sql = LEGACY_IMAGE_SQL.formatted(base64Column ? "base64_image" : "null");
+
+        return jdbcTemplate.query(sql, (resultSet, row) -> new LegacyImage(
+                resultSet.getLong("id"),
+                resultSet.getBytes("content"),
+                resultSet.getString("base64_image")), id).stream().findFirst();
+    }
+
+    @Override
+    public int completeMigration(final MigratedImage image, final boolean base64Column) {
+        // The update bypasses the persistence context, so pending changes must reach the database first
+        entityManager.flush();
+
+        final Timestamp migratedAt = Timestamp.from(image.migratedAt());
+
+        return jdbcTemplate.update(
+                COMPLETE_MIGRATION_SQL.formatted(base64Column ? ", base64_image = null" : ""),
+                image.storageKey(),
+                image.hash(),
+                image.size(),
+                image.width(),
+                image.height(),
+                image.mediaType(),
+                migratedAt,
+                migratedAt,
+                image.id());
+    }
+
+    @Override
+    public int mergeInto(final Long duplicateId, final Long imageId) {
+        entityManager.flush();
+
+        // The product versions are kept, since the products still have an image with the same content
+        final int moved = jdbcTemplate.update(MOVE_PRODUCTS_SQL, imageId, duplicateId);
+
+        if (moved > 0) {
+            jdbcTemplate.update(RETAIN_SQL, moved, imageId);
+        }
+
+        jdbcTemplate.update(DELETE_SQL, duplicateId);
+
+        return moved;
+    }
+
+    @Override
+    public int backfillReferenceCounts() {
+        entityManager.flush();
+
+        return jdbcTemplate.update(BACKFILL_REFERENCE_COUNTS_SQL);
+    }
+}
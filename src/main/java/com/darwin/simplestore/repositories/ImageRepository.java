@@ -5,11 +5,108 @@
 
 package com.darwin.simplestore.repositories;
 
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageSourceDto;
 import com.darwin.simplestore.entities.Image;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 /**
  * Repository of image objects
  */
-public interface ImageRepository extends JpaRepository<Image, Long> {
+public interface ImageRepository extends JpaRepository<Image, Long>, ImageMigrationRepository {
+    /**
+     * Find the description of an image, without selecting its content
+     * @param id The id of the image
+     * @return The description of the image
+     */
+    @Query("select new com.darwin.simplestore.dto.ImageMetadataDto(i.id, i.mediaType, i.size, i.width, i.height, i.hash, i.createdAt, i.lastModified) " +
+            "from Image i where i.id = :id")
+    Optional<ImageMetadataDto> findMetadataById(@Param("id") Long id);
+
+    /**
+     * Find an image along with the location of its content, without selecting its legacy content
+     * @param id The id of the image
+     * @return The image and the key of its content
+     */
+    @Query("select new com.darwin.simplestore.dto.ImageSourceDto(i.id, i.mediaType, i.size, i.hash, i.storageKey, i.lastModified) " +
+            "from Image i where i.id = :id")
+    Optional<ImageSourceDto> findSourceById(@Param("id") Long id);
+
+    /**
+     * Find a page of image descriptions, without selecting their content
+     * @param pageable The page of images to return
+     * @return The page of image descriptions
+     */
+    @Query(value = "select new com.darwin.simplestore.dto.ImageMetadataDto(i.id, i.mediaType, i.size, i.width, i.height, i.hash, i.createdAt, i.lastModified) " +
+            "from Image i",
+            countQuery = "select count(i) from Image i")
+    Page<ImageMetadataDto> findAllMetadata(Pageable pageable);
+
+    /**
+     * Find the description of the image of a product, without selecting its content
+     * @param productId The id of the product
+     * @return The description of the product image, empty if the product has no image
+     */
+    @Query("select new com.darwin.simplestore.dto.ImageMetadataDto(i.id, i.mediaType, i.size, i.width, i.height, i.hash, i.createdAt, i.lastModified) " +
+            "from Product p join p.image i where p.id = :productId")
+    Optional<ImageMetadataDto> findMetadataByProductId(@Param("productId") Long productId);
+
+    /**
+     * Find an image by the hash of its content
+     * @param hash The SHA-256 hash of the content
+     * @return The image with that content
+     */
+    Optional<Image> findByHash(String hash);
+
+    /**
+     * Check whether an image uses stored content
+     * @param storageKey The key of the content in the image storage
+     * @return Whether an image has that key
+     */
+    boolean existsByStorageKey(String storageKey);
+
+    /**
+     * Take a lock on the hash of image content, held until the current transaction completes.
+     * Saving and deleting images with the same content are serialized by this lock
+     * @param hash The SHA-256 hash of the content
+     * @return Always 1
+     */
+    @Query(value = "select 1 from pg_advisory_xact_lock(hashtext(:hash))", nativeQuery = true)
+    int lockContent(@Param("hash") String hash);
+
+    /**
+     * Atomically add a reference to an image
+     * @param id The id of the image
+     * @return The number of updated images, 0 if the image does not exist
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Image i set i.referenceCount = i.referenceCount + 1 where i.id = :id")
+    int retain(@Param("id") Long id);
+
+    /**
+     * Atomically remove a reference from an image
+     * @param id The id of the image
+     * @return The number of updated images, 0 if the image does not exist or is not referenced
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Image i set i.referenceCount = i.referenceCount - 1 where i.id = :id and i.referenceCount > 0")
+    int release(@Param("id") Long id);
+
+    /**
+     * Delete an image if no product references it. Products are also checked directly,
+     * in case the reference count of an older image was not backfilled yet
+     * @param id The id of the image
+     * @return The number of deleted images
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Image i where i.id = :id and i.referenceCount = 0 " +
+            "and not exists (select p.id from Product p where p.image.id = :id)")
+    int deleteIfUnreferenced(@Param("id") Long id);
 }
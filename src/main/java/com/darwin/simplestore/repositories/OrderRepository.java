@@ -6,7 +6,10 @@
 package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.entities.Order;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -15,4 +18,23 @@ import java.util.Optional;
  */
 public interface OrderRepository extends JpaRepository<Order, Long> {
     Optional<Order> findByCartId(Long cartId);
+
+    /**
+     * Find an order along with its cart, the cart items and their products, in a single query
+     * @param id The id of the order
+     * @return The order, or empty if it does not exist
+     */
+    @EntityGraph(attributePaths = {"cart", "cart.cartItems", "cart.cartItems.product"})
+    Optional<Order> findWithItemsById(Long id);
+
+    /**
+     * Find the version tag of an order, without loading the order or its items.
+     * The tag joins the version of the order with the version tag of its cart
+     * @param id The id of the order
+     * @return The version tag of the order, or empty if it does not exist
+     */
+    @Query("select concat(str(o.version), '.', str(c.version), '.', str(coalesce(sum(p.version), 0))) " +
+            "from Order o join o.cart c left join c.cartItems i left join i.product p " +
+            "where o.id = :id group by o.id, o.version, c.version")
+    Optional<String> findVersionTagById(@Param("id") Long id);
 }
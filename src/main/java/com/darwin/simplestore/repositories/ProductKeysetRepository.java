@@ -0,0 +1,34 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductSortField;
+import com.darwin.simplestore.entities.Product;
+
+import java.util.List;
+
+/**
+ * Repository fragment for keyset (seek) pagination of products
+ */
+public interface ProductKeysetRepository {
+    /**
+     * Find the products that come after a position, without scanning the ones before it
+     * @param sortField The field to sort the products by
+     * @param ascending Whether to sort ascending or descending
+     * @param category The category to filter by, or null for all the products
+     * @param lastValue The sort field value of the last seen product, or null to start from the beginning
+     * @param lastId The id of the last seen product, or null to start from the beginning
+     * @param limit The maximum number of products to return
+     * @return The products after the specified position, in order
+     */
+    List<Product> findPageAfter(ProductSortField sortField,
+                                boolean ascending,
+                                ProductCategory category,
+                                Object lastValue,
+                                Long lastId,
+                                int limit);
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductSortField;
+import com.darwin.simplestore.entities.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of the keyset pagination fragment.
+ * The sort key is always extended with the id, so the position is unique, and the next page
+ * is found with a row value comparison that can be answered directly from the (key, id) indexes
+ */
+public class ProductKeysetRepositoryImpl implements ProductKeysetRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Product> findPageAfter(final ProductSortField sortField,
+                                       final boolean ascending,
+                                       final ProductCategory category,
+                                       final Object lastValue,
+                                       final Long lastId,
+                                       final int limit) {
+        final boolean sortById = sortField == ProductSortField.ID;
+        final String property = "p." + sortField.getProperty();
+        final String direction = ascending ? " asc" : " desc";
+        final String comparison = ascending ? " > " : " < ";
+        final List<String> conditions = new ArrayList<>();
+
+        if (category != null) {
+            conditions.add("p.category = :category");
+        }
+
+        if (lastId != null) {
+            if (sortById) {
+                conditions.add("p.id" + comparison + ":lastId");
+            } else {
+                conditions.add("(" + property + ", p.id)" + comparison + "(:lastValue, :lastId)");
+            }
+        }
+
+        final StringBuilder jpql = new StringBuilder("select p from Product p");
+
+        if (!conditions.isEmpty()) {
+            jpql.append(" where ").append(String.join(" and ", conditions));
+        }
+
+        jpql.append(" order by ").append(property).append(direction);
+
+        if (!sortById) {
+            jpql.append(", p.id").append(direction);
+        }
+
+        final TypedQuery<Product> query = entityManager.createQuery(jpql.toString(), Product.class);
+
+        if (category != null) {
+            query.setParameter("category", category);
+        }
+
+        if (lastId != null) {
+            query.setParameter("lastId", lastId);
+
+            if (!sortById) {
+                query.setParameter("lastValue", lastValue);
+            }
+        }
+
+        return query.setMaxResults(limit).getResultList();
+    }
+}
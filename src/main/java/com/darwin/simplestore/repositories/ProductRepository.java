@@ -6,20 +6,110 @@
 package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductSummaryDto;
 import com.darwin.simplestore.entities.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for product objects
  */
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductKeysetRepository, ProductStockRepository {
     Optional<Product> findByName(String name);
     Page<Product> findByCategory(Pageable pageable, ProductCategory category);
+    Slice<Product> findAllBy(Pageable pageable);
+    Slice<Product> findAllByCategory(ProductCategory category, Pageable pageable);
+    long countByCategory(ProductCategory category);
     boolean existsByName(String name);
+
+    /**
+     * Find which of the names are already used by products
+     * @param names The names to look for
+     * @return The names used by existing products
+     */
+    @Query("select p.name from Product p where p.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    /**
+     * Stream all the products, ordered by id, through a server side cursor.
+     * The products are read as DTOs, so they are never attached to the persistence context.
+     * Must be called inside a transaction, and the stream must be closed after use
+     * @return A stream of all the products
+     */
+    @Query("select new com.darwin.simplestore.dto.ProductDto(p.id, p.name, p.description, p.price, p.quantity, p.category) " +
+            "from Product p order by p.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<ProductDto> streamAllProducts();
+
+    /**
+     * Stream the names of all the products through a server side cursor.
+     * Must be called inside a transaction, and the stream must be closed after use
+     * @return A stream of all the product names
+     */
+    @Query("select p.name from Product p")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<String> streamAllNames();
+
+    /**
+     * Find a page of product summaries, selecting only the summary columns
+     * @param pageable The pagination parameters
+     * @return A page of product summaries
+     */
+    @Query(value = "select new com.darwin.simplestore.dto.ProductSummaryDto(p.id, p.name, p.price, p.quantity, p.category) " +
+            "from Product p",
+            countQuery = "select count(p) from Product p")
+    Page<ProductSummaryDto> findAllSummaries(Pageable pageable);
+
+    /**
+     * Find a page of summaries of the products of a category, selecting only the summary columns
+     * @param category The product category
+     * @param pageable The pagination parameters
+     * @return A page of product summaries
+     */
+    @Query(value = "select new com.darwin.simplestore.dto.ProductSummaryDto(p.id, p.name, p.price, p.quantity, p.category) " +
+            "from Product p where p.category = :category",
+            countQuery = "select count(p) from Product p where p.category = :category")
+    Page<ProductSummaryDto> findSummariesByCategory(@Param("category") ProductCategory category, Pageable pageable);
+
+    /**
+     * Find a slice of product summaries, without counting all the products
+     * @param pageable The pagination parameters
+     * @return A slice of product summaries
+     */
+    @Query("select new com.darwin.simplestore.dto.ProductSummaryDto(p.id, p.name, p.price, p.quantity, p.category) " +
+            "from Product p")
+    Slice<ProductSummaryDto> findSummarySlice(Pageable pageable);
+
+    /**
+     * Find a slice of summaries of the products of a category, without counting all the products
+     * @param category The product category
+     * @param pageable The pagination parameters
+     * @return A slice of product summaries
+     */
+    @Query("select new com.darwin.simplestore.dto.ProductSummaryDto(p.id, p.name, p.price, p.quantity, p.category) " +
+            "from Product p where p.category = :category")
+    Slice<ProductSummaryDto> findSummarySliceByCategory(@Param("category") ProductCategory category, Pageable pageable);
+
     void deleteByName(String name);
+
+    /**
+     * Find the version of a product, without loading the product
+     * @param id The id of the product
+     * @return The version of the product, or empty if it does not exist
+     */
+    @Query("select p.version from Product p where p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
@@ -0,0 +1,23 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository fragment for atomic changes to the stock of products
+ */
+public interface ProductStockRepository {
+    /**
+     * Decrement the quantities of multiple products in a single batch.
+     * Each product is only decremented if it has enough stock, so concurrent callers cannot oversell.
+     * The changes are part of the current transaction, which should be rolled back if any product is returned
+     * @param quantitiesById The quantity to subtract, keyed by product id
+     * @return The ids of the products which do not exist or do not have enough stock
+     */
+    List<Long> decrementQuantities(Map<Long, Long> quantitiesById);
+}
@@ -0,0 +1,57 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implementation of the stock fragment.
+ * All the conditional updates are sent as one JDBC batch, and the rows are updated in id order,
+ * so concurrent checkouts lock them in the same order and cannot deadlock each other
+ */
+@RequiredArgsConstructor
+public class ProductStockRepositoryImpl implements ProductStockRepository {
+    private static final String DECREMENT_SQL =
+            "update products set quantity = quantity - ?, version = version + 1 where id = ? and quantity >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Long> decrementQuantities(final Map<Long, Long> quantitiesById) {
+        if (quantitiesById.isEmpty()) {
+            return List.of();
+        }
+
+        // The update bypasses the persistence context, so pending changes must reach the database first
+        entityManager.flush();
+
+        final List<Long> ids = new ArrayList<>(new TreeMap<>(quantitiesById).keySet());
+        final List<Object[]> arguments = ids.stream()
+                .map(id -> new Object[]{quantitiesById.get(id), id, quantitiesById.get(id)})
+                .toList();
+        final int[] updateCounts = jdbcTemplate.batchUpdate(DECREMENT_SQL, arguments);
+        final List<Long> unavailable = new ArrayList<>();
+
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                unavailable.add(ids.get(i));
+            }
+        }
+
+        return unavailable;
+    }
+}
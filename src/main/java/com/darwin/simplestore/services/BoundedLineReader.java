@@ -0,0 +1,111 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader of lines with a maximum length.
+ * Unlike BufferedReader.readLine, a line longer than the maximum is not kept in memory:
+ * its first characters are returned, and the rest is skipped up to the next line break
+ */
+final class BoundedLineReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+    private boolean truncated;
+
+    /**
+     * Create a line reader
+     * @param reader The reader to read the lines from
+     */
+    BoundedLineReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next line, which may end with \n, \r or \r\n
+     * @param maxLength The maximum number of characters to return
+     * @return The line without its line break, or null at the end of the input
+     * @throws IOException If the input could not be read
+     */
+    String readLine(final int maxLength) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        boolean read = false;
+
+        truncated = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                return read ? line.toString() : null;
+            }
+
+            final char c = buffer[position++];
+
+            if (skipLineFeed) {
+                skipLineFeed = false;
+
+                if (c == '\n') {
+                    continue;
+                }
+            }
+
+            read = true;
+
+            if (c == '\n') {
+                return line.toString();
+            }
+
+            if (c == '\r') {
+                skipLineFeed = true;
+                return line.toString();
+            }
+
+            if (line.length() < maxLength) {
+                line.append(c);
+            } else {
+                truncated = true;
+            }
+        }
+    }
+
+    /**
+     * Check whether the last line read was longer than its maximum length
+     * @return Whether characters were skipped from the last line
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Read the next characters into the buffer
+     * @return Whether any characters were read, false at the end of the input
+     * @throws IOException If the input could not be read
+     */
+    private boolean fill() throws IOException {
+        final int count = reader.read(buffer, 0, buffer.length);
+
+        position = 0;
+        limit = Math.max(count, 0);
+
+        return count > 0;
+    }
+
+    /**
+     * Close the underlying reader
+     * @throws IOException If the reader could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -5,22 +5,23 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.ProductCache;
 import com.darwin.simplestore.dto.CartItemDto;
-import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
-import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartItemRepository;
 import com.darwin.simplestore.repositories.CartRepository;
 import com.darwin.simplestore.repositories.ProductRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import java.util.Objects;
-
 /**
- * Service class for cart items
+ * Service class for cart items.
+ * Items are addressed by their (cart, product) pair, so none of the operations load the whole cart
  */
 @Service
 @RequiredArgsConstructor
@@ -29,33 +30,32 @@ public class CartItemService {
     private final CartRepository cartRepository;
     private final CartItemRepository cartItemRepository;
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
 
     /**
      * Add a product to a cart
      * @param cartId The id of the cart
      * @param productId The id of the product
      * @param quantity Quantity of the product to add
-     * @throws ResourceNotFoundException If either the cart or product could not be found
+     * @throws ResourceNotFoundException If either the cart or product could not be found, or was deleted while adding the product
      */
+    @Transactional
     public void addProductToCart(final Long cartId, final Long productId, final Long quantity) throws ResourceNotFoundException{
-        Cart cart = getCart(cartId);
-        Product product = getProduct(productId);
-        CartItem cartItem = cart.getCartItems().stream()
-                .filter(item -> Objects.equals(item.getProduct().getId(), product.getId()))
-                .findFirst().orElse(null);
-
-        if (cartItem == null) {
-            cartItem = new CartItem();
-            cartItem.setQuantity(quantity);
-            cartItem.setCart(cart);
-            cartItem.setProduct(product);
-            cart.getCartItems().add(cartItem);
-        } else {
-            cartItem.setQuantity(cartItem.getQuantity() + quantity);
+        if (!cartRepository.existsById(cartId)) {
+            throw new ResourceNotFoundException("No cart found with id: " + cartId);
+        }
+
+        if (!productExists(productId)) {
+            throw new ResourceNotFoundException("No product found with id: " + productId);
+        }
+
+        try {
+            cartItemRepository.upsertQuantity(cartId, productId, quantity);
+        } catch (DataIntegrityViolationException e) {
+            throw itemNotFound(cartId, productId, e);
         }
 
-        cartItemRepository.save(cartItem);
-        cartRepository.save(cart);
+        cartRepository.incrementVersion(cartId);
     }
 
     /**
@@ -65,10 +65,10 @@ public class CartItemService {
      * @return DTO representing the requested item in the cart
      * @throws ResourceNotFoundException If either the cart or product could not be found, ot the product is not present in the cart
      */
+    @Transactional(readOnly = true)
     public CartItemDto getCartItem(final Long cartId, final Long productId) throws ResourceNotFoundException {
-        Cart cart = getCart(cartId);
-        Product product = getProduct(productId);
-        CartItem cartItem = getCartItem(cart, product);
+        final CartItem cartItem = cartItemRepository.findByCartIdAndProductId(cartId, productId)
+                .orElseThrow(() -> itemNotFound(cartId, productId));
 
         return toCartItemDto(cartItem);
     }
@@ -80,13 +80,31 @@ public class CartItemService {
      * @param quantity The new quantity
      * @throws ResourceNotFoundException If either the cart or product could not be found, ot the product is not present in the cart
      */
+    @Transactional
     public void updateItemQuantity(final Long cartId, final Long productId, final Long quantity) throws ResourceNotFoundException {
-        Cart cart = getCart(cartId);
-        Product product = getProduct(productId);
-        CartItem cartItem = getCartItem(cart, product);
+        updateItemQuantity(cartId, productId, quantity, null);
+    }
 
-        cartItem.setQuantity(quantity);
-        cartItemRepository.save(cartItem);
+    /**
+     * Update the quantity of an item in the cart, only if the cart still has the version the update is based on
+     * @param cartId The id of cart
+     * @param productId The id of the product
+     * @param quantity The new quantity
+     * @param expectedVersion The version the cart must have, or null to update any version
+     * @throws ResourceNotFoundException If either the cart or product could not be found, ot the product is not present in the cart
+     * @throws PreconditionFailedException If the cart has another version than the expected one
+     */
+    @Transactional
+    public void updateItemQuantity(final Long cartId, final Long productId, final Long quantity, final Long expectedVersion) throws ResourceNotFoundException, PreconditionFailedException {
+        if (cartItemRepository.updateQuantity(cartId, productId, quantity) == 0) {
+            throw itemNotFound(cartId, productId);
+        }
+
+        if (expectedVersion == null) {
+            cartRepository.incrementVersion(cartId);
+        } else if (cartRepository.incrementVersion(cartId, expectedVersion) == 0) {
+            throw new PreconditionFailedException("Cart with id " + cartId + " does not have version " + expectedVersion);
+        }
     }
 
     /**
@@ -95,47 +113,67 @@ public class CartItemService {
      * @param productId The id of the product
      * @throws ResourceNotFoundException If either the cart or product could not be found, ot the product is not present in the cart
      */
+    @Transactional
     public void deleteItem(final Long cartId, final Long productId) throws ResourceNotFoundException {
-        Cart cart = getCart(cartId);
-        Product product = getProduct(productId);
-        CartItem cartItem = getCartItem(cart, product);
+        if (cartItemRepository.deleteByCartIdAndProductId(cartId, productId) == 0) {
+            throw itemNotFound(cartId, productId);
+        }
 
-        cart.getCartItems().remove(cartItem);
-        cartItemRepository.deleteById(cartItem.getId());
-        cartRepository.save(cart);
+        cartRepository.incrementVersion(cartId);
     }
 
     /**
-     * Get cart from id
-     * @param cartId The id of the cart
-     * @return The cart entity
-     * @throws ResourceNotFoundException If the cart could not be found
+     * Check whether a product exists, without querying the database for cached products
+     * @param productId The id of the product
+     * @return True if the product exists, false otherwise
      */
-    private Cart getCart(final Long cartId) throws ResourceNotFoundException {
-        return cartRepository.findById(cartId).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + cartId));
+    private boolean productExists(final Long productId) {
+        return productCache.getIfPresent(productId) != null || productRepository.existsById(productId);
     }
 
     /**
-     * Get product from id
+     * Build the exception for an item which could not be found, telling apart which part is missing.
+     * Only called on the failure path, so successful operations stay a single statement
+     * @param cartId The id of the cart
      * @param productId The id of the product
-     * @return The product entity
-     * @throws ResourceNotFoundException If the product could not be found
+     * @return The exception to throw
      */
-    private Product getProduct(final Long productId) throws ResourceNotFoundException {
-        return productRepository.findById(productId).orElseThrow(() -> new ResourceNotFoundException("No product found with id: " + productId));
+    private ResourceNotFoundException itemNotFound(final Long cartId, final Long productId) {
+        if (!cartRepository.existsById(cartId)) {
+            return new ResourceNotFoundException("No cart found with id: " + cartId);
+        }
+
+        if (!productExists(productId)) {
+            return new ResourceNotFoundException("No product found with id: " + productId);
+        }
+
+        return new ResourceNotFoundException("No product found in the cart with id: " + productId);
     }
 
     /**
-     * Get the cart item from the cart
-     * @param cart The cart where to find the product
-     * @param product The product to find
-     * @return The cart item entity
-     * @throws ResourceNotFoundException If the product is not in the cart
+     * Build the exception for an item which could not be written because its cart or product was deleted meanwhile.
+     * The failed statement aborts the transaction, so the missing part is told apart by the violated foreign key
+     * instead of being looked up again
+     * @param cartId The id of the cart
+     * @param productId The id of the product
+     * @param e The exception thrown by the write
+     * @return The exception to throw
+     * @throws DataIntegrityViolationException If the write violated another constraint
      */
-    private CartItem getCartItem(final Cart cart, final Product product) throws ResourceNotFoundException {
-        return cart.getCartItems().stream()
-                .filter(item -> Objects.equals(item.getProduct().getId(), product.getId()))
-                .findFirst().orElseThrow(() -> new ResourceNotFoundException("No product found in the cart with id: " + product.getId()));
+    private static ResourceNotFoundException itemNotFound(final Long cartId,
+                                                          final Long productId,
+                                                          final DataIntegrityViolationException e) throws DataIntegrityViolationException {
+        final String constraintName = ProductService.constraintName(e);
+
+        if (CartItem.CART_CONSTRAINT.equalsIgnoreCase(constraintName)) {
+            return new ResourceNotFoundException("No cart found with id: " + cartId);
+        }
+
+        if (CartItem.PRODUCT_CONSTRAINT.equalsIgnoreCase(constraintName)) {
+            return new ResourceNotFoundException("No product found with id: " + productId);
+        }
+
+        throw e;
     }
 
     /**
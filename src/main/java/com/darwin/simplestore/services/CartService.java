@@ -5,18 +5,26 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.MissingIdCache.ResourceType;
+import com.darwin.simplestore.cache.RequestCoalescer;
 import com.darwin.simplestore.dto.CartDto;
 import com.darwin.simplestore.dto.CartItemDto;
+import com.darwin.simplestore.dto.CartItemSummaryDto;
+import com.darwin.simplestore.dto.CartSummaryDto;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartItemRepository;
 import com.darwin.simplestore.repositories.CartRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -29,26 +37,67 @@ import java.util.stream.Collectors;
 public class CartService {
     private final CartRepository cartRepository;
     private final CartItemRepository cartItemRepository;
+    private final RequestCoalescer requestCoalescer;
+    private final MissingIdCache missingIdCache;
 
     /**
      * Create a new cart
      * @return The DTO representing the new cart
      */
+    @Transactional
     public CartDto createCart() {
         final Cart cart = new Cart();
         cart.setCartItems(new HashSet<>());
 
-        return toCartDto(cartRepository.save(cart));
+        final CartDto cartDto = toCartDto(cartRepository.save(cart));
+        missingIdCache.invalidate(ResourceType.CART, cartDto.id());
+
+        return cartDto;
     }
 
     /**
-     * Get a cart by id
+     * Get a cart by id. The cart is read with its items and their products in a single query.
+     * Concurrent reads of the same cart are shared, and the method is not transactional,
+     * so callers waiting for a shared read hold no connection. Ids recently found missing are rejected without a query
      * @param id Id of the cart
      * @return DTO corresponding to the cart
      * @throws ResourceNotFoundException If a cart with such id does not exist
      */
     public CartDto getCart(Long id) throws ResourceNotFoundException {
-        return toCartDto(cartRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + id)));
+        return requestCoalescer.execute("cart", id, () -> missingIdCache.find(ResourceType.CART, id, () -> cartRepository.findWithItemsById(id))
+                .map(CartService::toCartDto)
+                .orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + id)));
+    }
+
+    /**
+     * Get the version tag of a cart, read without loading the cart items and their products
+     * @param id Id of the cart
+     * @return The version tag of the cart
+     * @throws ResourceNotFoundException If a cart with such id does not exist
+     */
+    public String getCartVersionTag(Long id) throws ResourceNotFoundException {
+        return missingIdCache.find(ResourceType.CART, id, () -> cartRepository.findVersionTagById(id)).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + id));
+    }
+
+    /**
+     * Get the summary of a cart by id, read without loading the cart items and their products.
+     * The existence of the cart is only checked when it has no items, or when its id was recently found missing
+     * @param id Id of the cart
+     * @return Summary of the cart
+     * @throws ResourceNotFoundException If a cart with such id does not exist
+     */
+    public CartSummaryDto getCartSummary(Long id) throws ResourceNotFoundException {
+        if (missingIdCache.isMissing(ResourceType.CART, id)) {
+            throw new ResourceNotFoundException("No cart found with id: " + id);
+        }
+
+        final List<CartItemSummaryDto> cartItems = cartItemRepository.findSummariesByCartId(id);
+
+        if (cartItems.isEmpty() && !missingIdCache.exists(ResourceType.CART, id, () -> cartRepository.existsById(id))) {
+            throw new ResourceNotFoundException("No cart found with id: " + id);
+        }
+
+        return new CartSummaryDto(id, cartItems);
     }
 
     /**
@@ -56,11 +105,14 @@ public class CartService {
      * @param id Id of the cart
      * @throws ResourceNotFoundException If a cart with such id does not exist
      */
+    @Transactional
     public void clearCart(Long id) throws ResourceNotFoundException {
         if (!cartRepository.existsById(id)) {
             throw new ResourceNotFoundException("No cart found with id: " + id);
         }
 
+        cartRepository.incrementVersion(id);
+
         final Cart cart = cartRepository.findById(id).get();
         cart.getCartItems().clear();
         cartRepository.save(cart);
@@ -73,6 +125,7 @@ public class CartService {
      * @param id Id of the cart
      * @throws ResourceNotFoundException If a cart with such id does not exist
      */
+    @Transactional
     public void deleteCart(Long id) throws ResourceNotFoundException {
         clearCart(id);
 
@@ -89,6 +142,21 @@ public class CartService {
                 map(CartItemService::toCartItemDto).
                 collect(Collectors.toSet());
 
-        return new CartDto(cart.getId(), cartItems);
+        return new CartDto(cart.getId(), cartItems, cart.getVersion());
+    }
+
+    /**
+     * Get the version tag of a cart DTO, matching the tag read by {@link #getCartVersionTag(Long)}
+     * @param cartDto The cart DTO
+     * @return The version tag of the cart
+     */
+    public static String versionTag(CartDto cartDto) {
+        final long productVersions = cartDto.cartItems().stream()
+                .map(cartItem -> cartItem.productDto().version())
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .sum();
+
+        return cartDto.version() + "." + productVersions;
     }
 }
@@ -5,82 +5,725 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.ImageContentCache;
+import com.darwin.simplestore.cache.RequestCoalescer;
+import com.darwin.simplestore.dto.Base64Content;
+import com.darwin.simplestore.dto.ImageContentDto;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageSourceDto;
+import com.darwin.simplestore.dto.ImageVariant;
 import com.darwin.simplestore.dto.NewImageDto;
 import com.darwin.simplestore.entities.Image;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.LegacyImage;
 import com.darwin.simplestore.repositories.ImageRepository;
-import lombok.RequiredArgsConstructor;
+import com.darwin.simplestore.storage.ImageStorage;
+import com.darwin.simplestore.storage.StoredImage;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.annotation.Validated;
 
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
 /**
- * Service class for managing images
+ * Service class for managing images.
+ * The content of the images is kept in the image storage, while the database only keeps their description.
+ * Images are unique by the hash of their content and counted by the products referencing them.
+ * Saving, deleting and updating images takes a database lock on the hash of their content, and stored content
+ * is only deleted under that lock once no image uses it, so an upload never ends up with deleted content.
+ * The base64 methods are kept for compatibility with the JSON API
  */
 @Service
-@RequiredArgsConstructor
 @Validated
 public class ImageService {
+    private static final String WEBP_MEDIA_TYPE = "image/webp";
+
+    /**
+     * The media types of the images which can be uploaded
+     */
+    public static final Set<String> SUPPORTED_MEDIA_TYPES = Set.of(
+            MediaType.IMAGE_PNG_VALUE,
+            MediaType.IMAGE_JPEG_VALUE,
+            MediaType.IMAGE_GIF_VALUE,
+            WEBP_MEDIA_TYPE);
+
+    private static final int MEDIA_TYPE_HEADER_LENGTH = 12;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] GIF87_SIGNATURE = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89_SIGNATURE = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP_SIGNATURE = {'W', 'E', 'B', 'P'};
+
     private final ImageRepository imageRepository;
+    private final ImageStorage imageStorage;
+    private final ImageVariantService imageVariantService;
+    private final ImageContentCache imageContentCache;
+    private final RequestCoalescer requestCoalescer;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Create the service
+     * @param imageRepository The image repository
+     * @param imageStorage The storage keeping the content of the images
+     * @param imageVariantService The service generating the resized variants of the images
+     * @param imageContentCache The cache of the image content
+     * @param requestCoalescer The coalescer sharing concurrent reads of the same image
+     * @param transactionManager The transaction manager used to save and delete content outside of the caller's transaction
+     */
+    public ImageService(final ImageRepository imageRepository,
+                        final ImageStorage imageStorage,
+                        final ImageVariantService imageVariantService,
+                        final ImageContentCache imageContentCache,
+                        final RequestCoalescer requestCoalescer,
+                        final PlatformTransactionManager transactionManager) {
+        this.imageRepository = imageRepository;
+        this.imageStorage = imageStorage;
+        this.imageVariantService = imageVariantService;
+        this.imageContentCache = imageContentCache;
+        this.requestCoalescer = requestCoalescer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     /**
      * Add a new image to the database
      * @param newImageDto The DTO of the new image
-     * @return DTO of the created image
+     * @return DTO of the created image, with its content read back from the image storage
+     * @throws InvalidRequestException If the content is missing, too large or not a supported image
+     */
+    public ImageDto addImage(final NewImageDto newImageDto) throws InvalidRequestException {
+        final ImageMetadataDto imageMetadataDto;
+
+        try (InputStream content = openContent(newImageDto.base64Content())) {
+            imageMetadataDto = addImage(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return getImage(imageMetadataDto.id());
+    }
+
+    /**
+     * Add a new image from its binary content. The content is streamed to the image storage,
+     * and an image with identical content is returned instead of creating a new one.
+     * The image is saved in its own transaction, which holds the lock on the hash of the content,
+     * so no connection is held while the content is written.
+     * The media type is detected from the content, and only raster images are accepted
+     * @param content The content of the image, which is read but not closed
+     * @return The description of the created or existing image
+     * @throws InvalidRequestException If the content could not be read, is empty or too large, or is not a supported image
      */
-    public ImageDto addImage(final NewImageDto newImageDto) {
-        return toImageDto(imageRepository.save(fromNewImageDto(newImageDto)));
+    public ImageMetadataDto addImage(final InputStream content) throws InvalidRequestException {
+        final InputStream bufferedContent = new BufferedInputStream(content);
+        final String detectedMediaType = detectMediaType(bufferedContent);
+        final StoredImage storedImage = store(bufferedContent);
+        final Optional<Dimension> dimensions = readDimensions(storedImage.key());
+        final AddedImage addedImage;
+
+        try {
+            addedImage = transactionTemplate.execute(status -> {
+                lockContent(storedImage.hash());
+
+                final Optional<Image> existing = imageRepository.findByHash(storedImage.hash());
+
+                if (existing.isPresent()) {
+                    return new AddedImage(toImageMetadataDto(existing.get()), false);
+                }
+
+                checkStored(storedImage);
+
+                final Instant now = Instant.now();
+                final Image image = new Image(
+                        null,
+                        null,
+                        detectedMediaType,
+                        storedImage.size(),
+                        storedImage.hash(),
+                        storedImage.key(),
+                        now,
+                        dimensions.map(dimension -> dimension.width).orElse(null),
+                        dimensions.map(dimension -> dimension.height).orElse(null),
+                        now,
+                        0);
+
+                return new AddedImage(toImageMetadataDto(imageRepository.save(image)), true);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Identical content was saved without the lock, by the migration of the legacy images
+            return imageRepository.findByHash(storedImage.hash())
+                    .map(ImageService::toImageMetadataDto)
+                    .orElseThrow(() -> {
+                        discard(storedImage);
+                        return e;
+                    });
+        } catch (RuntimeException e) {
+            discard(storedImage);
+            throw e;
+        }
+
+        if (addedImage.created()) {
+            imageVariantService.generateVariants(storedImage.key());
+        }
+
+        return addedImage.image();
     }
 
     /**
-     * Get an image
+     * Get an image. Concurrent reads of the same image are shared
      * @param id The id of the image
      * @return DTO of the requested image
      * @throws ResourceNotFoundException If the image could not be found
      */
     public ImageDto getImage(final Long id) throws ResourceNotFoundException {
-        return toImageDto(imageRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("No image found with id: " + id)));
+        return requestCoalescer.execute("image", id, () -> {
+            final ImageSourceDto image = findSource(id);
+
+            return new ImageDto(image.id(), Base64Content.of(loadContent(image)));
+        });
+    }
+
+    /**
+     * Get the description of an image, without loading its content.
+     * Concurrent reads of the same image are shared, and the method is not transactional,
+     * so callers waiting for a shared read hold no connection
+     * @param id The id of the image
+     * @return The description of the image
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    public ImageMetadataDto getImageMetadata(final Long id) throws ResourceNotFoundException {
+        return requestCoalescer.execute("imageMetadata", id, () -> imageRepository.findMetadataById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("No image found with id: " + id)));
+    }
+
+    /**
+     * Get a page of image descriptions, without loading their content
+     * @param pageable The page of images to return
+     * @return The page of image descriptions
+     */
+    @Transactional(readOnly = true)
+    public Page<ImageMetadataDto> getImagesMetadata(final Pageable pageable) {
+        return imageRepository.findAllMetadata(pageable);
+    }
+
+    /**
+     * Get the binary content of an image. Concurrent reads of the same image are shared.
+     * Not transactional, so no connection is held while the content is loaded
+     * @param id The id of the image
+     * @return The content of the image, along with its media type and hash
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    public ImageContentDto getImageContent(final Long id) throws ResourceNotFoundException {
+        return requestCoalescer.execute("imageContent", id, () -> {
+            final ImageSourceDto image = findSource(id);
+            final Resource content = loadContent(image);
+
+            return new ImageContentDto(
+                    image.id(),
+                    image.mediaType(),
+                    contentLength(content),
+                    image.hash(),
+                    image.lastModified(),
+                    content);
+        });
+    }
+
+    /**
+     * Get a resized variant of an image. Until the variant is generated it is generated on demand,
+     * and the original content is returned for images which have no such variant
+     * @param id The id of the image
+     * @param variant The requested variant
+     * @return The content of the variant, along with its media type and the entity tag of the variant
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    public ImageContentDto getImageContent(final Long id, final ImageVariant variant) throws ResourceNotFoundException {
+        return requestCoalescer.execute("imageVariant", new VariantKey(id, variant), () -> loadVariant(id, variant));
+    }
+
+    /**
+     * Load a resized variant of an image, or the original content for images which have no such variant
+     * @param id The id of the image
+     * @param variant The requested variant
+     * @return The content of the variant, along with its media type and the entity tag of the variant
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    private ImageContentDto loadVariant(final Long id, final ImageVariant variant) throws ResourceNotFoundException {
+        final ImageSourceDto image = findSource(id);
+        final Optional<Resource> content = image.storageKey() == null
+                ? Optional.empty()
+                : imageVariantService.getVariant(image.storageKey(), variant)
+                        .map(resource -> imageContentCache.get(variantKey(image.storageKey(), variant), ignored -> resource));
+
+        if (content.isEmpty()) {
+            final Resource original = loadContent(image);
+
+            return new ImageContentDto(
+                    image.id(),
+                    image.mediaType(),
+                    contentLength(original),
+                    variant.tag(image.hash()),
+                    image.lastModified(),
+                    original);
+        }
+
+        return new ImageContentDto(
+                image.id(),
+                ImageVariantService.VARIANT_MEDIA_TYPE,
+                contentLength(content.get()),
+                variant.tag(image.hash()),
+                image.lastModified(),
+                content.get());
     }
 
     /**
-     * Update an image
+     * Update an image. Images are shared by the products which uploaded identical content,
+     * so an image used by more than one product cannot be updated, since that would change all of them
      * @param imageDto The data of the updated image
      * @throws ResourceNotFoundException If the requested image does not exist
+     * @throws InvalidRequestException If the content is missing, too large or not a supported image, or the image is shared
+     * @throws ResourceExistsException If another image already has the same content
      */
-    public void updateImage(final ImageDto imageDto) throws ResourceNotFoundException {
-        if (!imageRepository.existsById(imageDto.id())) {
-            throw new ResourceNotFoundException("No image found with id: " + imageDto.id());
+    @Transactional
+    public void updateImage(final ImageDto imageDto) throws ResourceNotFoundException, InvalidRequestException, ResourceExistsException {
+        final String mediaType;
+        final StoredImage storedImage;
+
+        // The content is stored before the first query, so no connection is held while it is written
+        try (InputStream bufferedContent = new BufferedInputStream(openContent(imageDto.base64Content()))) {
+            mediaType = detectMediaType(bufferedContent);
+            storedImage = store(bufferedContent);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        final Image image = new Image(
-                imageDto.id(),
-                imageDto.base64Content()
-        );
+        final Image image;
+
+        try {
+            image = findImage(imageDto.id());
+        } catch (ResourceNotFoundException e) {
+            discard(storedImage);
+            throw e;
+        }
+
+        if (image.getReferenceCount() > 1) {
+            discard(storedImage);
+            throw new InvalidRequestException("Image with id " + image.getId() + " is used by " + image.getReferenceCount()
+                    + " products and cannot be updated, a new image can be added and set on a product instead");
+        }
+
+        final String previousKey = image.getStorageKey();
+
+        // Both hashes are locked, so the previous content is not handed out to uploads while it is replaced
+        lockContent(image.getHash(), storedImage.hash());
+
+        final Optional<Image> duplicate = imageRepository.findByHash(storedImage.hash())
+                .filter(other -> !other.getId().equals(image.getId()));
+
+        if (duplicate.isPresent()) {
+            discard(storedImage);
+            throw new ResourceExistsException("Image with id " + duplicate.get().getId() + " already has the same content");
+        }
+
+        checkStored(storedImage);
+        final String previousHash = image.getHash();
+
+        image.setContent(null);
+        image.setMediaType(mediaType);
+        image.setSize(storedImage.size());
+        image.setHash(storedImage.hash());
+        image.setStorageKey(storedImage.key());
+        image.setLastModified(Instant.now());
+        readDimensions(storedImage.key()).ifPresentOrElse(dimension -> {
+            image.setWidth(dimension.width);
+            image.setHeight(dimension.height);
+        }, () -> {
+            image.setWidth(null);
+            image.setHeight(null);
+        });
+
+        try {
+            imageRepository.save(image);
+        } catch (RuntimeException e) {
+            discard(storedImage);
+            throw e;
+        }
+
+        if (previousKey != null && !previousKey.equals(storedImage.key())) {
+            deleteContent(previousHash, previousKey);
+        }
+
+        imageVariantService.generateVariants(storedImage.key());
+    }
+
+    /**
+     * Add a reference to an image, which keeps it from being deleted
+     * @param id The id of the image
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    @Transactional
+    public void retainImage(final Long id) throws ResourceNotFoundException {
+        if (imageRepository.retain(id) == 0) {
+            throw new ResourceNotFoundException("No image found with id: " + id);
+        }
+    }
+
+    /**
+     * Remove a reference from an image. The image and its content are deleted when it is no longer referenced
+     * @param image The released image, may be null
+     */
+    @Transactional
+    public void releaseImage(final Image image) {
+        if (image == null) {
+            return;
+        }
+
+        final Long id = image.getId();
+        final String hash = image.getHash();
+        final String key = image.getStorageKey();
+
+        // Uploads of the same content wait until the image is either kept or deleted
+        lockContent(hash);
+        imageRepository.release(id);
+
+        if (imageRepository.deleteIfUnreferenced(id) > 0 && key != null) {
+            deleteContent(hash, key);
+        }
+    }
+
+    /**
+     * Delete stored content unless an image still uses it. Inside a transaction the content
+     * is only checked once the transaction completes, since it holds the lock on the hash until then
+     * @param hash The hash of the content
+     * @param key The key of the content
+     */
+    private void deleteContent(final String hash, final String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(final int status) {
+                    deleteUnusedContent(hash, key);
+                }
+            });
+        } else {
+            deleteUnusedContent(hash, key);
+        }
+    }
+
+    /**
+     * Delete stored content if no image uses it, holding the lock on its hash, so an upload
+     * of the same content either saves its image before the check or stores the content again after it
+     * @param hash The hash of the content
+     * @param key The key of the content
+     */
+    private void deleteUnusedContent(final String hash, final String key) {
+        transactionTemplate.executeWithoutResult(status -> {
+            lockContent(hash);
 
-        imageRepository.save(image);
+            if (!imageRepository.existsByStorageKey(key)) {
+                evictAndDelete(key);
+            }
+        });
     }
 
     /**
-     * Convert a new image DTO to n entity
-     * @param newImageDto The new image DTO
-     * @return Entity for that DTO
+     * Lock the hashes of content until the current transaction completes, in a fixed order
+     * so transactions locking the same hashes do not deadlock
+     * @param hashes The hashes of the content, null hashes are ignored
      */
-    public static Image fromNewImageDto(final NewImageDto newImageDto) {
-        Image image = new Image();
-        image.setBase64Image(newImageDto.base64Content());
+    private void lockContent(final String... hashes) {
+        Arrays.stream(hashes)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .forEach(imageRepository::lockContent);
+    }
+
+    /**
+     * Check that stored content was not deleted since it was written. This only happens if the last image
+     * using identical content was deleted in between, and must be called while holding the lock on the hash
+     * @param storedImage The stored content
+     * @throws IllegalStateException If the content was deleted
+     */
+    private void checkStored(final StoredImage storedImage) throws IllegalStateException {
+        if (!imageStorage.load(storedImage.key()).exists()) {
+            throw new IllegalStateException("Image content was deleted while it was uploaded, the upload can be retried");
+        }
+    }
+
+    /**
+     * Remove content and its variants from the content cache and the image storage
+     * @param key The key of the content
+     */
+    private void evictAndDelete(final String key) {
+        imageContentCache.invalidate(key);
+
+        for (ImageVariant variant : ImageVariant.values()) {
+            imageContentCache.invalidate(variantKey(key, variant));
+        }
+
+        imageStorage.delete(key);
+    }
+
+    /**
+     * Find an image by its id
+     * @param id The id of the image
+     * @return The image entity
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    private Image findImage(final Long id) throws ResourceNotFoundException {
+        return imageRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("No image found with id: " + id));
+    }
+
+    /**
+     * Find an image along with the location of its content, without loading its legacy content
+     * @param id The id of the image
+     * @return The image and the key of its content
+     * @throws ResourceNotFoundException If the image could not be found
+     */
+    private ImageSourceDto findSource(final Long id) throws ResourceNotFoundException {
+        return imageRepository.findSourceById(id).orElseThrow(() -> new ResourceNotFoundException("No image found with id: " + id));
+    }
+
+    /**
+     * Get the content of an image, from the legacy content columns for images which were not moved
+     * to the image storage yet and through the content cache otherwise
+     * @param image The image
+     * @return A resource reading the content
+     * @throws ResourceNotFoundException If the image has no readable legacy content
+     */
+    private Resource loadContent(final ImageSourceDto image) throws ResourceNotFoundException {
+        if (image.storageKey() != null) {
+            return imageContentCache.get(image.storageKey(), imageStorage::load);
+        }
+
+        // The content may still only be in the base64 column of the original schema
+        final Optional<LegacyImage> legacyImage = imageRepository.findLegacyImage(image.id(), imageRepository.hasBase64Column());
+
+        if (legacyImage.isEmpty()) {
+            // The content was moved to the image storage since the image was read
+            final ImageSourceDto migrated = findSource(image.id());
+
+            if (migrated.storageKey() != null) {
+                return imageContentCache.get(migrated.storageKey(), imageStorage::load);
+            }
+        }
+
+        final byte[] content;
+
+        try {
+            content = legacyImage.map(LegacyImage::decodedContent).orElse(null);
+        } catch (IllegalArgumentException e) {
+            throw new ResourceNotFoundException("Image with id " + image.id() + " has no readable content");
+        }
+
+        if (content == null || content.length == 0) {
+            throw new ResourceNotFoundException("Image with id " + image.id() + " has no readable content");
+        }
+
+        return new ByteArrayResource(content);
+    }
+
+    /**
+     * Get the size of content
+     * @param content The content
+     * @return The size of the content in bytes
+     */
+    private static long contentLength(final Resource content) {
+        try {
+            return content.contentLength();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the key identifying a variant of some content in the content cache
+     * @param key The key of the content
+     * @param variant The variant
+     * @return The key of the variant
+     */
+    private static String variantKey(final String key, final ImageVariant variant) {
+        return key + "." + variant.getName();
+    }
+
+    /**
+     * Read the dimensions of stored image content
+     * @param key The key of the content
+     * @return The width and height of the image, or empty if it could not be decoded
+     */
+    private Optional<Dimension> readDimensions(final String key) {
+        try (InputStream content = imageStorage.load(key).getInputStream()) {
+            return ImageVariantService.readDimensions(content);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Delete content which was written to the image storage but is not used,
+     * unless it was already stored or is used by another image
+     * @param storedImage The written content
+     */
+    private void discard(final StoredImage storedImage) {
+        if (storedImage.created()) {
+            deleteContent(storedImage.hash(), storedImage.key());
+        }
+    }
+
+    /**
+     * Write image content to the image storage
+     * @param content The content of the image
+     * @return The stored content
+     * @throws InvalidRequestException If the content could not be read, or is empty or too large
+     */
+    private StoredImage store(final InputStream content) throws InvalidRequestException {
+        final StoredImage storedImage;
+
+        try {
+            storedImage = imageStorage.store(content, Image.MAX_SIZE);
+        } catch (IOException e) {
+            throw new InvalidRequestException("Could not store the image content: " + e.getMessage());
+        }
+
+        if (storedImage.size() == 0) {
+            discard(storedImage);
+            throw new InvalidRequestException("Image content cannot be empty");
+        }
 
-        return image;
+        return storedImage;
     }
 
     /**
-     * Convert an image entity to a DTO
+     * Convert an image entity to a metadata DTO
      * @param image The image entity
-     * @return An image DTO
+     * @return An image metadata DTO
      */
-    public static ImageDto toImageDto(final Image image) {
-        return new ImageDto(
+    public static ImageMetadataDto toImageMetadataDto(final Image image) {
+        return new ImageMetadataDto(
                 image.getId(),
-                image.getBase64Image()
+                image.getMediaType(),
+                image.getSize(),
+                image.getWidth(),
+                image.getHeight(),
+                image.getHash(),
+                image.getCreatedAt(),
+                image.getLastModified()
         );
     }
+
+    /**
+     * Open uploaded image content, which was decoded from base64 while the request was parsed
+     * @param content The uploaded content
+     * @return A stream reading the decoded content
+     * @throws InvalidRequestException If the content is missing
+     * @throws IOException If the content could not be opened
+     */
+    private static InputStream openContent(final Base64Content content) throws InvalidRequestException, IOException {
+        if (content == null) {
+            throw new InvalidRequestException("Image content cannot be null");
+        }
+
+        return content.getInputStream();
+    }
+
+    /**
+     * Detect the media type of an image from the first bytes of its content.
+     * Only the raster formats in {@link #SUPPORTED_MEDIA_TYPES} are recognized
+     * @param header The first bytes of the content
+     * @return The media type of the image, or empty if the content is not a supported image
+     */
+    public static Optional<String> detectMediaType(final byte[] header) {
+        if (startsWith(header, 0, PNG_SIGNATURE)) {
+            return Optional.of(MediaType.IMAGE_PNG_VALUE);
+        }
+
+        if (startsWith(header, 0, JPEG_SIGNATURE)) {
+            return Optional.of(MediaType.IMAGE_JPEG_VALUE);
+        }
+
+        if (startsWith(header, 0, GIF87_SIGNATURE) || startsWith(header, 0, GIF89_SIGNATURE)) {
+            return Optional.of(MediaType.IMAGE_GIF_VALUE);
+        }
+
+        if (startsWith(header, 0, RIFF_SIGNATURE) && startsWith(header, 8, WEBP_SIGNATURE)) {
+            return Optional.of(WEBP_MEDIA_TYPE);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Detect the media type of an image from its content. The declared type of an upload is never trusted,
+     * since the content is served back with the stored type
+     * @param content The content of the image, which must support mark and reset
+     * @return The media type of the image
+     * @throws InvalidRequestException If the content could not be read, or is not a supported image
+     */
+    private static String detectMediaType(final InputStream content) throws InvalidRequestException {
+        final byte[] header;
+
+        try {
+            content.mark(MEDIA_TYPE_HEADER_LENGTH);
+            header = content.readNBytes(MEDIA_TYPE_HEADER_LENGTH);
+            content.reset();
+        } catch (IOException e) {
+            throw new InvalidRequestException("Could not read the image content: " + e.getMessage());
+        }
+
+        if (header.length == 0) {
+            throw new InvalidRequestException("Image content cannot be empty");
+        }
+
+        return detectMediaType(header)
+                .orElseThrow(() -> new InvalidRequestException("Only PNG, JPEG, GIF and WebP images are supported"));
+    }
+
+    /**
+     * Check whether bytes contain a signature at an offset
+     * @param bytes The bytes to check
+     * @param offset The offset of the signature
+     * @param signature The signature
+     * @return Whether the signature was found
+     */
+    private static boolean startsWith(final byte[] bytes, final int offset, final byte[] signature) {
+        return bytes.length >= offset + signature.length
+                && Arrays.equals(bytes, offset, offset + signature.length, signature, 0, signature.length);
+    }
+
+    /**
+     * The key of a read of an image variant
+     * @param id The id of the image
+     * @param variant The variant
+     */
+    private record VariantKey(Long id, ImageVariant variant) { }
+
+    /**
+     * The result of adding an image
+     * @param image The description of the image
+     * @param created Whether a new image was created, rather than an existing one returned
+     */
+    private record AddedImage(ImageMetadataDto image, boolean created) { }
 }
@@ -0,0 +1,358 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import com.darwin.simplestore.dto.ImageVariant;
+import com.darwin.simplestore.storage.ImageStorage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service generating resized variants of stored images.
+ * Variants are generated on a bounded background executor, and concurrent requests for the
+ * same variant share a single job. Variants are encoded as JPEG and kept in the image storage
+ * next to the original content. Images which cannot be decoded, or which are already smaller
+ * than a variant, are served in their original form
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+    public static final String VARIANT_MEDIA_TYPE = "image/jpeg";
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final ImageStorage imageStorage;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, CompletableFuture<Optional<Resource>>> jobs = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> originals = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .build();
+
+    /**
+     * Create the service
+     * @param imageStorage The storage of the images and their variants
+     * @param threads The number of threads generating variants
+     * @param queueCapacity The maximum number of generation jobs waiting for a thread
+     */
+    public ImageVariantService(final ImageStorage imageStorage,
+                               @Value("${simplestore.images.variants.threads:2}") final int threads,
+                               @Value("${simplestore.images.variants.queue-capacity:100}") final int queueCapacity) {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        this.imageStorage = imageStorage;
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "image-variants-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+    }
+
+    /**
+     * Generate all variants of stored content in the background.
+     * Variants which cannot be queued are generated the first time they are requested
+     * @param key The key of the content in the image storage
+     */
+    public void generateVariants(final String key) {
+        for (ImageVariant variant : ImageVariant.values()) {
+            submit(key, variant, false);
+        }
+    }
+
+    /**
+     * Get a variant of stored content, generating it if it does not exist yet
+     * @param key The key of the content in the image storage
+     * @param variant The requested variant
+     * @return The variant, or empty if the original content should be served instead
+     */
+    public Optional<Resource> getVariant(final String key, final ImageVariant variant) {
+        if (originals.getIfPresent(jobKey(key, variant)) != null) {
+            return Optional.empty();
+        }
+
+        final Resource resource = imageStorage.loadVariant(key, variant.getName());
+
+        if (resource.exists()) {
+            return Optional.of(resource);
+        }
+
+        try {
+            return submit(key, variant, true).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the generation threads, abandoning queued jobs
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start a job generating a variant, or join the job already generating it
+     * @param key The key of the content in the image storage
+     * @param variant The variant to generate
+     * @param waiting Whether the caller waits for the variant, in which case it is generated
+     *                on the calling thread if the executor is full
+     * @return The job generating the variant
+     */
+    private CompletableFuture<Optional<Resource>> submit(final String key, final ImageVariant variant, final boolean waiting) {
+        final String jobKey = jobKey(key, variant);
+        final CompletableFuture<Optional<Resource>> job = new CompletableFuture<>();
+        final CompletableFuture<Optional<Resource>> running = jobs.putIfAbsent(jobKey, job);
+
+        if (running != null) {
+            return running;
+        }
+
+        final Runnable task = () -> {
+            try {
+                job.complete(generate(key, variant));
+            } catch (RuntimeException e) {
+                log.warn("Could not generate the {} variant of image {}", variant.getName(), key, e);
+                job.completeExceptionally(e);
+            } finally {
+                jobs.remove(jobKey, job);
+            }
+        };
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (waiting) {
+                task.run();
+            } else {
+                jobs.remove(jobKey, job);
+                job.complete(Optional.empty());
+            }
+        }
+
+        return job;
+    }
+
+    /**
+     * Generate a variant and write it to the image storage
+     * @param key The key of the content in the image storage
+     * @param variant The variant to generate
+     * @return The variant, or empty if the original content should be served instead
+     */
+    private Optional<Resource> generate(final String key, final ImageVariant variant) {
+        final Resource existing = imageStorage.loadVariant(key, variant.getName());
+
+        if (existing.exists()) {
+            return Optional.of(existing);
+        }
+
+        try {
+            final Optional<byte[]> content;
+
+            try (InputStream original = imageStorage.load(key).getInputStream()) {
+                content = resize(original, variant.getSize());
+            }
+
+            if (content.isEmpty()) {
+                originals.put(jobKey(key, variant), Boolean.TRUE);
+
+                return Optional.empty();
+            }
+
+            imageStorage.storeVariant(key, variant.getName(), new ByteArrayInputStream(content.get()));
+
+            return Optional.of(imageStorage.loadVariant(key, variant.getName()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the key identifying a variant of some content
+     * @param key The key of the content
+     * @param variant The variant
+     * @return The key of the variant
+     */
+    private static String jobKey(final String key, final ImageVariant variant) {
+        return key + "." + variant.getName();
+    }
+
+    /**
+     * Read the dimensions of an image. Only the header of the image is decoded
+     * @param content The encoded image
+     * @return The width and height of the image, or empty if the image could not be decoded
+     * @throws IOException If the content could not be read
+     */
+    public static Optional<Dimension> readDimensions(final InputStream content) throws IOException {
+        return decode(content, reader -> Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0))));
+    }
+
+    /**
+     * Resize an image to fit inside a square, encoded as JPEG.
+     * Large images are subsampled while they are decoded, so their full resolution is never held in memory
+     * @param content The encoded image
+     * @param size The maximum width and height of the resized image
+     * @return The resized image, or empty if the image could not be decoded or already fits
+     * @throws IOException If the content could not be read
+     */
+    static Optional<byte[]> resize(final InputStream content, final int size) throws IOException {
+        return decode(content, reader -> {
+            final int width = reader.getWidth(0);
+            final int height = reader.getHeight(0);
+            final int longestSide = Math.max(width, height);
+
+            if (longestSide <= size) {
+                return Optional.empty();
+            }
+
+            final ImageReadParam readParam = reader.getDefaultReadParam();
+            final int subsampling = Math.max(1, longestSide / size);
+            readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            return Optional.of(encode(scale(reader.read(0, readParam), size)));
+        });
+    }
+
+    /**
+     * Decode an image with the first ImageIO reader supporting its format
+     * @param content The encoded image
+     * @param decoder Function decoding what is needed from the reader
+     * @param <T> The type of the decoded result
+     * @return The decoded result, or empty if the image could not be decoded
+     * @throws IOException If the content could not be read
+     */
+    private static <T> Optional<T> decode(final InputStream content, final Decoder<T> decoder) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            final Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+
+            if (readers == null || !readers.hasNext()) {
+                return Optional.empty();
+            }
+
+            final ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+
+                return decoder.decode(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                log.debug("Could not decode image", e);
+
+                return Optional.empty();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image to fit inside a square. Transparent areas are filled with white
+     * @param source The decoded image
+     * @param size The maximum width and height of the scaled image
+     * @return The scaled image
+     */
+    private static BufferedImage scale(final BufferedImage source, final int size) {
+        final double ratio = (double) size / Math.max(source.getWidth(), source.getHeight());
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        final BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = target.createGraphics();
+
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return target;
+    }
+
+    /**
+     * Encode an image as JPEG
+     * @param image The image
+     * @return The encoded image
+     * @throws IOException If the image could not be encoded
+     */
+    private static byte[] encode(final BufferedImage image) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            final ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            writeParam.setCompressionQuality(JPEG_QUALITY);
+
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Function decoding an image from a reader positioned on its content
+     * @param <T> The type of the decoded result
+     */
+    @FunctionalInterface
+    private interface Decoder<T> {
+        /**
+         * Decode the image
+         * @param reader The reader of the image
+         * @return The decoded result, or empty if there is none
+         * @throws IOException If the image could not be decoded
+         */
+        Optional<T> decode(ImageReader reader) throws IOException;
+    }
+}
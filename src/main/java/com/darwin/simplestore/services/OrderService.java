@@ -5,6 +5,10 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.MissingIdCache.ResourceType;
+import com.darwin.simplestore.cache.ProductCache;
+import com.darwin.simplestore.cache.ProductPageCache;
 import com.darwin.simplestore.dto.*;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
@@ -15,10 +19,16 @@ import com.darwin.simplestore.exceptions.NotEnoughProductsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartRepository;
 import com.darwin.simplestore.repositories.OrderRepository;
+import com.darwin.simplestore.repositories.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -31,7 +41,10 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final CartService cartService;
     private final CartRepository cartRepository;
-    private final ProductService productService;
+    private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final ProductPageCache productPageCache;
+    private final MissingIdCache missingIdCache;
 
     /**
      * Return whether all the products are available in the requested quantity
@@ -39,8 +52,9 @@ public class OrderService {
      * @return True if there are enough products to satisfy the order, false otherwise
      * @throws ResourceNotFoundException If there is no order with the provided id
      */
+    @Transactional(readOnly = true)
     public boolean allProductsAvailable(Long cartId) throws ResourceNotFoundException {
-        final Cart cart = cartRepository.findById(cartId).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + cartId));
+        final Cart cart = cartRepository.findWithItemsById(cartId).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + cartId));
         final Set<CartItem> cartItems = cart.getCartItems();
 
         for (CartItem cartItem : cartItems) {
@@ -56,51 +70,68 @@ public class OrderService {
     }
 
     /**
-     * Place a new order
+     * Place a new order.
+     * The stock of all the products is decremented in a single batch of conditional updates,
+     * so the availability check and the decrement cannot be interleaved with another checkout
      * @param cartId The id of the cart to place the order from
      * @return DTO representing the new order
      * @throws ResourceNotFoundException If the specified cart does not exist
      * @throws NotEnoughProductsException If there are not enough products to satisfy the order
      */
+    @Transactional
     public OrderDto placeOrder(final Long cartId) throws ResourceNotFoundException, NotEnoughProductsException {
-        if (!allProductsAvailable(cartId)) {
-            throw new NotEnoughProductsException("Not enough products to satisfy order");
+        final Cart cart = cartRepository.findWithItemsById(cartId).orElseThrow(() -> new ResourceNotFoundException("No cart found with id: " + cartId));
+        final Map<Long, Long> quantitiesById = new HashMap<>();
+
+        final Set<ProductCategory> categories = EnumSet.noneOf(ProductCategory.class);
+
+        for (CartItem cartItem : cart.getCartItems()) {
+            quantitiesById.merge(cartItem.getProduct().getId(), cartItem.getQuantity(), Long::sum);
+            categories.add(cartItem.getProduct().getCategory());
         }
 
-        final CartDto cart = cartService.getCart(cartId);
-        final Set<CartItemDto> cartItems = cart.cartItems();
-
-        for (CartItemDto cartItem : cartItems) {
-            final Long quantity = cartItem.quantity();
-            final ProductDto product = cartItem.productDto();
-            final ProductDto udpatedProduct = new ProductDto(product.id(),
-                    product.name(),
-                    product.description(),
-                    product.price(),
-                    product.quantity() - quantity,
-                    product.category()
-            );
-
-            productService.updateProductById(udpatedProduct);
+        final List<Long> unavailable = productRepository.decrementQuantities(quantitiesById);
+
+        if (!unavailable.isEmpty()) {
+            throw new NotEnoughProductsException("Not enough products to satisfy order, unavailable products: " + unavailable);
         }
 
+        productCache.invalidateAll(quantitiesById.keySet());
+        productPageCache.invalidate(categories.toArray(ProductCategory[]::new));
+
         Order order = new Order();
-        order.setCart(cartRepository.findById(cartId).get());
+        order.setCart(cart);
         order.setStatus(OrderStatus.AWAITING_PAYMENT);
 
         cartService.clearCart(cartId);
 
-        return toOrderDto(orderRepository.save(order));
+        final OrderDto orderDto = toOrderDto(orderRepository.save(order));
+        missingIdCache.invalidate(ResourceType.ORDER, orderDto.id());
+
+        return orderDto;
     }
 
     /**
-     * Get an order
+     * Get an order. The order is read with its cart, the cart items and their products in a single query,
+     * so the method is not transactional. Ids recently found missing are rejected without a query
      * @param orderId The id of the order
      * @return A DTO representing the order
      * @throws ResourceNotFoundException If no order with the specified id could be found
      */
     public OrderDto getOrder(Long orderId) throws ResourceNotFoundException {
-        return toOrderDto(orderRepository.findById(orderId).orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId)));
+        return missingIdCache.find(ResourceType.ORDER, orderId, () -> orderRepository.findWithItemsById(orderId))
+                .map(OrderService::toOrderDto)
+                .orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId));
+    }
+
+    /**
+     * Get the version tag of an order, read without loading the order and its items
+     * @param orderId The id of the order
+     * @return The version tag of the order
+     * @throws ResourceNotFoundException If no order with the specified id could be found
+     */
+    public String getOrderVersionTag(Long orderId) throws ResourceNotFoundException {
+        return missingIdCache.find(ResourceType.ORDER, orderId, () -> orderRepository.findVersionTagById(orderId)).orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId));
     }
 
     /**
@@ -109,8 +140,9 @@ public class OrderService {
      * @return A DTO representing the order
      * @throws ResourceNotFoundException If no order with the specified id could be found
      */
+    @Transactional
     public OrderDto payOrder(final Long orderId) throws ResourceNotFoundException {
-        final Order order = orderRepository.findById(orderId).orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId));
+        final Order order = orderRepository.findWithItemsById(orderId).orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId));
 
         if (order.getStatus() == OrderStatus.AWAITING_PAYMENT) {
             order.setStatus(OrderStatus.DELIVERED);
@@ -124,6 +156,7 @@ public class OrderService {
      * @param orderId The id of the order
      * @throws ResourceNotFoundException If no order with the specified id could be found
      */
+    @Transactional
     public void cancelOrder(final Long orderId) throws ResourceNotFoundException {
         if (!orderRepository.existsById(orderId)) {
             throw new ResourceNotFoundException("No order found with id: " + orderId);
@@ -138,6 +171,7 @@ public class OrderService {
      * @throws ResourceNotFoundException If no order with the specified id could be found
      * @throws BadOrderStateException If the order is not in the delivered state
      */
+    @Transactional
     public void finishOrder(final Long orderId) throws ResourceNotFoundException, BadOrderStateException {
         final Order order = orderRepository.findById(orderId).orElseThrow(() -> new ResourceNotFoundException("No order found with id: " + orderId));
 
@@ -156,6 +190,16 @@ public class OrderService {
     public static OrderDto toOrderDto(Order order) {
         return new OrderDto(order.getId(),
                 CartService.toCartDto(order.getCart()),
-                order.getStatus());
+                order.getStatus(),
+                order.getVersion());
+    }
+
+    /**
+     * Get the version tag of an order DTO, matching the tag read by {@link #getOrderVersionTag(Long)}
+     * @param orderDto The order DTO
+     * @return The version tag of the order
+     */
+    public static String versionTag(OrderDto orderDto) {
+        return orderDto.version() + "." + CartService.versionTag(orderDto.cartDto());
     }
 }
@@ -0,0 +1,203 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import com.darwin.simplestore.dto.NewProductDto;
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Helper for reading and writing products as CSV lines.
+ * Fields may be quoted, with quotes escaped by doubling them, and quoted fields may contain line breaks
+ */
+public final class ProductCsv {
+    public static final List<String> IMPORT_COLUMNS = List.of("name", "description", "price", "quantity", "category");
+    public static final List<String> EXPORT_COLUMNS = List.of("id", "name", "description", "price", "quantity", "category");
+
+    /**
+     * The maximum length of an imported record, including the line breaks inside its quoted fields.
+     * Longer records are rejected, and the import continues on the line after the one exceeding the limit
+     */
+    public static final int MAX_RECORD_LENGTH = 65536;
+
+    private ProductCsv() { }
+
+    /**
+     * Parse the header line of an imported file
+     * @param line The header line
+     * @return The index of each column, keyed by column name
+     * @throws InvalidRequestException If the header contains unknown or duplicate columns, or misses a required one
+     */
+    public static Map<String, Integer> parseHeader(final String line) throws InvalidRequestException {
+        final List<String> fields = parseLine(line);
+        final Map<String, Integer> columns = new HashMap<>();
+
+        for (int i = 0; i < fields.size(); i++) {
+            final String column = fields.get(i).trim().toLowerCase(Locale.ROOT);
+
+            if (!IMPORT_COLUMNS.contains(column)) {
+                throw new InvalidRequestException("Unknown CSV column: " + column);
+            }
+
+            if (columns.put(column, i) != null) {
+                throw new InvalidRequestException("Duplicate CSV column: " + column);
+            }
+        }
+
+        if (!columns.containsKey("name")) {
+            throw new InvalidRequestException("CSV header must contain a name column");
+        }
+
+        return columns;
+    }
+
+    /**
+     * Check whether a line opens or closes a quoted field, so that a record continues on the next line
+     * if its first line opens a quoted field, and until a line closes it again.
+     * Escaped quotes come in pairs, so they do not change the result
+     * @param line The line
+     * @return Whether the line has an odd number of quotes
+     */
+    public static boolean togglesQuote(final String line) {
+        int quotes = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+
+        return quotes % 2 != 0;
+    }
+
+    /**
+     * Split a CSV record into its fields
+     * @param line The record, which may span multiple lines inside quoted fields
+     * @return The unquoted fields
+     * @throws InvalidRequestException If a quoted field is not terminated
+     */
+    public static List<String> parseLine(final String line) throws InvalidRequestException {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new InvalidRequestException("Unterminated quoted CSV field");
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    /**
+     * Convert the fields of a CSV line to a new product DTO. Empty fields are read as missing values
+     * @param fields The fields of the line
+     * @param columns The index of each column, as returned by {@link #parseHeader(String)}
+     * @return The new product DTO
+     * @throws InvalidRequestException If the line has the wrong number of fields or a field cannot be parsed
+     */
+    public static NewProductDto toNewProductDto(final List<String> fields, final Map<String, Integer> columns) throws InvalidRequestException {
+        if (fields.size() != columns.size()) {
+            throw new InvalidRequestException("Expected " + columns.size() + " CSV fields but found " + fields.size());
+        }
+
+        final String price = field(fields, columns, "price");
+        final String quantity = field(fields, columns, "quantity");
+        final String category = field(fields, columns, "category");
+
+        try {
+            return new NewProductDto(
+                    field(fields, columns, "name"),
+                    field(fields, columns, "description"),
+                    price == null ? null : Double.valueOf(price),
+                    quantity == null ? null : Long.valueOf(quantity),
+                    category == null ? null : ProductCategory.valueOf(category.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid CSV field value: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Convert a product DTO to a CSV record, with the fields in the order of the export columns.
+     * Line breaks are kept inside quoted fields, which the import reads back as a single record
+     * @param productDto The product DTO
+     * @return The CSV record, without a line terminator
+     */
+    public static String toLine(final ProductDto productDto) {
+        return escape(productDto.id()) + ',' +
+                escape(productDto.name()) + ',' +
+                escape(productDto.description()) + ',' +
+                escape(productDto.price()) + ',' +
+                escape(productDto.quantity()) + ',' +
+                escape(productDto.category());
+    }
+
+    /**
+     * Quote a value for a CSV line, if it needs quoting
+     * @param value The value, may be null
+     * @return The CSV field
+     */
+    private static String escape(final Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        final String text = value.toString();
+
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Get a field by its column name
+     * @param fields The fields of the line
+     * @param columns The index of each column
+     * @param column The column name
+     * @return The field, or null if the column is absent or the field is empty
+     */
+    private static String field(final List<String> fields, final Map<String, Integer> columns, final String column) {
+        final Integer index = columns.get(column);
+
+        if (index == null || fields.get(index).isEmpty()) {
+            return null;
+        }
+
+        return fields.get(index);
+    }
+}
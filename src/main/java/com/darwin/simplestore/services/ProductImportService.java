@@ -0,0 +1,340 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.MissingIdCache.ResourceType;
+import com.darwin.simplestore.cache.ProductCountCache;
+import com.darwin.simplestore.cache.ProductNameFilter;
+import com.darwin.simplestore.cache.ProductPageCache;
+import com.darwin.simplestore.dto.NewProductDto;
+import com.darwin.simplestore.dto.ProductFileFormat;
+import com.darwin.simplestore.dto.ProductImportErrorDto;
+import com.darwin.simplestore.dto.ProductImportReportDto;
+import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.repositories.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.annotation.Validated;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for importing products in bulk.
+ * The input is read one line at a time and written in chunks, each chunk in its own transaction,
+ * so the memory used does not depend on the size of the imported file
+ */
+@Service
+@Validated
+public class ProductImportService {
+    private final ProductRepository productRepository;
+    private final ProductCountCache productCountCache;
+    private final ProductPageCache productPageCache;
+    private final MissingIdCache missingIdCache;
+    private final ProductNameFilter productNameFilter;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    /**
+     * Create the service
+     * @param productRepository The product repository
+     * @param productCountCache The product count cache, refreshed after an import
+     * @param productPageCache The product page cache, refreshed after an import
+     * @param missingIdCache The missing id cache, cleared of product ids after an import
+     * @param productNameFilter The product name filter, the imported names are added to
+     * @param objectMapper The object mapper used to parse NDJSON rows
+     * @param validator The validator used to check every row before it is written
+     * @param entityManager The entity manager, cleared after every chunk
+     * @param transactionManager The transaction manager used to write every chunk
+     * @param chunkSize The number of products written per transaction, should match the JDBC batch size
+     * @param maxErrors The maximum number of rejected rows listed in the report
+     */
+    public ProductImportService(final ProductRepository productRepository,
+                                final ProductCountCache productCountCache,
+                                final ProductPageCache productPageCache,
+                                final MissingIdCache missingIdCache,
+                                final ProductNameFilter productNameFilter,
+                                final ObjectMapper objectMapper,
+                                final Validator validator,
+                                final EntityManager entityManager,
+                                final PlatformTransactionManager transactionManager,
+                                @Value("${simplestore.products.import.chunk-size:500}") final int chunkSize,
+                                @Value("${simplestore.products.import.max-errors:1000}") final int maxErrors) {
+        this.productRepository = productRepository;
+        this.productCountCache = productCountCache;
+        this.productPageCache = productPageCache;
+        this.missingIdCache = missingIdCache;
+        this.productNameFilter = productNameFilter;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Import products from a file. Rows which are invalid or whose name already exists are skipped
+     * and listed in the report, while all the other rows are imported
+     * @param inputStream The contents of the file, NDJSON or CSV with a header line
+     * @param format The format of the file
+     * @return The report of the import
+     * @throws InvalidRequestException If the file could not be read, or the CSV header is invalid or too long
+     */
+    public ProductImportReportDto importProducts(final InputStream inputStream, final ProductFileFormat format) throws InvalidRequestException {
+        final ImportReport report = new ImportReport();
+        final List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        Map<String, Integer> csvColumns = null;
+
+        try (BoundedLineReader reader = new BoundedLineReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine(ProductCsv.MAX_RECORD_LENGTH)) != null) {
+                lineNumber++;
+
+                final long rowNumber = lineNumber;
+                boolean tooLong = reader.isTruncated();
+
+                if (!tooLong && line.isBlank()) {
+                    continue;
+                }
+
+                // A quoted CSV field may contain line breaks, so the record continues until its quotes are closed
+                if (!tooLong && format == ProductFileFormat.CSV && ProductCsv.togglesQuote(line)) {
+                    final StringBuilder record = new StringBuilder(line);
+                    boolean quoted = true;
+                    String next;
+
+                    while (quoted && !tooLong
+                            && (next = reader.readLine(Math.max(ProductCsv.MAX_RECORD_LENGTH - record.length() - 1, 0))) != null) {
+                        lineNumber++;
+                        tooLong = reader.isTruncated();
+                        record.append('\n').append(next);
+                        quoted = ProductCsv.togglesQuote(next) != quoted;
+                    }
+
+                    line = record.toString();
+                }
+
+                // The rest of a row which is too long has been skipped, and the next line starts a new row
+                if (tooLong) {
+                    if (format == ProductFileFormat.CSV && csvColumns == null) {
+                        throw new InvalidRequestException("CSV header can be at most " + ProductCsv.MAX_RECORD_LENGTH + " characters long");
+                    }
+
+                    report.fail(rowNumber, "Row can be at most " + ProductCsv.MAX_RECORD_LENGTH + " characters long");
+                    continue;
+                }
+
+                if (format == ProductFileFormat.CSV && csvColumns == null) {
+                    csvColumns = ProductCsv.parseHeader(line);
+                    continue;
+                }
+
+                final Product product = parseRow(line, rowNumber, format, csvColumns, report);
+
+                if (product != null) {
+                    chunk.add(new ImportRow(rowNumber, product));
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+
+            writeChunk(chunk, report);
+        } catch (IOException e) {
+            throw new InvalidRequestException("Could not read the imported products: " + e.getMessage());
+        } finally {
+            // Chunks written before a failure stay committed
+            if (report.imported > 0) {
+                productCountCache.invalidate();
+                productPageCache.invalidateAll();
+                missingIdCache.invalidateAll(ResourceType.PRODUCT);
+            }
+        }
+
+        return report.toDto();
+    }
+
+    /**
+     * Parse and validate a single row
+     * @param line The row
+     * @param lineNumber The line number of the row
+     * @param format The format of the file
+     * @param csvColumns The CSV columns, ignored for NDJSON
+     * @param report The report to add the row to if it is invalid
+     * @return The product entity, or null if the row is invalid
+     */
+    private Product parseRow(final String line,
+                             final long lineNumber,
+                             final ProductFileFormat format,
+                             final Map<String, Integer> csvColumns,
+                             final ImportReport report) {
+        final NewProductDto newProductDto;
+
+        try {
+            newProductDto = format == ProductFileFormat.CSV
+                    ? ProductCsv.toNewProductDto(ProductCsv.parseLine(line), csvColumns)
+                    : objectMapper.readValue(line, NewProductDto.class);
+        } catch (InvalidRequestException e) {
+            report.fail(lineNumber, e.getMessage());
+            return null;
+        } catch (JsonProcessingException e) {
+            report.fail(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+            return null;
+        }
+
+        final Product product = ProductService.fromNewProductDto(newProductDto);
+        final Set<ConstraintViolation<Product>> violations = validator.validate(product);
+
+        if (!violations.isEmpty()) {
+            report.fail(lineNumber, violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return null;
+        }
+
+        return product;
+    }
+
+    /**
+     * Write a chunk of valid rows in a single transaction.
+     * The existing names of the whole chunk are looked up with one query, and the inserts are sent as JDBC batches.
+     * If the chunk is rolled back, its rows are written again one at a time, so only the failing rows are rejected
+     * @param rows The rows to write
+     * @param report The report to add the results to
+     */
+    private void writeChunk(final List<ImportRow> rows, final ImportReport report) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        final List<ImportRow> duplicates = new ArrayList<>();
+        final List<Product> products = new ArrayList<>(rows.size());
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                final Set<String> names = new HashSet<>(productRepository.findExistingNames(
+                        rows.stream().map(row -> row.product().getName()).collect(Collectors.toSet())));
+
+                duplicates.clear();
+                products.clear();
+
+                for (ImportRow row : rows) {
+                    if (names.add(row.product().getName())) {
+                        products.add(row.product());
+                    } else {
+                        duplicates.add(row);
+                    }
+                }
+
+                productRepository.saveAll(products);
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (DataIntegrityViolationException e) {
+            // A product with one of the names was created concurrently, or a row was rejected by the database
+            rows.forEach(row -> writeRow(row, report));
+            return;
+        }
+
+        products.forEach(product -> productNameFilter.put(product.getName()));
+        duplicates.forEach(row -> report.fail(row.line(), "Product with name " + row.product().getName() + " already exists"));
+        report.imported += products.size();
+    }
+
+    /**
+     * Write a single row in its own transaction, after its chunk was rolled back
+     * @param row The row to write
+     * @param report The report to add the result to
+     */
+    private void writeRow(final ImportRow row, final ImportReport report) {
+        final Product product = row.product();
+
+        // The rolled back chunk may have assigned an id and a version, which would make the product look persisted
+        product.setId(null);
+        product.setVersion(null);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                productRepository.save(product);
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (DataIntegrityViolationException e) {
+            report.fail(row.line(), ProductService.isNameConflict(e)
+                    ? "Product with name " + product.getName() + " already exists"
+                    : "Product could not be saved: " + e.getMostSpecificCause().getMessage());
+            return;
+        }
+
+        productNameFilter.put(product.getName());
+        report.imported++;
+    }
+
+    /**
+     * A valid row waiting to be written
+     * @param line The line number of the row
+     * @param product The product entity
+     */
+    private record ImportRow(long line, Product product) { }
+
+    /**
+     * The report of an import in progress, keeping at most the configured number of errors
+     */
+    private class ImportReport {
+        private final List<ProductImportErrorDto> errors = new ArrayList<>();
+        private long imported = 0;
+        private long failed = 0;
+
+        /**
+         * Record a rejected row
+         * @param line The line number of the row
+         * @param message The reason the row was rejected
+         */
+        private void fail(final long line, final String message) {
+            failed++;
+
+            if (errors.size() < maxErrors) {
+                errors.add(new ProductImportErrorDto(line, message));
+            }
+        }
+
+        /**
+         * Convert the report to a DTO
+         * @return The report DTO
+         */
+        private ProductImportReportDto toDto() {
+            return new ProductImportReportDto(imported, failed, List.copyOf(errors), failed > errors.size());
+        }
+    }
+}
@@ -5,24 +5,61 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.MissingIdCache.ResourceType;
+import com.darwin.simplestore.cache.ProductCache;
+import com.darwin.simplestore.cache.ProductCountCache;
+import com.darwin.simplestore.cache.ProductNameFilter;
+import com.darwin.simplestore.cache.ProductPageCache;
+import com.darwin.simplestore.cache.RequestCoalescer;
+import com.darwin.simplestore.dto.CursorPageDto;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
 import com.darwin.simplestore.dto.NewProductDto;
+import com.darwin.simplestore.dto.ProductBatchDto;
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductCursor;
 import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductFields;
+import com.darwin.simplestore.dto.ProductSummaryDto;
+import com.darwin.simplestore.dto.ProductFileFormat;
 import com.darwin.simplestore.entities.Image;
 import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.ImageRepository;
 import com.darwin.simplestore.repositories.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service class used for managing products in the repository
@@ -31,23 +68,43 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Validated
 public class ProductService {
+    /**
+     * The maximum number of products which can be looked up by id at once
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
     private final ProductRepository productRepository;
     private final ImageRepository imageRepository;
+    private final ImageService imageService;
+    private final ProductCountCache productCountCache;
+    private final ProductCache productCache;
+    private final ProductPageCache productPageCache;
+    private final RequestCoalescer requestCoalescer;
+    private final MissingIdCache missingIdCache;
+    private final ProductNameFilter productNameFilter;
+    private final ObjectMapper objectMapper;
 
     /**
-     * Create a new product
+     * Create a new product. The name is only looked up in the repository if the product name filter
+     * cannot rule it out, and the unique index on the names catches the names created concurrently
      * @param newProductDto The DTO representing the new product to be added
      * @return DTO representing the created product
      * @throws ResourceExistsException If the product with the same name already exists
      */
+    @Transactional
     public ProductDto createProduct(final NewProductDto newProductDto) throws ResourceExistsException {
-        if (productRepository.existsByName(newProductDto.name())) {
+        if (productNameFilter.exists(newProductDto.name(), productRepository::existsByName)) {
             throw new ResourceExistsException("Product with name " + newProductDto.name() + " already exists");
         }
 
         Product product = fromNewProductDto(newProductDto);
+        final ProductDto productDto = toProductDto(saveProduct(product));
+        productNameFilter.put(productDto.name());
+        productCountCache.invalidate();
+        productPageCache.invalidate(productDto.category());
+        missingIdCache.invalidate(ResourceType.PRODUCT, productDto.id());
 
-        return toProductDto(productRepository.save(product));
+        return productDto;
     }
 
     /**
@@ -57,37 +114,188 @@ public class ProductService {
      * @return A list of all the products in the repository
      * @see #getProducts(Pageable) 
      */
+    @Transactional(readOnly = true)
     public List<ProductDto> getAllProducts() {
         return productRepository.findAll().stream().map(ProductService::toProductDto).toList();
     }
 
+    /**
+     * Write all the products to an output stream, one per line.
+     * The products are read through a database cursor and written as they arrive,
+     * so memory use does not depend on the number of products
+     * @param outputStream The stream to write the products to, which is flushed but not closed
+     * @param format The format to write the products in. CSV output starts with a header line
+     * @throws IOException If writing to the output stream fails
+     */
+    @Transactional(readOnly = true)
+    public void exportProducts(final OutputStream outputStream, final ProductFileFormat format) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        if (format == ProductFileFormat.CSV) {
+            writer.write(String.join(",", ProductCsv.EXPORT_COLUMNS));
+            writer.write('\n');
+        }
+
+        final ObjectWriter productWriter = objectMapper.writer(ProductFields.all().getFilters());
+
+        try (Stream<ProductDto> products = productRepository.streamAllProducts()) {
+            final Iterator<ProductDto> iterator = products.iterator();
+
+            while (iterator.hasNext()) {
+                final ProductDto productDto = iterator.next();
+
+                writer.write(format == ProductFileFormat.CSV
+                        ? ProductCsv.toLine(productDto)
+                        : productWriter.writeValueAsString(productDto));
+                writer.write('\n');
+            }
+        }
+
+        writer.flush();
+    }
+
     /**
      * Get a page of products
      * @param pageable The pageable object, holding the pagination parameters
      * @return A page of products
      */
+    @Transactional(readOnly = true)
     public Page<ProductDto> getProducts(final Pageable pageable) {
         return productRepository.findAll(pageable).map(ProductService::toProductDto);
     }
 
     /**
-     * Get a product by its id
+     * Get a slice of products, without counting all of them
+     * @param pageable The pageable object, holding the pagination parameters
+     * @return A slice of products
+     */
+    @Transactional(readOnly = true)
+    public Slice<ProductDto> getProductsSlice(final Pageable pageable) {
+        return productRepository.findAllBy(pageable).map(ProductService::toProductDto);
+    }
+
+    /**
+     * Get a slice of products of a certain category, without counting all of them
+     * @param pageable The pageable object, holding the pagination parameters
+     * @param category The product category
+     * @return A slice of products
+     */
+    @Transactional(readOnly = true)
+    public Slice<ProductDto> getProductsSliceByCategory(final Pageable pageable, final ProductCategory category) {
+        return productRepository.findAllByCategory(category, pageable).map(ProductService::toProductDto);
+    }
+
+    /**
+     * Get a page of product summaries, read without loading the product entities
+     * @param pageable The pageable object, holding the pagination parameters
+     * @param category The category to filter the products by, or null for all the products
+     * @return A page of product summaries
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductSummaryDto> getProductSummaries(final Pageable pageable, final ProductCategory category) {
+        return category == null
+                ? productRepository.findAllSummaries(pageable)
+                : productRepository.findSummariesByCategory(category, pageable);
+    }
+
+    /**
+     * Get a slice of product summaries, without counting all of them
+     * @param pageable The pageable object, holding the pagination parameters
+     * @param category The category to filter the products by, or null for all the products
+     * @return A slice of product summaries
+     */
+    @Transactional(readOnly = true)
+    public Slice<ProductSummaryDto> getProductSummariesSlice(final Pageable pageable, final ProductCategory category) {
+        return category == null
+                ? productRepository.findSummarySlice(pageable)
+                : productRepository.findSummarySliceByCategory(category, pageable);
+    }
+
+    /**
+     * Get the number of products, served from a cache which is refreshed when the products change
+     * @param category The category to count the products of, or null to count all the products
+     * @return The number of products
+     */
+    @Transactional(readOnly = true)
+    public long countProducts(final ProductCategory category) {
+        return productCountCache.count(category);
+    }
+
+    /**
+     * Get a product by its id, served from the product cache when possible.
+     * Ids recently found missing are rejected without a query
      * @param id The id of the product
      * @return Product DTO representing the requested product
      * @throws ResourceNotFoundException If no product exists with the requested id
      */
     public ProductDto getProductById(final Long id) throws ResourceNotFoundException {
-        return toProductDto(productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product with id " + id + " not found")));
+        return productCache.getById(id, key -> missingIdCache.find(ResourceType.PRODUCT, key, () -> productRepository.findById(key))
+                .map(ProductService::toProductDto)
+                .orElseThrow(() -> new ResourceNotFoundException("Product with id " + key + " not found")));
+    }
+
+    /**
+     * Get a product by its id, optionally with the metadata of its image.
+     * The image metadata is read with a projection, so the image content is never loaded.
+     * Concurrent reads of the same product image are shared, and the method is not transactional,
+     * so callers waiting for a shared read hold no connection
+     * @param id The id of the product
+     * @param includeImage Whether to include the metadata of the image of the product
+     * @return Product DTO representing the requested product
+     * @throws ResourceNotFoundException If no product exists with the requested id
+     */
+    public ProductDto getProductById(final Long id, final boolean includeImage) throws ResourceNotFoundException {
+        final ProductDto productDto = getProductById(id);
+
+        if (!includeImage) {
+            return productDto;
+        }
+
+        return requestCoalescer.execute("productImageMetadata", id, () -> imageRepository.findMetadataByProductId(id))
+                .map(productDto::withImage)
+                .orElse(productDto);
     }
 
     /**
-     * Get a product by its name
+     * Get multiple products by their ids. Cached products are served from the product cache,
+     * and the others are read with a single query. Each product is returned once, in the order
+     * its id was first requested, and the ids of the products which do not exist are reported
+     * @param ids The ids of the products
+     * @return The products found, along with the ids which were not found
+     * @throws InvalidRequestException If an id is null, or more than {@value #MAX_BATCH_SIZE} ids are requested
+     */
+    @Transactional(readOnly = true)
+    public ProductBatchDto getProductsByIds(final List<Long> ids) throws InvalidRequestException {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRequestException("At most " + MAX_BATCH_SIZE + " products can be requested at once");
+        }
+
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidRequestException("Product ids cannot be null");
+        }
+
+        final Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        final Map<Long, ProductDto> products = productCache.getAllById(distinctIds, missing -> productRepository
+                .findAllById(List.copyOf(missing))
+                .stream()
+                .map(ProductService::toProductDto)
+                .collect(Collectors.toMap(ProductDto::id, Function.identity())));
+
+        return new ProductBatchDto(
+                distinctIds.stream().filter(products::containsKey).map(products::get).toList(),
+                distinctIds.stream().filter(id -> !products.containsKey(id)).toList());
+    }
+
+    /**
+     * Get a product by its name, served from the product cache when possible
      * @param name The name of the product
      * @return Product DTO representing the requested product
      * @throws ResourceNotFoundException If no product exists with the requested name
      */
+    @Transactional(readOnly = true)
     public ProductDto getProductByName(final String name) throws ResourceNotFoundException {
-        return toProductDto(productRepository.findByName(name).orElseThrow(() -> new ResourceNotFoundException("Product with name " + name + " not found")));
+        return productCache.getByName(name, key -> toProductDto(productRepository.findByName(key)
+                .orElseThrow(() -> new ResourceNotFoundException("Product with name " + key + " not found"))));
     }
 
     /**
@@ -96,22 +304,126 @@ public class ProductService {
      * @param category The product category
      * @return Page of products of certain category
      */
+    @Transactional(readOnly = true)
     public Page<ProductDto> getProductsByCategory(final Pageable pageable, final ProductCategory category) {
         return productRepository.findByCategory(pageable, category).map(ProductService::toProductDto);
     }
 
+    /**
+     * Get a page of products using keyset pagination.
+     * Unlike the offset based methods, the cost of a page does not depend on how deep it is
+     * @param cursor The position to continue from
+     * @param pageSize The maximum number of products in the page
+     * @return The page of products, along with the cursor for the next page
+     * @throws InvalidRequestException If the page size is not positive
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDto<ProductDto> getProductsAfter(final ProductCursor cursor, final int pageSize) throws InvalidRequestException {
+        if (pageSize < 1) {
+            throw new InvalidRequestException("Page size must be at least 1");
+        }
+
+        // Fetch one extra product to find out whether there is a next page
+        final List<ProductDto> products = new ArrayList<>(productRepository.findPageAfter(
+                cursor.sortField(),
+                cursor.ascending(),
+                cursor.category(),
+                cursor.typedLastValue(),
+                cursor.lastId(),
+                pageSize + 1).stream().map(ProductService::toProductDto).toList());
+        final boolean hasNext = products.size() > pageSize;
+
+        if (hasNext) {
+            products.removeLast();
+        }
+
+        final String nextCursor = hasNext ? cursor.after(products.getLast()).encode() : null;
+
+        return new CursorPageDto<>(products, nextCursor, hasNext);
+    }
+
+    /**
+     * Get the version tag of a product, served from the product cache when possible.
+     * Otherwise only the version is read, without loading the product
+     * @param id The id of the product
+     * @return The version tag of the product
+     * @throws ResourceNotFoundException If no product exists with the requested id
+     */
+    public String getProductVersionTag(final Long id) throws ResourceNotFoundException {
+        final ProductDto cached = productCache.getIfPresent(id);
+
+        if (cached != null && cached.version() != null) {
+            return versionTag(cached);
+        }
+
+        return missingIdCache.find(ResourceType.PRODUCT, id, () -> productRepository.findVersionById(id))
+                .map(String::valueOf)
+                .orElseThrow(() -> new ResourceNotFoundException("Product with id " + id + " not found"));
+    }
+
+    /**
+     * Get the version tag of a product, optionally for the representation including the metadata of its image.
+     * The image is part of the tag, since it can change without changing the product version
+     * @param id The id of the product
+     * @param includeImage Whether the tag is for the representation including the image metadata
+     * @return The version tag of the product
+     * @throws ResourceNotFoundException If no product exists with the requested id
+     */
+    public String getProductVersionTag(final Long id, final boolean includeImage) throws ResourceNotFoundException {
+        final String versionTag = getProductVersionTag(id);
+
+        if (!includeImage) {
+            return versionTag;
+        }
+
+        return requestCoalescer.execute("productImageMetadata", id, () -> imageRepository.findMetadataByProductId(id))
+                .map(image -> imageVersionTag(versionTag, image))
+                .orElse(versionTag);
+    }
+
     /**
      * Update an existing product in the repository using its id inside the DTO
      * @param productDto The product DTO to update
      * @throws ResourceNotFoundException If the product with the specified id inside the DTO does not exist
+     * @throws ResourceExistsException If the product is renamed to the name of another product
      */
-    public void updateProductById(final ProductDto productDto) throws ResourceNotFoundException {
-        if (!productRepository.existsById(productDto.id())) {
-            throw new ResourceNotFoundException("Product with id " + productDto.id() + " does not exist");
+    @Transactional
+    public void updateProductById(final ProductDto productDto) throws ResourceNotFoundException, ResourceExistsException {
+        updateProductById(productDto, null);
+    }
+
+    /**
+     * Update an existing product in the repository using its id inside the DTO,
+     * only if the product still has the version the update is based on
+     * @param productDto The product DTO to update
+     * @param expectedVersion The version the product must have, or null to update any version
+     * @throws ResourceNotFoundException If the product with the specified id inside the DTO does not exist
+     * @throws PreconditionFailedException If the product has another version than the expected one
+     * @throws ResourceExistsException If the product is renamed to the name of another product
+     */
+    @Transactional
+    public void updateProductById(final ProductDto productDto, final Long expectedVersion) throws ResourceNotFoundException, PreconditionFailedException, ResourceExistsException {
+        final Product product = productRepository.findById(productDto.id())
+                .orElseThrow(() -> new ResourceNotFoundException("Product with id " + productDto.id() + " does not exist"));
+
+        if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+            throw new PreconditionFailedException("Product with id " + productDto.id() + " has version " + product.getVersion() + ", not " + expectedVersion);
         }
 
-        Product product = fromProductDto(productDto);
-        productRepository.save(product);
+        final ProductCategory previousCategory = product.getCategory();
+        final String previousName = product.getName();
+
+        copyProductDto(productDto, product);
+        saveProduct(product);
+
+        if (!Objects.equals(previousName, product.getName())) {
+            productNameFilter.put(product.getName());
+            productNameFilter.remove(previousName);
+        }
+
+        productCache.invalidate(productDto.id());
+        productCountCache.invalidate();
+        productPageCache.invalidate(previousCategory, product.getCategory());
     }
 
     /**
@@ -119,14 +431,19 @@ public class ProductService {
      * @param productDto The product DTO to update
      * @throws ResourceNotFoundException If the product with the specified name inside the DTO does not exist
      */
+    @Transactional
     public void updateProductByName(final ProductDto productDto) throws ResourceNotFoundException {
-        if (!productRepository.existsByName(productDto.name())) {
-            throw new ResourceNotFoundException("Product with name " + productDto.name() + " does not exist");
-        }
+        final Product product = productRepository.findByName(productDto.name())
+                .orElseThrow(() -> new ResourceNotFoundException("Product with name " + productDto.name() + " does not exist"));
 
-        Product product = fromProductDto(productDto);
-        product.setId(productRepository.findByName(productDto.name()).get().getId());
+        final ProductCategory previousCategory = product.getCategory();
+
+        copyProductDto(productDto, product);
         productRepository.save(product);
+        productCache.invalidate(product.getId());
+        productCache.invalidateByName(productDto.name());
+        productCountCache.invalidate();
+        productPageCache.invalidate(previousCategory, product.getCategory());
     }
 
     /**
@@ -134,12 +451,16 @@ public class ProductService {
      * @param id The id of the product
      * @throws ResourceNotFoundException If no product exists with the specified id
      */
+    @Transactional
     public void deleteProductById(final Long id) throws ResourceNotFoundException {
-        if (!productRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Product with id " + id + " does not exist");
-        }
+        final Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product with id " + id + " does not exist"));
 
-        productRepository.deleteById(id);
+        productRepository.delete(product);
+        imageService.releaseImage(product.getImage());
+        productNameFilter.remove(product.getName());
+        productCache.invalidate(id);
+        productCountCache.invalidate();
+        productPageCache.invalidate(product.getCategory());
     }
 
     /**
@@ -147,54 +468,84 @@ public class ProductService {
      * @param name The name of the product
      * @throws ResourceNotFoundException If no product exists with the specified name
      */
+    @Transactional
     public void deleteProductByName(final String name) throws ResourceNotFoundException {
-        if (!productRepository.existsByName(name)) {
-            throw new ResourceNotFoundException("Product with name " + name + " does not exist");
-        }
+        final Product product = productRepository.findByName(name).orElseThrow(() -> new ResourceNotFoundException("Product with name " + name + " does not exist"));
 
-        productRepository.deleteByName(name);
+        productRepository.delete(product);
+        imageService.releaseImage(product.getImage());
+        productNameFilter.remove(name);
+        productCache.invalidate(product.getId());
+        productCache.invalidateByName(name);
+        productCountCache.invalidate();
+        productPageCache.invalidate(product.getCategory());
     }
 
     /**
-     * Set an image for the product
+     * Set an image for the product. The product keeps a reference to the image, and releases its previous image
      * @param productId The id of the product
      * @param imageId The id of the image
      * @throws ResourceNotFoundException If the product or the image could not be found
      */
+    @Transactional
     public void setImage(final Long productId, final Long imageId) throws ResourceNotFoundException {
         final Product product = productRepository.findById(productId).orElseThrow(() -> new ResourceNotFoundException("Product with id " + productId + " does not exist"));
-        final Image image = imageRepository.findById(imageId).orElseThrow(() -> new ResourceNotFoundException("Image with id " + imageId + " does not exist"));
+        final Image previous = product.getImage();
+
+        if (previous != null && previous.getId().equals(imageId)) {
+            return;
+        }
 
-        product.setImage(image);
+        imageService.retainImage(imageId);
+        product.setImage(imageRepository.getReferenceById(imageId));
         productRepository.save(product);
+        imageService.releaseImage(previous);
+        // The version of the product changes with its image, so its cached entity tag is stale
+        productCache.invalidate(productId);
+        productPageCache.invalidate(product.getCategory());
     }
 
     /**
-     * Get the image of the product
+     * Get the image of the product.
+     * Concurrent reads of the same product image are shared, and the method is not transactional,
+     * so callers waiting for a shared read hold no connection
      * @param productId The id of the product
      * @return The image DTO
      * @throws ResourceNotFoundException If the product could not be found
      */
     public Optional<ImageDto> getImage(final Long productId) throws ResourceNotFoundException {
-        final Product product = productRepository.findById(productId).orElseThrow(() -> new ResourceNotFoundException("Product with id " + productId + " does not exist"));
+        return requestCoalescer.execute("productImage", productId, () -> {
+            final Optional<ImageMetadataDto> imageMetadata = imageRepository.findMetadataByProductId(productId);
+
+            if (imageMetadata.isPresent()) {
+                return Optional.of(imageService.getImage(imageMetadata.get().id()));
+            }
+
+            // The product is only looked up when it has no image, to tell it apart from a missing product
+            if (productCache.getIfPresent(productId) == null
+                    && !missingIdCache.exists(ResourceType.PRODUCT, productId, () -> productRepository.existsById(productId))) {
+                throw new ResourceNotFoundException("Product with id " + productId + " does not exist");
+            }
 
-        if (product.getImage() == null) {
             return Optional.empty();
-        } else {
-            return Optional.of(ImageService.toImageDto(product.getImage()));
-        }
+        });
     }
 
     /**
-     * Remove the image from the product
+     * Remove the image from the product, releasing the product's reference to it
      * @param productId the id of the product
      * @throws ResourceNotFoundException If the product could not be found
      */
+    @Transactional
     public void removeImage(final Long productId) throws ResourceNotFoundException {
         final Product product = productRepository.findById(productId).orElseThrow(() -> new ResourceNotFoundException("Product with id " + productId + " does not exist"));
+        final Image previous = product.getImage();
 
         product.setImage(null);
         productRepository.save(product);
+        imageService.releaseImage(previous);
+        productCache.invalidate(productId);
+        productPageCache.invalidate(product.getCategory());
     }
 
     /**
@@ -225,7 +576,68 @@ public class ProductService {
                 productDto.price(),
                 productDto.quantity(),
                 productDto.category(),
-                null);
+                null,
+                productDto.version());
+    }
+
+    /**
+     * Copy the editable fields of a product DTO to an existing entity, keeping its id, image and version
+     * @param productDto The product DTO
+     * @param product The product entity to update
+     */
+    private static void copyProductDto(final ProductDto productDto, final Product product) {
+        product.setName(productDto.name());
+        product.setDescription(productDto.description());
+        product.setPrice(productDto.price());
+        product.setQuantity(productDto.quantity());
+        product.setCategory(productDto.category());
+    }
+
+    /**
+     * Save a product and flush it, so that a name used by another product is reported
+     * by the unique index right away, instead of when the transaction commits
+     * @param product The product to save
+     * @return The saved product
+     * @throws ResourceExistsException If another product already uses the name of the product
+     * @throws DataIntegrityViolationException If the product violates another constraint
+     */
+    private Product saveProduct(final Product product) throws ResourceExistsException, DataIntegrityViolationException {
+        try {
+            final Product saved = productRepository.save(product);
+            productRepository.flush();
+
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            if (isNameConflict(e)) {
+                throw new ResourceExistsException("Product with name " + product.getName() + " already exists");
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether a failed write violated the unique index on the product names
+     * @param e The exception thrown by the write
+     * @return Whether the name of the product is used by another product
+     */
+    static boolean isNameConflict(final DataIntegrityViolationException e) {
+        return Product.NAME_CONSTRAINT.equalsIgnoreCase(constraintName(e));
+    }
+
+    /**
+     * Find the name of the database constraint violated by a failed write
+     * @param e The exception thrown by the write
+     * @return The name of the constraint, or null if it is not known
+     */
+    static String constraintName(final DataIntegrityViolationException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException constraintViolation) {
+                return constraintViolation.getConstraintName();
+            }
+        }
+
+        return null;
     }
 
     /**
@@ -239,6 +651,30 @@ public class ProductService {
                 product.getDescription(),
                 product.getPrice(),
                 product.getQuantity(),
-                product.getCategory());
+                product.getCategory(),
+                null,
+                product.getVersion());
+    }
+
+    /**
+     * Get the version tag of a product DTO, matching the tag read by {@link #getProductVersionTag(Long, boolean)}.
+     * The tag of a DTO including the image metadata also holds the hash of the image
+     * @param productDto The product DTO
+     * @return The version tag of the product
+     */
+    public static String versionTag(final ProductDto productDto) {
+        final String versionTag = String.valueOf(productDto.version());
+
+        return productDto.image() == null ? versionTag : imageVersionTag(versionTag, productDto.image());
+    }
+
+    /**
+     * Add the image of a product to its version tag
+     * @param versionTag The version tag of the product
+     * @param image The metadata of the product image
+     * @return The version tag of the product with its image
+     */
+    private static String imageVersionTag(final String versionTag, final ImageMetadataDto image) {
+        return versionTag + "." + image.id() + "-" + image.hash();
     }
 }
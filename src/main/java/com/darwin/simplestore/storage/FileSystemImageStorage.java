@@ -0,0 +1,187 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Image storage keeping the content in files on the local filesystem.
+ * Content is written to a temporary file first and then moved in place under its hash,
+ * so a partially written upload is never visible under its key
+ */
+@Slf4j
+@Component
+public class FileSystemImageStorage implements ImageStorage {
+    private static final long TRANSFER_CHUNK_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path temporaryDirectory;
+
+    /**
+     * Create the storage
+     * @param root The directory to keep the image files in, created if it does not exist
+     * @throws IOException If the directories could not be created
+     */
+    public FileSystemImageStorage(@Value("${simplestore.images.storage-path:data/images}") final Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.temporaryDirectory = this.root.resolve("tmp");
+
+        Files.createDirectories(temporaryDirectory);
+    }
+
+    @Override
+    public StoredImage store(final InputStream content, final long maxSize) throws InvalidRequestException, IOException {
+        final MessageDigest digest = sha256();
+        final Path temporaryFile = Files.createTempFile(temporaryDirectory, "upload-", ".tmp");
+        long size = 0;
+
+        try {
+            try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(content, digest));
+                 FileChannel target = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                long transferred;
+
+                while ((transferred = target.transferFrom(source, size, TRANSFER_CHUNK_SIZE)) > 0) {
+                    size += transferred;
+
+                    if (size > maxSize) {
+                        throw new InvalidRequestException("Image content can be maximum " + maxSize + " bytes");
+                    }
+                }
+            }
+
+            final String hash = HexFormat.of().formatHex(digest.digest());
+            final String key = keyOf(hash);
+            final Path file = resolve(key);
+
+            if (Files.exists(file)) {
+                return new StoredImage(key, size, hash, false);
+            }
+
+            Files.createDirectories(file.getParent());
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+
+            return new StoredImage(key, size, hash, true);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    @Override
+    public Resource load(final String key) {
+        return new FileSystemResource(resolve(key));
+    }
+
+    @Override
+    public void storeVariant(final String key, final String variant, final InputStream content) throws IOException {
+        final Path file = resolveVariant(key, variant);
+        final Path temporaryFile = Files.createTempFile(temporaryDirectory, "variant-", ".tmp");
+
+        try {
+            Files.copy(content, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.createDirectories(file.getParent());
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    @Override
+    public Resource loadVariant(final String key, final String variant) {
+        return new FileSystemResource(resolveVariant(key, variant));
+    }
+
+    @Override
+    public void delete(final String key) {
+        final Path file = resolve(key);
+
+        try {
+            Files.deleteIfExists(file);
+
+            if (Files.isDirectory(file.getParent())) {
+                try (DirectoryStream<Path> variants = Files.newDirectoryStream(file.getParent(), file.getFileName() + ".*")) {
+                    for (Path variant : variants) {
+                        Files.deleteIfExists(variant);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete image file {}", key, e);
+        }
+    }
+
+    /**
+     * Get the key of content. Files are spread over subdirectories by the hash prefix
+     * @param hash The hash of the content
+     * @return The key of the content
+     */
+    private static String keyOf(final String hash) {
+        return hash.substring(0, 2) + "/" + hash;
+    }
+
+    /**
+     * Resolve a key to the path of its file
+     * @param key The key
+     * @return The path of the file
+     * @throws IllegalArgumentException If the key points outside the storage directory
+     */
+    private Path resolve(final String key) {
+        final Path file = root.resolve(key).normalize();
+
+        if (!file.startsWith(root)) {
+            throw new IllegalArgumentException("Invalid image key: " + key);
+        }
+
+        return file;
+    }
+
+    /**
+     * Resolve a variant of some content to the path of its file, next to the file of the content
+     * @param key The key of the content
+     * @param variant The name of the variant
+     * @return The path of the variant file
+     * @throws IllegalArgumentException If the key or the variant name is not valid
+     */
+    private Path resolveVariant(final String key, final String variant) {
+        if (!variant.matches("[a-z0-9]+")) {
+            throw new IllegalArgumentException("Invalid image variant: " + variant);
+        }
+
+        return resolve(key + "." + variant);
+    }
+
+    /**
+     * Create a SHA-256 digest
+     * @return The message digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
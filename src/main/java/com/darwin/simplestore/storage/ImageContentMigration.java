@@ -0,0 +1,218 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+import com.darwin.simplestore.entities.Image;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.LegacyImage;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.MigratedImage;
+import com.darwin.simplestore.repositories.ImageRepository;
+import com.darwin.simplestore.services.ImageService;
+import com.darwin.simplestore.services.ImageVariantService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Background task moving the content of images stored in the database to the image storage.
+ * Both the binary content column and the base64 column of the original schema are migrated.
+ * Images with the same content as an existing image are merged into it, and the reference counts
+ * of the images created before the references were counted are backfilled before each run.
+ * Images are migrated in batches of increasing ids, each in its own transaction, so that the task never holds
+ * more than one batch of content in memory, and an image which cannot be migrated does not block the ones after it
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "simplestore.images.migration.enabled", havingValue = "true", matchIfMissing = true)
+public class ImageContentMigration {
+    private final ImageRepository imageRepository;
+    private final ImageStorage imageStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    /**
+     * Create the migration task
+     * @param imageRepository The image repository
+     * @param imageStorage The storage the content is moved to
+     * @param transactionManager The transaction manager used for each batch
+     * @param batchSize The number of images migrated in one transaction
+     */
+    public ImageContentMigration(final ImageRepository imageRepository,
+                                 final ImageStorage imageStorage,
+                                 final PlatformTransactionManager transactionManager,
+                                 @Value("${simplestore.images.migration.batch-size:50}") final int batchSize) {
+        this.imageRepository = imageRepository;
+        this.imageStorage = imageStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Migrate all images still stored in the database
+     * @return The number of migrated images
+     */
+    @Scheduled(
+            initialDelayString = "${simplestore.images.migration.initial-delay:30s}",
+            fixedDelayString = "${simplestore.images.migration.delay:1h}"
+    )
+    public long migrate() {
+        long migrated = 0;
+
+        try {
+            final Integer backfilled = transactionTemplate.execute(status -> imageRepository.backfillReferenceCounts());
+
+            if (backfilled != null && backfilled > 0) {
+                log.info("Backfilled the reference counts of {} images", backfilled);
+            }
+
+            final boolean base64Column = Boolean.TRUE.equals(transactionTemplate.execute(status -> imageRepository.hasBase64Column()));
+            long afterId = Long.MIN_VALUE;
+            Batch batch;
+
+            do {
+                final long batchAfterId = afterId;
+
+                batch = transactionTemplate.execute(status -> migrateBatch(batchAfterId, base64Column));
+                migrated += batch.migrated();
+                afterId = batch.lastId();
+            } while (batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            log.error("Image content migration stopped after {} images", migrated, e);
+        }
+
+        if (migrated > 0) {
+            log.info("Moved the content of {} images to the image storage", migrated);
+        }
+
+        return migrated;
+    }
+
+    /**
+     * Migrate a single batch of images, inside a transaction. Images without readable content are skipped
+     * @param afterId Only images with a greater id are migrated
+     * @param base64Column Whether the base64_image column exists
+     * @return The outcome of the batch
+     */
+    private Batch migrateBatch(final long afterId, final boolean base64Column) {
+        final List<LegacyImage> images = imageRepository.findLegacyImages(afterId, batchSize, base64Column);
+        int migrated = 0;
+
+        for (final LegacyImage image : images) {
+            final byte[] content = decodeContent(image);
+
+            if (content == null || content.length == 0 || content.length > Image.MAX_SIZE) {
+                log.warn("Image {} has no content which can be moved to the image storage", image.id());
+                continue;
+            }
+
+            migrateImage(image.id(), content, base64Column);
+            migrated++;
+        }
+
+        return new Batch(images.size(), images.isEmpty() ? afterId : images.getLast().id(), migrated);
+    }
+
+    /**
+     * Move the content of an image to the image storage, and clear its legacy content.
+     * If another image already has the same content, the image is merged into it instead
+     * @param id The id of the image
+     * @param content The content of the image
+     * @param base64Column Whether the base64_image column exists
+     */
+    private void migrateImage(final Long id, final byte[] content, final boolean base64Column) {
+        final StoredImage storedImage = store(content);
+        final Optional<Image> existing = imageRepository.findByHash(storedImage.hash())
+                .filter(image -> !image.getId().equals(id));
+
+        if (existing.isPresent()) {
+            final int moved = imageRepository.mergeInto(id, existing.get().getId());
+
+            log.info("Merged image {} into image {} with the same content, moving {} products", id, existing.get().getId(), moved);
+
+            return;
+        }
+
+        final Optional<Dimension> dimensions;
+
+        try {
+            dimensions = ImageVariantService.readDimensions(new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        imageRepository.completeMigration(new MigratedImage(
+                id,
+                storedImage.key(),
+                storedImage.hash(),
+                storedImage.size(),
+                dimensions.map(dimension -> dimension.width).orElse(null),
+                dimensions.map(dimension -> dimension.height).orElse(null),
+                ImageService.detectMediaType(content).orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                Instant.now()), base64Column);
+    }
+
+    /**
+     * Write content to the image storage. The content is deleted again if the transaction does not commit
+     * @param content The content
+     * @return The stored content
+     */
+    private StoredImage store(final byte[] content) {
+        final StoredImage storedImage;
+
+        try {
+            storedImage = imageStorage.store(new ByteArrayInputStream(content), Image.MAX_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(final int status) {
+                if (status != STATUS_COMMITTED && storedImage.created()) {
+                    imageStorage.delete(storedImage.key());
+                }
+            }
+        });
+
+        return storedImage;
+    }
+
+    /**
+     * Get the legacy content of an image, decoding the base64 column of the original schema if needed
+     * @param image The legacy image
+     * @return The content, or null if the image has no valid content
+     */
+    private static byte[] decodeContent(final LegacyImage image) {
+        try {
+            return image.decodedContent();
+        } catch (IllegalArgumentException e) {
+            log.warn("Image {} has invalid base64 content", image.id(), e);
+            return null;
+        }
+    }
+
+    /**
+     * The outcome of a batch
+     * @param size The number of images in the batch
+     * @param lastId The greatest id of the batch, where the next batch starts
+     * @param migrated The number of migrated images
+     */
+    private record Batch(int size, long lastId, int migrated) { }
+}
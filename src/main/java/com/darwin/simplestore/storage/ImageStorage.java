@@ -0,0 +1,59 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage backend for the content of images. The database only keeps the key of the content.
+ * Content is addressed by its hash, so identical content is only stored once under the same key
+ */
+public interface ImageStorage {
+    /**
+     * Write image content to the storage. The hash is computed while the content is written,
+     * and nothing is kept if identical content is already stored
+     * @param content The content to write, which is read but not closed
+     * @param maxSize The maximum size of the content in bytes
+     * @return The key, size and hash of the content, and whether it was newly written
+     * @throws InvalidRequestException If the content is larger than the maximum size, in which case nothing is stored
+     * @throws IOException If the content could not be read or written
+     */
+    StoredImage store(InputStream content, long maxSize) throws InvalidRequestException, IOException;
+
+    /**
+     * Load image content from the storage
+     * @param key The key of the content
+     * @return A resource reading the content
+     */
+    Resource load(String key);
+
+    /**
+     * Write a variant derived from stored content, replacing an existing variant with the same name
+     * @param key The key of the original content
+     * @param variant The name of the variant
+     * @param content The content of the variant, which is read but not closed
+     * @throws IOException If the content could not be read or written
+     */
+    void storeVariant(String key, String variant, InputStream content) throws IOException;
+
+    /**
+     * Load a variant of stored content. The resource does not exist if the variant was not stored
+     * @param key The key of the original content
+     * @param variant The name of the variant
+     * @return A resource reading the variant
+     */
+    Resource loadVariant(String key, String variant);
+
+    /**
+     * Delete image content from the storage, along with its variants. Deleting missing content does nothing
+     * @param key The key of the content
+     */
+    void delete(String key);
+}
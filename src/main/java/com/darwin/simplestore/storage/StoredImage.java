@@ -0,0 +1,15 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+/**
+ * Record representing image content written to an image storage
+ * @param key The key the content can be loaded with
+ * @param size The size of the content in bytes
+ * @param hash The SHA-256 hash of the content, in lowercase hex
+ * @param created Whether the content was newly written, or identical content was already stored
+ */
+public record StoredImage(String key, long size, String hash, boolean created) { }
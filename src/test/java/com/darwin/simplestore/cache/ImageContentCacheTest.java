@@ -0,0 +1,147 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class ImageContentCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private ImageContentCache imageContentCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        imageContentCache = new ImageContentCache(meterRegistry, DataSize.ofBytes(1000));
+        loads = new AtomicInteger();
+    }
+
+    private Resource load(final int size) {
+        loads.incrementAndGet();
+
+        return new ByteArrayResource(new byte[size]);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        final Resource first = imageContentCache.get("a", key -> load(100));
+        final Resource second = imageContentCache.get("a", key -> load(100));
+
+        assertEquals(1, loads.get());
+        assertEquals(100, first.contentLength());
+        assertArrayEquals(new byte[100], second.getContentAsByteArray());
+        assertEquals(100, imageContentCache.residentBytes());
+        assertEquals(100.0, meterRegistry.get("simplestore.cache.images.resident").gauge().value());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "images").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final Resource resource = imageContentCache.get("a", key -> new ByteArrayResource(new byte[]{1, 2, 3, 4}));
+
+        try (InputStream first = resource.getInputStream(); InputStream second = resource.getInputStream()) {
+            assertEquals(1, first.read());
+            assertEquals(2, first.read());
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, second.readAllBytes());
+            assertArrayEquals(new byte[]{3, 4}, first.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        final Resource resource = imageContentCache.get("a", key -> new ByteArrayResource(new byte[]{1, 2, 3, 4}));
+
+        try (InputStream content = resource.getInputStream()) {
+            assertEquals(2, content.skip(2));
+            assertEquals(2, content.available());
+            assertEquals(3, content.read());
+            assertEquals(1, content.skip(10));
+            assertEquals(-1, content.read());
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        imageContentCache.get("a", key -> load(100));
+        imageContentCache.invalidate("a");
+        imageContentCache.invalidate("missing");
+
+        assertEquals(0, imageContentCache.residentBytes());
+
+        imageContentCache.get("a", key -> load(100));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testByteBudget() {
+        for (int i = 0; i < 20; i++) {
+            imageContentCache.get("key" + i, key -> load(100));
+        }
+
+        assertTrue(imageContentCache.residentBytes() <= 1000);
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        assertEquals(1000, ImageContentCache.maximumWeight(1000, 4000));
+        assertEquals(500, ImageContentCache.maximumWeight(1000, 1000));
+        assertEquals(1000, ImageContentCache.maximumWeight(1000, -1));
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        final ByteBufferResource resource = (ByteBufferResource) imageContentCache.get("a", key -> new ByteArrayResource(new byte[]{1, 2, 3, 4}));
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        assertEquals(4, resource.writeTo(Channels.newChannel(first)));
+        assertEquals(4, resource.writeTo(Channels.newChannel(second)));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, first.toByteArray());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, second.toByteArray());
+    }
+
+    @Test
+    public void testWriteResponse() throws Exception {
+        final ByteBufferResourceHttpMessageConverter converter = new ByteBufferResourceHttpMessageConverter();
+        final Resource resource = imageContentCache.get("a", key -> new ByteArrayResource(new byte[]{1, 2, 3, 4}));
+        final MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        assertTrue(converter.canWrite(resource.getClass(), MediaType.IMAGE_PNG));
+        assertFalse(converter.canWrite(ByteArrayResource.class, MediaType.IMAGE_PNG));
+        assertFalse(converter.canRead(ByteBufferResource.class, MediaType.IMAGE_PNG));
+
+        converter.write(resource, MediaType.IMAGE_PNG, outputMessage);
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, outputMessage.getBodyAsBytes());
+        assertEquals(4, outputMessage.getHeaders().getContentLength());
+    }
+
+    @Test
+    public void testLoadException() {
+        assertThrowsExactly(IllegalStateException.class, () -> imageContentCache.get("a", key -> {
+            throw new IllegalStateException("test");
+        }));
+
+        assertEquals(0, imageContentCache.residentBytes());
+    }
+}
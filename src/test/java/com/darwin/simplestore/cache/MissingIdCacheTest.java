@@ -0,0 +1,92 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.cache.MissingIdCache.ResourceType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class MissingIdCacheTest {
+    private MissingIdCache missingIdCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setUp() {
+        missingIdCache = new MissingIdCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    private Optional<String> load(final Optional<String> result) {
+        loads.incrementAndGet();
+        return result;
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(Optional.of("p1"), missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.of("p1"))));
+        assertEquals(Optional.of("p1"), missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.of("p1"))));
+        assertFalse(missingIdCache.isMissing(ResourceType.PRODUCT, 1L));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testFindMissing() {
+        assertTrue(missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.empty())).isEmpty());
+        assertTrue(missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.of("p1"))).isEmpty());
+        assertFalse(missingIdCache.exists(ResourceType.PRODUCT, 1L, () -> load(Optional.of("p1")).isPresent()));
+
+        assertTrue(missingIdCache.isMissing(ResourceType.PRODUCT, 1L));
+        assertFalse(missingIdCache.isMissing(ResourceType.CART, 1L));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.empty()));
+        missingIdCache.find(ResourceType.CART, 1L, () -> load(Optional.empty()));
+
+        missingIdCache.invalidate(ResourceType.PRODUCT, 1L);
+
+        assertEquals(Optional.of("p1"), missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.of("p1"))));
+        assertTrue(missingIdCache.isMissing(ResourceType.CART, 1L));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        missingIdCache.find(ResourceType.PRODUCT, 1L, () -> load(Optional.empty()));
+        missingIdCache.find(ResourceType.PRODUCT, 2L, () -> load(Optional.empty()));
+        missingIdCache.find(ResourceType.ORDER, 1L, () -> load(Optional.empty()));
+
+        missingIdCache.invalidateAll(ResourceType.PRODUCT);
+
+        assertFalse(missingIdCache.isMissing(ResourceType.PRODUCT, 1L));
+        assertFalse(missingIdCache.isMissing(ResourceType.PRODUCT, 2L));
+        assertTrue(missingIdCache.isMissing(ResourceType.ORDER, 1L));
+    }
+
+    @Test
+    public void testFindDuringCreate() {
+        // A resource created while the lookup runs must not be cached as missing
+        final Optional<String> result = missingIdCache.find(ResourceType.PRODUCT, 1L, () -> {
+            missingIdCache.invalidate(ResourceType.PRODUCT, 1L);
+            return load(Optional.empty());
+        });
+
+        assertTrue(result.isEmpty());
+        assertFalse(missingIdCache.isMissing(ResourceType.PRODUCT, 1L));
+    }
+}
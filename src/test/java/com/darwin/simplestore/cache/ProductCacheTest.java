@@ -0,0 +1,174 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.exceptions.ResourceNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class ProductCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private ProductCache productCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productCache = new ProductCache(meterRegistry, 100, Duration.ofMinutes(10));
+        loads = new AtomicInteger();
+    }
+
+    private ProductDto load(final Long id, final String name) {
+        loads.incrementAndGet();
+
+        return new ProductDto(id, name, "d", 1.0, 1L, ProductCategory.OTHER);
+    }
+
+    @Test
+    public void testGetById() {
+        assertEquals("p1", productCache.getById(1L, id -> load(id, "p1")).name());
+        assertEquals("p1", productCache.getById(1L, id -> load(id, "p1")).name());
+        assertEquals("p1", productCache.getByName("p1", name -> load(1L, name)).name());
+
+        assertEquals(1, loads.get());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tags("cache", "products", "result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "products", "result", "miss").functionCounter().count());
+    }
+
+    @Test
+    public void testGetAllById() {
+        productCache.getById(1L, id -> load(id, "p1"));
+
+        final List<Set<? extends Long>> requested = new ArrayList<>();
+        final Map<Long, ProductDto> products = productCache.getAllById(List.of(1L, 2L, 3L), missing -> {
+            requested.add(Set.copyOf(missing));
+            return Map.of(2L, load(2L, "p2"));
+        });
+
+        assertEquals(Set.of(1L, 2L), products.keySet());
+        assertEquals(List.of(Set.of(2L, 3L)), requested);
+        assertEquals("p2", productCache.getIfPresent(2L).name());
+        assertNull(productCache.getIfPresent(3L));
+        assertEquals("p2", productCache.getByName("p2", name -> load(4L, name)).name());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGetByIdException() {
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productCache.getById(1L, id -> {
+            throw new ResourceNotFoundException("Product with id " + id + " not found");
+        }));
+
+        assertNull(productCache.getIfPresent(1L));
+    }
+
+    @Test
+    public void testInvalidate() {
+        productCache.getById(1L, id -> load(id, "p1"));
+        productCache.invalidate(1L);
+        productCache.getById(1L, id -> load(id, "p1"));
+
+        productCache.invalidateByName("p1");
+        assertNull(productCache.getIfPresent(1L));
+        productCache.getByName("p1", name -> load(1L, name));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInvalidateAfterCommit() {
+        productCache.getById(1L, id -> load(id, "p1"));
+        productCache.getById(2L, id -> load(id, "p2"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            productCache.invalidate(1L);
+            productCache.invalidateAll(List.of(2L));
+
+            assertNotNull(productCache.getIfPresent(1L));
+            assertNotNull(productCache.getIfPresent(2L));
+
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNull(productCache.getIfPresent(1L));
+        assertNull(productCache.getIfPresent(2L));
+    }
+
+    @Test
+    public void testInvalidateRollback() {
+        productCache.getById(1L, id -> load(id, "p1"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            productCache.invalidateByName("p1");
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNotNull(productCache.getIfPresent(1L));
+    }
+
+    @Test
+    public void testRename() {
+        productCache.getById(1L, id -> load(id, "p1"));
+        productCache.put(new ProductDto(1L, "p2", "d", 1.0, 1L, ProductCategory.OTHER));
+
+        // The stale name entry must not resolve to the renamed product
+        assertEquals("p1", productCache.getByName("p1", name -> load(1L, name)).name());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGetByNameDuringUpdate() {
+        // A product updated while it is loaded must not be cached with its old state
+        final ProductDto loaded = productCache.getByName("p1", name -> {
+            productCache.invalidate(1L);
+            return load(1L, name);
+        });
+
+        assertEquals("p1", loaded.name());
+        assertNull(productCache.getIfPresent(1L));
+
+        productCache.getByName("p1", name -> load(1L, name));
+
+        assertNotNull(productCache.getIfPresent(1L));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGetAllByIdDuringUpdate() {
+        productCache.getById(1L, id -> load(id, "p1"));
+
+        // A product updated while the missing products are loaded must not be cached with its old state
+        final Map<Long, ProductDto> products = productCache.getAllById(List.of(1L, 2L), missing -> {
+            productCache.invalidate(2L);
+            return Map.of(2L, load(2L, "p2"));
+        });
+
+        assertEquals(List.of(1L, 2L), List.copyOf(products.keySet()));
+        assertNotNull(productCache.getIfPresent(1L));
+        assertNull(productCache.getIfPresent(2L));
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("dev")
+public class ProductCountCacheTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductCountCache productCountCache;
+
+    @BeforeEach
+    public void setUp() {
+        productCountCache = new ProductCountCache(productRepository, Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void testCount() {
+        when(productRepository.count()).thenReturn(5L);
+        when(productRepository.countByCategory(ProductCategory.FOOD)).thenReturn(2L);
+
+        assertEquals(5L, productCountCache.count(null));
+        assertEquals(5L, productCountCache.count(null));
+        assertEquals(2L, productCountCache.count(ProductCategory.FOOD));
+        assertEquals(2L, productCountCache.count(ProductCategory.FOOD));
+
+        verify(productRepository, times(1)).count();
+        verify(productRepository, times(1)).countByCategory(ProductCategory.FOOD);
+    }
+
+    @Test
+    public void testInvalidate() {
+        when(productRepository.count()).thenReturn(5L, 6L);
+
+        assertEquals(5L, productCountCache.count(null));
+
+        productCountCache.invalidate();
+
+        assertEquals(6L, productCountCache.count(null));
+
+        verify(productRepository, times(2)).count();
+    }
+
+    @Test
+    public void testExpiry() {
+        productCountCache = new ProductCountCache(productRepository, Duration.ZERO);
+
+        when(productRepository.count()).thenReturn(5L);
+
+        productCountCache.count(null);
+        productCountCache.count(null);
+
+        verify(productRepository, times(2)).count();
+    }
+}
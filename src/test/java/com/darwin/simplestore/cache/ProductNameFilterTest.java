@@ -0,0 +1,141 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.repositories.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("dev")
+public class ProductNameFilterTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProductNameFilter productNameFilter;
+    private AtomicInteger lookups;
+    private Predicate<String> lookup;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productNameFilter = new ProductNameFilter(productRepository, transactionManager, meterRegistry, 1000, 0.01);
+        lookups = new AtomicInteger();
+        lookup = name -> {
+            lookups.incrementAndGet();
+            return name.equals("p1") || name.equals("p2");
+        };
+    }
+
+    @Test
+    public void testExistsBeforeLoad() {
+        assertTrue(productNameFilter.exists("p1", lookup));
+        assertFalse(productNameFilter.exists("p3", lookup));
+
+        assertEquals(2, lookups.get());
+        assertEquals(0.0, checks("absent"));
+    }
+
+    @Test
+    public void testExists() {
+        when(productRepository.streamAllNames()).thenReturn(Stream.of("p1", "p2"));
+
+        productNameFilter.load();
+
+        assertTrue(productNameFilter.exists("p1", lookup));
+        assertTrue(productNameFilter.exists("p2", lookup));
+        assertFalse(productNameFilter.exists("p3", lookup));
+
+        assertEquals(2, lookups.get());
+        assertEquals(2.0, checks("present"));
+        assertEquals(1.0, checks("absent"));
+    }
+
+    @Test
+    public void testPut() {
+        when(productRepository.streamAllNames()).thenReturn(Stream.of("p1"));
+
+        productNameFilter.load();
+        productNameFilter.put("p2");
+
+        assertTrue(productNameFilter.exists("p2", lookup));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final List<String> names = IntStream.range(0, 1000).mapToObj(i -> "product-" + i).toList();
+
+        when(productRepository.streamAllNames()).thenReturn(names.stream());
+
+        productNameFilter.load();
+
+        names.forEach(name -> assertTrue(productNameFilter.exists(name, existing -> true)));
+
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(productNameFilter.exists("other-" + i, unused -> false));
+        }
+
+        final double falsePositiveRate = meterRegistry.get("simplestore.products.name-filter.false-positive-rate").gauge().value();
+
+        assertEquals(checks("false-positive") / 10000, falsePositiveRate, 1e-9);
+        assertTrue(falsePositiveRate < 0.03, "False positive rate " + falsePositiveRate);
+    }
+
+    @Test
+    public void testRebuildIfStale() {
+        when(productRepository.streamAllNames()).thenReturn(Stream.of("p1", "p2"), Stream.of("p1"));
+
+        productNameFilter.load();
+        productNameFilter.rebuildIfStale();
+
+        verify(productRepository, times(1)).streamAllNames();
+
+        productNameFilter.remove("p2");
+        productNameFilter.rebuildIfStale();
+
+        verify(productRepository, times(2)).streamAllNames();
+        assertFalse(productNameFilter.exists("p2", lookup));
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void testLoadFailure() {
+        when(productRepository.streamAllNames()).thenThrow(new IllegalStateException("Database unavailable"));
+
+        assertDoesNotThrow(() -> productNameFilter.load());
+        assertTrue(productNameFilter.exists("p1", lookup));
+        assertEquals(1, lookups.get());
+    }
+
+    /**
+     * Get the number of checks with an outcome
+     * @param outcome The outcome of the checks
+     * @return The number of checks
+     */
+    private double checks(final String outcome) {
+        return meterRegistry.get("simplestore.products.name-filter.checks").tag("outcome", outcome).counter().count();
+    }
+}
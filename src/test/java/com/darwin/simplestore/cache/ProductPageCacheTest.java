@@ -0,0 +1,108 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductFields;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class ProductPageCacheTest {
+    private final ObjectMapper objectMapper = new ObjectMapper().setFilterProvider(ProductFields.all().getFilters());
+    private final Pageable pageable = PageRequest.of(0, 5, Sort.by("name").ascending());
+    private final ProductDto productDto = new ProductDto(1L, "p1", "d1", 1.0, 2L, ProductCategory.FOOD);
+
+    private ProductPageCache productPageCache;
+    private AtomicInteger loads;
+    private Supplier<Page<?>> loader;
+
+    @BeforeEach
+    public void setUp() {
+        productPageCache = new ProductPageCache(new SimpleMeterRegistry(), objectMapper, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+        loader = () -> {
+            loads.incrementAndGet();
+            return new PageImpl<>(List.of(productDto), pageable, 1);
+        };
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        final SerializedPage page = productPageCache.get(pageable, null, false, ProductFields.all(), loader);
+        final JsonNode json = objectMapper.readTree(page.json());
+
+        assertEquals(1, json.get("page").get("totalElements").asInt());
+        assertEquals("p1", json.get("content").get(0).get("name").asText());
+        assertArrayEquals(page.json(), new GZIPInputStream(new ByteArrayInputStream(page.gzip())).readAllBytes());
+
+        assertSame(page, productPageCache.get(PageRequest.of(0, 5, Sort.by("name").ascending()), null, false, ProductFields.all(), loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testGetNormalizesFields() throws IOException {
+        final SerializedPage page = productPageCache.get(pageable, null, false, ProductFields.parse("name,id"), loader);
+        final JsonNode product = objectMapper.readTree(page.json()).get("content").get(0);
+
+        assertEquals(2, product.size());
+        assertSame(page, productPageCache.get(pageable, null, false, ProductFields.parse("id, name"), loader));
+        assertNotSame(page, productPageCache.get(pageable, null, false, ProductFields.all(), loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateCategory() {
+        productPageCache.get(pageable, null, false, ProductFields.all(), loader);
+        productPageCache.get(pageable, ProductCategory.FOOD, false, ProductFields.all(), loader);
+        productPageCache.get(pageable, ProductCategory.OTHER, false, ProductFields.all(), loader);
+
+        productPageCache.invalidate(ProductCategory.FOOD);
+
+        productPageCache.get(pageable, null, false, ProductFields.all(), loader);
+        productPageCache.get(pageable, ProductCategory.FOOD, false, ProductFields.all(), loader);
+        productPageCache.get(pageable, ProductCategory.OTHER, false, ProductFields.all(), loader);
+
+        assertEquals(5, loads.get());
+
+        productPageCache.invalidateAll();
+        productPageCache.get(pageable, ProductCategory.OTHER, false, ProductFields.all(), loader);
+
+        assertEquals(6, loads.get());
+    }
+
+    @Test
+    public void testGetException() {
+        assertThrows(IllegalStateException.class, () -> productPageCache.get(pageable, null, false, ProductFields.all(), () -> {
+            throw new IllegalStateException("Unavailable");
+        }));
+
+        productPageCache.get(pageable, null, false, ProductFields.all(), loader);
+
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,147 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.cache;
+
+import com.darwin.simplestore.exceptions.ResourceNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class RequestCoalescerTest {
+    private SimpleMeterRegistry meterRegistry;
+    private RequestCoalescer requestCoalescer;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        requestCoalescer = new RequestCoalescer(meterRegistry);
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testExecuteCollapsesConcurrentCalls() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final Supplier<String> loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "value";
+        };
+
+        final Future<String> leader = executorService.submit(() -> requestCoalescer.execute("test", 1L, loader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Future<String> follower = executorService.submit(() -> requestCoalescer.execute("test", 1L, loader));
+        waitForCollapsedCalls(1);
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(1.0, calls("executed"));
+        assertEquals(1.0, calls("collapsed"));
+        assertEquals(0.0, meterRegistry.get("simplestore.coalescer.in-flight").gauge().value());
+    }
+
+    @Test
+    public void testExecutePropagatesExceptions() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Supplier<String> loader = () -> {
+            started.countDown();
+            await(release);
+            throw new ResourceNotFoundException("Not found");
+        };
+
+        final Future<String> leader = executorService.submit(() -> requestCoalescer.execute("test", 1L, loader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final Future<String> follower = executorService.submit(() -> requestCoalescer.execute("test", 1L, loader));
+        waitForCollapsedCalls(1);
+        release.countDown();
+
+        final Exception leaderException = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        final Exception followerException = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+
+        assertInstanceOf(ResourceNotFoundException.class, leaderException.getCause());
+        assertInstanceOf(ResourceNotFoundException.class, followerException.getCause());
+    }
+
+    @Test
+    public void testExecuteSequentialCalls() {
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, requestCoalescer.execute("test", 1L, loads::incrementAndGet));
+        assertEquals(2, requestCoalescer.execute("test", 1L, loads::incrementAndGet));
+        assertEquals(3, requestCoalescer.execute("test", 2L, loads::incrementAndGet));
+        assertEquals(4, requestCoalescer.execute("other", 1L, loads::incrementAndGet));
+
+        assertEquals(3.0, calls("executed"));
+        assertEquals(0.0, calls("collapsed"));
+    }
+
+    /**
+     * Wait until the given number of calls joined a running read
+     * @param count The expected number of collapsed calls
+     * @throws InterruptedException If the wait is interrupted
+     */
+    private void waitForCollapsedCalls(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (calls("collapsed") < count) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for collapsed calls");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Get the number of calls of the test operation
+     * @param outcome The outcome of the calls
+     * @return The number of calls
+     */
+    private double calls(final String outcome) {
+        final var counter = meterRegistry.find("simplestore.coalescer.calls")
+                .tag("operation", "test")
+                .tag("outcome", outcome)
+                .counter();
+
+        return counter == null ? 0.0 : counter.count();
+    }
+
+    /**
+     * Wait for the latch without checked exceptions
+     * @param latch The latch
+     */
+    private static void await(final CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -5,10 +5,14 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.config.JacksonConfig;
 import com.darwin.simplestore.dto.CartDto;
 import com.darwin.simplestore.dto.CartItemDto;
+import com.darwin.simplestore.dto.CartItemSummaryDto;
+import com.darwin.simplestore.dto.CartSummaryDto;
 import com.darwin.simplestore.dto.ProductCategory;
 import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.services.CartItemService;
 import com.darwin.simplestore.services.CartService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -17,16 +21,22 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,6 +44,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("dev")
 @WebMvcTest(controllers = CartController.class)
+@Import(JacksonConfig.class)
 public class CartControllerTest {
     @Autowired
     private MockMvc mvc;
@@ -54,8 +65,8 @@ public class CartControllerTest {
     public void setUp() {
         emptyCart = new CartDto(
                 1L,
-                Collections.emptySet()
-        );
+                Collections.emptySet(),
+                null);
 
         final ProductDto productDto1 = new ProductDto(
                 1L,
@@ -89,8 +100,8 @@ public class CartControllerTest {
 
         cart = new CartDto(
                 2L,
-                Set.of(cartItemDto1, cartItemDto2)
-        );
+                Set.of(cartItemDto1, cartItemDto2),
+                null);
     }
 
     @Test
@@ -121,6 +132,71 @@ public class CartControllerTest {
                 .andExpect(content().string(objectMapper.writeValueAsString(cart)));
     }
 
+    @Test
+    public void testGetCartETag() throws Exception {
+        final CartDto versionedCart = new CartDto(1L, Collections.emptySet(), 2L);
+
+        when(cartService.getCartVersionTag(1L)).thenReturn("2.0");
+        when(cartService.getCart(anyLong())).thenReturn(versionedCart);
+
+        mvc.perform(get("/carts/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"2.0\""));
+
+        mvc.perform(get("/carts/1")
+                .header("If-None-Match", "W/\"2.0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"2.0\""));
+
+        verify(cartService, times(1)).getCart(1L);
+    }
+
+    @Test
+    public void testGetCartFields() throws Exception {
+        when(cartService.getCart(anyLong())).thenReturn(cart);
+
+        mvc.perform(get("/carts/1")
+                .param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").exists())
+                .andExpect(jsonPath("$.cartItems[0].quantity").exists())
+                .andExpect(jsonPath("$.cartItems[0].productDto.name").exists())
+                .andExpect(jsonPath("$.cartItems[0].productDto.description").doesNotExist());
+    }
+
+    @Test
+    public void testGetCartSummary() throws Exception {
+        final CartSummaryDto cartSummary = new CartSummaryDto(1L, List.of(new CartItemSummaryDto(1L, 1L, "Product", 1.0, 2L)));
+
+        when(cartService.getCartVersionTag(1L)).thenReturn("2.0");
+        when(cartService.getCartSummary(1L)).thenReturn(cartSummary);
+
+        mvc.perform(get("/carts/1")
+                .param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"2.0\""))
+                .andExpect(content().string(objectMapper.writeValueAsString(cartSummary)));
+
+        mvc.perform(get("/carts/1")
+                .param("view", "summary")
+                .header("If-None-Match", "W/\"2.0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"2.0\""));
+
+        verify(cartService, times(1)).getCartSummary(1L);
+        verify(cartService, never()).getCart(anyLong());
+    }
+
+    @Test
+    public void testGetCartSummaryFields() throws Exception {
+        mvc.perform(get("/carts/1")
+                .param("view", "summary")
+                .param("fields", "name"))
+                .andExpect(status().isBadRequest());
+
+        verify(cartService, never()).getCartSummary(anyLong());
+    }
+
     @Test
     public void testGetCartItem() throws Exception {
         final CartItemDto cartItemDto = cart.cartItems().stream().findFirst().get();
@@ -143,6 +219,26 @@ public class CartControllerTest {
         mvc.perform(put("/carts/1/1")
                 .param("quantity", "1"))
                 .andExpect(status().isOk());
+
+        verify(cartItemService, times(1)).updateItemQuantity(1L, 1L, 1L, null);
+    }
+
+    @Test
+    public void testUpdateQuantityIfMatch() throws Exception {
+        doThrow(new PreconditionFailedException("Cart with id 1 does not have version 2"))
+                .when(cartItemService).updateItemQuantity(1L, 1L, 1L, 2L);
+
+        mvc.perform(put("/carts/1/1")
+                .header("If-Match", "W/\"3.5\"")
+                .param("quantity", "1"))
+                .andExpect(status().isOk());
+
+        mvc.perform(put("/carts/1/1")
+                .header("If-Match", "W/\"2.5\"")
+                .param("quantity", "1"))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(cartItemService, times(1)).updateItemQuantity(1L, 1L, 1L, 3L);
     }
 
     @Test
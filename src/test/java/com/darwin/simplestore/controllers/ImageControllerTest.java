@@ -5,7 +5,11 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.dto.Base64Content;
+import com.darwin.simplestore.dto.ImageContentDto;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageVariant;
 import com.darwin.simplestore.dto.NewImageDto;
 import com.darwin.simplestore.services.ImageService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -14,15 +18,27 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -40,27 +56,247 @@ public class ImageControllerTest {
     private ImageService imageService;
 
     private ImageDto imageDto;
+    private ImageMetadataDto imageMetadataDto;
 
     @BeforeEach
     void setUp() {
         imageDto = new ImageDto(
                 1L,
-                "base64"
+                Base64Content.decode("SGVsbG8gd29ybGQh")
+        );
+        imageMetadataDto = new ImageMetadataDto(
+                1L,
+                "image/png",
+                3L,
+                1,
+                1,
+                "039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81",
+                Instant.parse("2025-01-01T00:00:00Z"),
+                Instant.parse("2025-01-01T00:00:00Z")
         );
     }
 
+    private ImageContentDto imageContentDto(final String eTag) {
+        return new ImageContentDto(
+                1L,
+                imageMetadataDto.mediaType(),
+                imageMetadataDto.size(),
+                eTag,
+                imageMetadataDto.lastModified(),
+                new ByteArrayResource(new byte[]{1, 2, 3}));
+    }
+
     @Test
     public void testAddImage() throws Exception {
         when(imageService.addImage(any(NewImageDto.class))).thenReturn(imageDto);
 
         mvc.perform(post("/images")
                 .contentType(MediaType.APPLICATION_JSON)
-                .content(objectMapper.writeValueAsString(new NewImageDto("base64"))))
+                .content(objectMapper.writeValueAsString(new NewImageDto(Base64Content.decode("SGVsbG8gd29ybGQh")))))
                 .andExpect(status().isCreated())
                 .andExpect(header().string("Location", containsString("/images/1")))
                 .andExpect(content().string(objectMapper.writeValueAsString(imageDto)));
     }
 
+    @Test
+    public void testAddImageStreamed() throws Exception {
+        when(imageService.addImage(any(NewImageDto.class))).thenAnswer(i -> {
+            final NewImageDto newImageDto = i.getArgument(0);
+
+            assertArrayEquals("Hello world!".getBytes(StandardCharsets.UTF_8),
+                    newImageDto.base64Content().getInputStream().readAllBytes());
+
+            return imageDto;
+        });
+
+        mvc.perform(post("/images")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"base64Content\": \"SGVsbG8gd29ybGQh\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.base64Content").value("SGVsbG8gd29ybGQh"));
+
+        mvc.perform(post("/images")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"base64Content\": \"not base64!\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(imageService, times(1)).addImage(any(NewImageDto.class));
+    }
+
+    @Test
+    public void testUploadImageFile() throws Exception {
+        when(imageService.addImage(any(InputStream.class))).thenReturn(imageMetadataDto);
+
+        mvc.perform(multipart("/images")
+                .file(new MockMultipartFile("file", "image.png", "image/png", new byte[]{1, 2, 3})))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", containsString("/images/1")))
+                .andExpect(content().string(objectMapper.writeValueAsString(imageMetadataDto)));
+    }
+
+    @Test
+    public void testUploadImageContent() throws Exception {
+        when(imageService.addImage(any(InputStream.class))).thenReturn(imageMetadataDto);
+
+        mvc.perform(post("/images")
+                .contentType(MediaType.IMAGE_PNG)
+                .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isCreated())
+                .andExpect(content().string(objectMapper.writeValueAsString(imageMetadataDto)));
+
+        verify(imageService, times(1)).addImage(any(InputStream.class));
+    }
+
+    @Test
+    public void testGetImageContent() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong())).thenReturn(imageContentDto(imageMetadataDto.hash()));
+
+        mvc.perform(get("/images/1/content"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().longValue("Content-Length", 3L))
+                .andExpect(header().string("ETag", "\"" + imageMetadataDto.hash() + "\""))
+                .andExpect(header().dateValue("Last-Modified", imageMetadataDto.lastModified().toEpochMilli()))
+                .andExpect(header().string("Cache-Control", "max-age=3600, must-revalidate, public"))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        verify(imageService, times(1)).getImageContent(anyLong());
+    }
+
+    @Test
+    public void testGetImageContentUnsupportedMediaType() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong())).thenReturn(new ImageContentDto(
+                1L, "text/html", 3L, imageMetadataDto.hash(), imageMetadataDto.lastModified(), new ByteArrayResource(new byte[]{1, 2, 3})));
+
+        mvc.perform(get("/images/1/content"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"));
+    }
+
+    @Test
+    public void testGetImageContentNotModified() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+
+        mvc.perform(get("/images/1/content")
+                .header("If-None-Match", "\"" + imageMetadataDto.hash() + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + imageMetadataDto.hash() + "\""))
+                .andExpect(header().string("Cache-Control", "max-age=3600, must-revalidate, public"));
+
+        mvc.perform(get("/images/1/content")
+                .header("If-Modified-Since", "Thu, 02 Jan 2025 00:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        verify(imageService, never()).getImageContent(anyLong());
+    }
+
+    @Test
+    public void testGetImageContentModified() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong())).thenReturn(imageContentDto(imageMetadataDto.hash()));
+
+        mvc.perform(get("/images/1/content")
+                .header("If-None-Match", "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        mvc.perform(get("/images/1/content")
+                .header("If-Modified-Since", "Tue, 31 Dec 2024 00:00:00 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testGetImageContentUpdatedConcurrently() throws Exception {
+        // The image is updated between the read of its description and the read of its content
+        final Instant updated = Instant.parse("2025-02-01T00:00:00Z");
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong())).thenReturn(new ImageContentDto(
+                1L, imageMetadataDto.mediaType(), 3L, "updated", updated, new ByteArrayResource(new byte[]{1, 2, 3})));
+
+        mvc.perform(get("/images/1/content"))
+                .andExpect(status().isOk())
+                .andExpect(header().stringValues("ETag", "\"updated\""))
+                .andExpect(header().dateValue("Last-Modified", updated.toEpochMilli()))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void testGetImageContentRange() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong())).thenReturn(imageContentDto(imageMetadataDto.hash()));
+
+        mvc.perform(get("/images/1/content")
+                .header("Range", "bytes=1-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 1-2/3"))
+                .andExpect(content().bytes(new byte[]{2, 3}));
+
+        mvc.perform(get("/images/1/content")
+                .header("Range", "bytes=5-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    public void testGetImageVariant() throws Exception {
+        final String eTag = ImageVariant.THUMB.tag(imageMetadataDto.hash());
+
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+        when(imageService.getImageContent(anyLong(), eq(ImageVariant.THUMB))).thenReturn(new ImageContentDto(
+                1L,
+                MediaType.IMAGE_JPEG_VALUE,
+                3L,
+                eTag,
+                imageMetadataDto.lastModified(),
+                new ByteArrayResource(new byte[]{1, 2, 3})));
+
+        mvc.perform(get("/images/1").param("variant", "thumb"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(header().string("ETag", "\"" + eTag + "\""))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        mvc.perform(get("/images/1/content").param("variant", "thumb"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        mvc.perform(get("/images/1").param("variant", "thumb")
+                .header("If-None-Match", "\"" + eTag + "\""))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(get("/images/1").param("variant", "huge"))
+                .andExpect(status().isBadRequest());
+
+        verify(imageService, times(2)).getImageContent(anyLong(), eq(ImageVariant.THUMB));
+    }
+
+    @Test
+    public void testGetImagesPage() throws Exception {
+        when(imageService.getImagesMetadata(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(imageMetadataDto)));
+
+        mvc.perform(get("/images"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.content[0].hash").value(imageMetadataDto.hash()));
+    }
+
+    @Test
+    public void testGetImageMetadata() throws Exception {
+        when(imageService.getImageMetadata(anyLong())).thenReturn(imageMetadataDto);
+
+        mvc.perform(get("/images/1/metadata"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(objectMapper.writeValueAsString(imageMetadataDto)));
+
+        verify(imageService, never()).getImageContent(anyLong());
+    }
+
     @Test
     public void testGetImage() throws Exception {
         when(imageService.getImage(any())).thenReturn(imageDto);
@@ -74,7 +310,7 @@ public class ImageControllerTest {
     public void testUpdateImage() throws Exception {
         mvc.perform(put("/images/1")
                 .contentType(MediaType.APPLICATION_JSON)
-                .content(objectMapper.writeValueAsString(new NewImageDto("base64"))))
+                .content(objectMapper.writeValueAsString(new NewImageDto(Base64Content.decode("SGVsbG8gd29ybGQh")))))
                 .andExpect(status().isOk());
     }
 }
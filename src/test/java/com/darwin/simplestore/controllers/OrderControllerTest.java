@@ -5,6 +5,7 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.config.JacksonConfig;
 import com.darwin.simplestore.dto.*;
 import com.darwin.simplestore.services.OrderService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -22,6 +24,8 @@ import java.util.Set;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -29,6 +33,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("dev")
 @WebMvcTest(controllers = OrderController.class)
+@Import(JacksonConfig.class)
 public class OrderControllerTest {
     @Autowired
     private MockMvc mvc;
@@ -77,20 +82,20 @@ public class OrderControllerTest {
 
         cartDto = new CartDto(
                 2L,
-                Set.of(cartItemDto1, cartItemDto2)
-        );
+                Set.of(cartItemDto1, cartItemDto2),
+                null);
 
         awaitingOrderDto = new OrderDto(
                 1L,
                 cartDto,
-                OrderStatus.AWAITING_PAYMENT
-        );
+                OrderStatus.AWAITING_PAYMENT,
+                null);
 
         deliveredOrderDto = new OrderDto(
                 1L,
                 cartDto,
-                OrderStatus.DELIVERED
-        );
+                OrderStatus.DELIVERED,
+                null);
     }
 
     @Test
@@ -113,6 +118,33 @@ public class OrderControllerTest {
                 .andExpect(content().string(objectMapper.writeValueAsString(deliveredOrderDto)));
     }
 
+    @Test
+    public void testGetOrderETag() throws Exception {
+        when(orderService.getOrderVersionTag(1L)).thenReturn("1.2.0");
+
+        mvc.perform(get("/orders/1")
+                .header("If-None-Match", "W/\"1.2.0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"1.2.0\""));
+
+        verify(orderService, never()).getOrder(anyLong());
+    }
+
+    @Test
+    public void testGetOrderFields() throws Exception {
+        when(orderService.getOrder(anyLong())).thenReturn(deliveredOrderDto);
+
+        mvc.perform(get("/orders/1")
+                .param("fields", "id,price"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartDto.cartItems[0].productDto.price").exists())
+                .andExpect(jsonPath("$.cartDto.cartItems[0].productDto.name").doesNotExist());
+
+        mvc.perform(get("/orders/1")
+                .param("fields", "cost"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testPayOrder() throws Exception {
         mvc.perform(post("/orders/1/pay"))
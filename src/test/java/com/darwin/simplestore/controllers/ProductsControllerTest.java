@@ -5,13 +5,28 @@
 
 package com.darwin.simplestore.controllers;
 
+import com.darwin.simplestore.cache.ProductPageCache;
 import com.darwin.simplestore.config.DataWebConfig;
+import com.darwin.simplestore.config.JacksonConfig;
+import com.darwin.simplestore.dto.CursorPageDto;
+import com.darwin.simplestore.dto.Base64Content;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
 import com.darwin.simplestore.dto.NewProductDto;
+import com.darwin.simplestore.dto.ProductBatchDto;
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductCursor;
 import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductFileFormat;
+import com.darwin.simplestore.dto.ProductImportErrorDto;
+import com.darwin.simplestore.dto.ProductImportReportDto;
+import com.darwin.simplestore.dto.ProductSortField;
+import com.darwin.simplestore.dto.ProductSummaryDto;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
+import com.darwin.simplestore.services.ProductImportService;
 import com.darwin.simplestore.services.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,18 +34,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -38,7 +64,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("dev")
 @WebMvcTest(controllers = ProductsController.class)
-@Import(DataWebConfig.class)
+@Import({DataWebConfig.class, JacksonConfig.class, ProductPageCache.class, SimpleMeterRegistry.class})
 public class ProductsControllerTest {
     @Autowired
     private MockMvc mvc;
@@ -49,11 +75,19 @@ public class ProductsControllerTest {
     @MockitoBean
     private ProductService productService;
 
+    @MockitoBean
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductPageCache productPageCache;
+
     private ProductDto productDto;
     private NewProductDto newProductDto;
 
     @BeforeEach
     public void setUp() {
+        productPageCache.invalidateAll();
+
         productDto = new ProductDto(
                 1L,
                 "p1",
@@ -83,6 +117,35 @@ public class ProductsControllerTest {
                 .andExpect(jsonPath("$.content[0].id").value(1L));
     }
 
+    @Test
+    public void testGetProductsPageCached() throws Exception {
+        when(productService.getProducts(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(productDto)));
+
+        final MvcResult plain = mvc.perform(get("/products"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", containsString("Accept-Encoding")))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn();
+
+        final MvcResult compressed = mvc.perform(get("/products")
+                .param("page", "0")
+                .param("sortBy", "name")
+                .header("Accept-Encoding", "deflate, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn();
+
+        final byte[] json = new GZIPInputStream(new ByteArrayInputStream(compressed.getResponse().getContentAsByteArray())).readAllBytes();
+        assertArrayEquals(plain.getResponse().getContentAsByteArray(), json);
+
+        mvc.perform(get("/products")
+                .header("Accept-Encoding", "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+
+        verify(productService, times(1)).getProducts(any(Pageable.class));
+    }
+
     @Test
     public void testGetProductsPageByCategory() throws Exception {
         when(productService.getProductsByCategory(any(Pageable.class), eq(ProductCategory.OTHER))).thenReturn(new PageImpl<>(List.of(productDto)));
@@ -100,6 +163,172 @@ public class ProductsControllerTest {
                 .andExpect(jsonPath("$.page.totalElements").value(0));
     }
 
+    @Test
+    public void testGetProductsSlice() throws Exception {
+        when(productService.getProductsSlice(any(Pageable.class))).thenReturn(new SliceImpl<>(List.of(productDto), PageRequest.of(0, 5), true));
+        when(productService.countProducts(null)).thenReturn(7L);
+
+        mvc.perform(get("/products/slice"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        mvc.perform(get("/products/slice")
+                .param("includeTotal", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(7L));
+
+        verify(productService, times(1)).countProducts(null);
+    }
+
+    @Test
+    public void testGetProductsSliceByCategory() throws Exception {
+        when(productService.getProductsSliceByCategory(any(Pageable.class), eq(ProductCategory.OTHER))).thenReturn(new SliceImpl<>(List.of(productDto), PageRequest.of(0, 5), false));
+
+        mvc.perform(get("/products/slice")
+                .param("category", ProductCategory.OTHER.name()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.hasNext").value(false));
+    }
+
+    @Test
+    public void testGetProductsSummaryView() throws Exception {
+        final ProductSummaryDto summary = new ProductSummaryDto(1L, "Product", 1.0, 1L, ProductCategory.OTHER);
+
+        when(productService.getProductSummaries(any(Pageable.class), eq(ProductCategory.OTHER))).thenReturn(new PageImpl<>(List.of(summary)));
+        when(productService.getProductSummariesSlice(any(Pageable.class), isNull())).thenReturn(new SliceImpl<>(List.of(summary), PageRequest.of(0, 5), false));
+
+        mvc.perform(get("/products")
+                .param("category", ProductCategory.OTHER.name())
+                .param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].name").value("Product"))
+                .andExpect(jsonPath("$.content[0].description").doesNotExist());
+
+        mvc.perform(get("/products/slice")
+                .param("view", "SUMMARY"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.content[0].description").doesNotExist());
+
+        verify(productService, never()).getProductsByCategory(any(Pageable.class), any(ProductCategory.class));
+        verify(productService, never()).getProductsSlice(any(Pageable.class));
+    }
+
+    @Test
+    public void testGetProductsSummaryViewFields() throws Exception {
+        final ProductSummaryDto summary = new ProductSummaryDto(1L, "Product", 1.0, 1L, ProductCategory.OTHER);
+
+        when(productService.getProductSummariesSlice(any(Pageable.class), isNull())).thenReturn(new SliceImpl<>(List.of(summary), PageRequest.of(0, 5), false));
+
+        mvc.perform(get("/products/slice")
+                .param("view", "summary")
+                .param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value("Product"))
+                .andExpect(jsonPath("$.content[0].price").doesNotExist());
+
+        mvc.perform(get("/products")
+                .param("view", "summary")
+                .param("fields", "name,description"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/products/slice")
+                .param("view", "summary")
+                .param("fields", "description"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).getProductSummaries(any(Pageable.class), any());
+        verify(productService, never()).getProducts(any(Pageable.class));
+        verify(productService, times(1)).getProductSummariesSlice(any(Pageable.class), isNull());
+    }
+
+    @Test
+    public void testGetProductsFields() throws Exception {
+        final ProductSummaryDto summary = new ProductSummaryDto(1L, "Product", 1.0, 1L, ProductCategory.OTHER);
+
+        when(productService.getProductSummaries(any(Pageable.class), isNull())).thenReturn(new PageImpl<>(List.of(summary)));
+        when(productService.getProducts(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(productDto)));
+
+        mvc.perform(get("/products")
+                .param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.content[0].name").value("Product"))
+                .andExpect(jsonPath("$.content[0].price").doesNotExist());
+
+        mvc.perform(get("/products")
+                .param("fields", "name,description"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].description").value("d1"))
+                .andExpect(jsonPath("$.content[0].id").doesNotExist());
+    }
+
+    @Test
+    public void testGetProductsByIds() throws Exception {
+        when(productService.getProductsByIds(List.of(1L, 5L))).thenReturn(new ProductBatchDto(List.of(productDto), List.of(5L)));
+
+        mvc.perform(get("/products")
+                .param("ids", "1,5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products[0].id").value(1L))
+                .andExpect(jsonPath("$.missingIds[0]").value(5L));
+
+        mvc.perform(post("/products/batch")
+                .param("fields", "id")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 5]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products[0].id").value(1L))
+                .andExpect(jsonPath("$.products[0].name").doesNotExist())
+                .andExpect(jsonPath("$.missingIds[0]").value(5L));
+
+        verify(productService, never()).getProducts(any(Pageable.class));
+    }
+
+    @Test
+    public void testGetProductsInvalidView() throws Exception {
+        mvc.perform(get("/products")
+                .param("view", "compact"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testScrollProducts() throws Exception {
+        final String cursor = ProductCursor.first(ProductSortField.NAME, true, null).after(productDto).encode();
+
+        when(productService.getProductsAfter(any(ProductCursor.class), eq(5))).thenReturn(new CursorPageDto<>(List.of(productDto), cursor, true));
+
+        mvc.perform(get("/products/scroll")
+                .param("sortBy", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L))
+                .andExpect(jsonPath("$.nextCursor").value(cursor))
+                .andExpect(jsonPath("$.hasNext").value(true));
+
+        mvc.perform(get("/products/scroll")
+                .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1L));
+
+        verify(productService).getProductsAfter(eq(ProductCursor.decode(cursor)), eq(5));
+    }
+
+    @Test
+    public void testScrollProductsBadRequest() throws Exception {
+        mvc.perform(get("/products/scroll")
+                .param("sortBy", "description"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/products/scroll")
+                .param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testCreateProduct() throws Exception {
         when(productService.createProduct(any(NewProductDto.class))).thenAnswer(i -> {
@@ -122,24 +351,193 @@ public class ProductsControllerTest {
                 .andExpect(content().string(objectMapper.writeValueAsString(productDto)));
     }
 
+    @Test
+    public void testImportProducts() throws Exception {
+        final ProductImportReportDto report = new ProductImportReportDto(
+                1L,
+                1L,
+                List.of(new ProductImportErrorDto(3L, "Product price cannot be null")),
+                false);
+
+        when(productImportService.importProducts(any(InputStream.class), eq(ProductFileFormat.CSV))).thenReturn(report);
+
+        mvc.perform(post("/products/bulk")
+                .contentType("text/csv;charset=UTF-8")
+                .content("name,price,quantity\np1,1.0,4\np2,,4\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(objectMapper.writeValueAsString(report)));
+
+        verify(productImportService, times(1)).importProducts(any(InputStream.class), eq(ProductFileFormat.CSV));
+    }
+
+    @Test
+    public void testImportProductsUnsupportedFormat() throws Exception {
+        mvc.perform(post("/products/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verify(productImportService, never()).importProducts(any(InputStream.class), any(ProductFileFormat.class));
+    }
+
+    @Test
+    public void testExportProducts() throws Exception {
+        doAnswer(i -> {
+            final OutputStream outputStream = i.getArgument(0);
+            outputStream.write("id,name\n1,p1\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(productService).exportProducts(any(OutputStream.class), eq(ProductFileFormat.CSV));
+
+        final MvcResult result = mvc.perform(get("/products/export")
+                .param("format", "CSV"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string("Content-Disposition", containsString("products.csv")))
+                .andExpect(content().string("id,name\n1,p1\n"));
+    }
+
+    @Test
+    public void testGetProductFields() throws Exception {
+        when(productService.getProductById(anyLong(), eq(false))).thenReturn(productDto);
+
+        mvc.perform(get("/products/1")
+                .param("fields", "id, name,price"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\": 1, \"name\": \"p1\", \"price\": 10.0}", true));
+    }
+
+    @Test
+    public void testGetProductUnknownFields() throws Exception {
+        mvc.perform(get("/products/1")
+                .param("fields", "id,secret"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("secret")));
+
+        verify(productService, never()).getProductById(anyLong(), anyBoolean());
+    }
+
     @Test
     public void testGetProduct() throws Exception {
-        when(productService.getProductById(anyLong())).thenReturn(productDto);
+        when(productService.getProductById(anyLong(), eq(false))).thenReturn(productDto);
 
         mvc.perform(get("/products/1")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(content().string(objectMapper.writeValueAsString(productDto)));
+                .andExpect(content().string(objectMapper.writeValueAsString(productDto)))
+                .andExpect(jsonPath("$.image").doesNotExist());
+    }
+
+    @Test
+    public void testGetProductETag() throws Exception {
+        final ProductDto versionedProductDto = new ProductDto(1L, "p1", "d1", 10.0, 4L, ProductCategory.OTHER, null, 3L);
+
+        when(productService.getProductVersionTag(1L, false)).thenReturn("3");
+        when(productService.getProductById(anyLong(), eq(false))).thenReturn(versionedProductDto);
+
+        mvc.perform(get("/products/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"3\""));
+
+        mvc.perform(get("/products/1")
+                .header("If-None-Match", "W/\"2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"3\""))
+                .andExpect(jsonPath("$.version").value(3));
+
+        mvc.perform(get("/products/1")
+                .header("If-None-Match", "W/\"2\", W/\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"3\""))
+                .andExpect(content().string(""));
+
+        verify(productService, times(2)).getProductById(1L, false);
+    }
+
+    @Test
+    public void testGetProductWithImage() throws Exception {
+        final ImageMetadataDto imageMetadataDto = new ImageMetadataDto(
+                1L,
+                "image/png",
+                3L,
+                1,
+                1,
+                "hash",
+                Instant.parse("2025-01-01T00:00:00Z"),
+                Instant.parse("2025-01-01T00:00:00Z")
+        );
+        when(productService.getProductById(anyLong(), eq(true))).thenReturn(productDto.withImage(imageMetadataDto));
+
+        mvc.perform(get("/products/1")
+                .param("includeImage", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1L))
+                .andExpect(jsonPath("$.image.id").value(1L))
+                .andExpect(jsonPath("$.image.width").value(1))
+                .andExpect(jsonPath("$.image.content").doesNotExist());
+    }
+
+    @Test
+    public void testGetProductWithImageETag() throws Exception {
+        final ImageMetadataDto imageMetadataDto = new ImageMetadataDto(2L, "image/png", 3L, 1, 1, "hash", null, null);
+        final ProductDto versionedProductDto = new ProductDto(1L, "p1", "d1", 10.0, 4L, ProductCategory.OTHER, imageMetadataDto, 3L);
+
+        when(productService.getProductVersionTag(1L, true)).thenReturn("3.2-hash");
+        when(productService.getProductById(anyLong(), eq(true))).thenReturn(versionedProductDto);
+
+        // The tag of the representation without the image does not match the one with the image
+        mvc.perform(get("/products/1")
+                .param("includeImage", "true")
+                .header("If-None-Match", "W/\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"3.2-hash\""));
+
+        mvc.perform(get("/products/1")
+                .param("includeImage", "true")
+                .header("If-None-Match", "W/\"3.2-hash\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"3.2-hash\""));
+
+        verify(productService, times(1)).getProductById(1L, true);
     }
 
     @Test
     public void testUpdateProduct() throws Exception {
-        when(productService.getProductById(anyLong())).thenReturn(productDto);
+        mvc.perform(put("/products/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(newProductDto)))
+                .andExpect(status().isOk());
+
+        verify(productService, times(1)).updateProductById(productDto, null);
+    }
+
+    @Test
+    public void testUpdateProductIfMatch() throws Exception {
+        doThrow(new PreconditionFailedException("Product with id 1 has version 3, not 2"))
+                .when(productService).updateProductById(productDto, 2L);
 
         mvc.perform(put("/products/1")
+                .header("If-Match", "W/\"3\"")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(newProductDto)))
                 .andExpect(status().isOk());
+
+        mvc.perform(put("/products/1")
+                .header("If-Match", "W/\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(newProductDto)))
+                .andExpect(status().isPreconditionFailed());
+
+        mvc.perform(put("/products/1")
+                .header("If-Match", "\"abc\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(newProductDto)))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, times(1)).updateProductById(productDto, 3L);
     }
 
     @Test
@@ -160,7 +558,7 @@ public class ProductsControllerTest {
     public void testGetImage() throws Exception {
         final ImageDto imageDto = new ImageDto(
                 1L,
-                "base64"
+                Base64Content.decode("SGVsbG8gd29ybGQh")
         );
 
         when(productService.getImage(anyLong())).thenReturn(Optional.of(imageDto));
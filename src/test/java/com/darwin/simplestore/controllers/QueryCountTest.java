@@ -0,0 +1,148 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.controllers;
+
+import com.darwin.simplestore.TestcontainersConfiguration;
+import com.darwin.simplestore.dto.OrderStatus;
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.entities.Cart;
+import com.darwin.simplestore.entities.CartItem;
+import com.darwin.simplestore.entities.Order;
+import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.repositories.CartItemRepository;
+import com.darwin.simplestore.repositories.CartRepository;
+import com.darwin.simplestore.repositories.OrderRepository;
+import com.darwin.simplestore.repositories.ProductRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("dev")
+public class QueryCountTest {
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void testGetCartStatements() throws Exception {
+        final Cart small = cartWithItems(1);
+        final Cart large = cartWithItems(5);
+
+        final long smallStatements = statementsFor("/carts/" + small.getId(), "$.cartItems", 1);
+        final long largeStatements = statementsFor("/carts/" + large.getId(), "$.cartItems", 5);
+
+        assertEquals(1, smallStatements);
+        assertEquals(smallStatements, largeStatements);
+    }
+
+    @Test
+    public void testGetOrderStatements() throws Exception {
+        final Order small = orderWithItems(1);
+        final Order large = orderWithItems(5);
+
+        final long smallStatements = statementsFor("/orders/" + small.getId(), "$.cartDto.cartItems", 1);
+        final long largeStatements = statementsFor("/orders/" + large.getId(), "$.cartDto.cartItems", 5);
+
+        assertEquals(1, smallStatements);
+        assertEquals(smallStatements, largeStatements);
+    }
+
+    /**
+     * Count the statements prepared while serving a request
+     * @param url The url to get
+     * @param itemsPath The path of the cart items in the response
+     * @param items The number of items expected in the response
+     * @return The number of prepared statements
+     * @throws Exception If the request fails
+     */
+    private long statementsFor(final String url, final String itemsPath, final int items) throws Exception {
+        statistics.clear();
+
+        mvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(itemsPath + ".length()").value(items));
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Create a cart holding a number of distinct products
+     * @param items The number of items in the cart
+     * @return The cart
+     */
+    private Cart cartWithItems(final int items) {
+        final Cart cart = cartRepository.save(new Cart());
+
+        for (int i = 0; i < items; i++) {
+            final Product product = new Product();
+            product.setName(UUID.randomUUID().toString());
+            product.setDescription("d");
+            product.setPrice(1.0);
+            product.setQuantity(10L);
+            product.setCategory(ProductCategory.OTHER);
+
+            cartItemRepository.save(new CartItem(null, 1L, cart, productRepository.save(product)));
+        }
+
+        return cart;
+    }
+
+    /**
+     * Create an order for a cart which still holds its items
+     * @param items The number of items in the cart of the order
+     * @return The order
+     */
+    private Order orderWithItems(final int items) {
+        final Long cartId = cartWithItems(items).getId();
+
+        return new TransactionTemplate(transactionManager).execute(status -> orderRepository.save(
+                new Order(null, cartRepository.getReferenceById(cartId), OrderStatus.AWAITING_PAYMENT, null)));
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.entities.Image;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class Base64ContentTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testDeserialize() throws Exception {
+        final NewImageDto newImageDto = objectMapper.readValue("{\"base64Content\": \"SGVsbG8gd29ybGQh\"}", NewImageDto.class);
+
+        try (Base64Content content = newImageDto.base64Content()) {
+            assertEquals(12, content.contentLength());
+            assertArrayEquals("Hello world!".getBytes(StandardCharsets.UTF_8), content.getInputStream().readAllBytes());
+        }
+
+        assertThrows(IOException.class, () -> newImageDto.base64Content().getInputStream());
+    }
+
+    @Test
+    public void testDeserializeInRequest() throws Exception {
+        final ServletRequestAttributes requestAttributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+
+        try {
+            final NewImageDto newImageDto = objectMapper.readValue("{\"base64Content\": \"SGVsbG8gd29ybGQh\"}", NewImageDto.class);
+
+            assertEquals(12, newImageDto.base64Content().contentLength());
+
+            // The content is never closed, as when the request fails before reaching its handler
+            requestAttributes.requestCompleted();
+
+            assertThrows(IOException.class, () -> newImageDto.base64Content().getInputStream());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void testDeserializeNull() throws Exception {
+        assertNull(objectMapper.readValue("{\"base64Content\": null}", NewImageDto.class).base64Content());
+        assertNull(objectMapper.readValue("{}", NewImageDto.class).base64Content());
+    }
+
+    @Test
+    public void testDeserializeInvalid() {
+        assertThrows(JsonProcessingException.class, () -> objectMapper.readValue("{\"base64Content\": \"not base64!\"}", NewImageDto.class));
+        assertThrows(JsonProcessingException.class, () -> objectMapper.readValue("{\"base64Content\": 1}", NewImageDto.class));
+    }
+
+    @Test
+    public void testDeserializeTooLarge() {
+        final String base64Content = Base64.getEncoder().encodeToString(new byte[Image.MAX_SIZE + 1]);
+
+        assertThrows(JsonProcessingException.class, () -> objectMapper.readValue("{\"base64Content\": \"" + base64Content + "\"}", NewImageDto.class));
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        final ImageDto imageDto = new ImageDto(1L, Base64Content.of("Hello world!".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("{\"id\":1,\"base64Content\":\"SGVsbG8gd29ybGQh\"}", objectMapper.writeValueAsString(imageDto));
+    }
+}
@@ -0,0 +1,50 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.dto;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("dev")
+public class ProductFieldsTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ProductDto productDto = new ProductDto(1L, "p1", "d1", 10.0, 4L, ProductCategory.OTHER);
+
+    @Test
+    public void testParse() throws Exception {
+        final ProductFields productFields = ProductFields.parse("id, name,price");
+
+        assertTrue(productFields.isSummary());
+        assertEquals("{\"id\":1,\"name\":\"p1\",\"price\":10.0}",
+                objectMapper.writer(productFields.getFilters()).writeValueAsString(productDto));
+    }
+
+    @Test
+    public void testParseAll() throws Exception {
+        final ProductFields productFields = ProductFields.parse(null);
+
+        assertSame(ProductFields.all(), productFields);
+        assertFalse(productFields.isSummary());
+        assertEquals("{\"id\":1,\"name\":\"p1\",\"description\":\"d1\",\"price\":10.0,\"quantity\":4,\"category\":\"OTHER\"}",
+                objectMapper.writer(productFields.getFilters()).writeValueAsString(productDto));
+    }
+
+    @Test
+    public void testParseNotSummary() {
+        assertFalse(ProductFields.parse("name,description").isSummary());
+        assertFalse(ProductFields.parse("image").isSummary());
+    }
+
+    @Test
+    public void testParseUnknown() {
+        assertThrows(InvalidRequestException.class, () -> ProductFields.parse("id,secret"));
+        assertThrows(InvalidRequestException.class, () -> ProductFields.parse(""));
+    }
+}
@@ -6,24 +6,35 @@
 package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.TestcontainersConfiguration;
+import com.darwin.simplestore.dto.CartItemSummaryDto;
 import com.darwin.simplestore.dto.ProductCategory;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
 import com.darwin.simplestore.entities.Product;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Import(TestcontainersConfiguration.class)
 @DataJpaTest
@@ -35,6 +46,8 @@ public class CartTest {
     private CartRepository cartRepository;
     @Autowired
     private CartItemRepository cartItemRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @BeforeEach
     public void setUp() {
@@ -86,6 +99,18 @@ public class CartTest {
         assertEquals(2, cartItems.size());
     }
 
+    @Test
+    public void testFindSummaries() {
+        final Cart cart = cartRepository.save(new Cart(null, new HashSet<>(), null));
+        final Product product = productRepository.findByName("p1").get();
+        final CartItem cartItem = cartItemRepository.save(new CartItem(null, 2L, cart, product));
+
+        final List<CartItemSummaryDto> summaries = cartItemRepository.findSummariesByCartId(cart.getId());
+
+        assertEquals(List.of(new CartItemSummaryDto(cartItem.getId(), product.getId(), "p1", 1.0, 2L)), summaries);
+        assertTrue(cartItemRepository.findSummariesByCartId(-1L).isEmpty());
+    }
+
     @Test
     public void testDeleteCart() {
         Cart cart = new Cart();
@@ -113,4 +138,47 @@ public class CartTest {
 
         assertEquals(0, cartItems.size());
     }
+
+    @Test
+    public void testUpsertQuantity() {
+        final Cart cart = cartRepository.saveAndFlush(new Cart(null, new HashSet<>(), null));
+        final Long productId = productRepository.findByName("p1").get().getId();
+
+        cartItemRepository.upsertQuantity(cart.getId(), productId, 2L);
+        cartItemRepository.upsertQuantity(cart.getId(), productId, 3L);
+
+        assertEquals(5L, cartItemRepository.findByCartIdAndProductId(cart.getId(), productId).get().getQuantity());
+        assertEquals(1, cartItemRepository.updateQuantity(cart.getId(), productId, 7L));
+        assertEquals(1, cartItemRepository.deleteByCartIdAndProductId(cart.getId(), productId));
+        assertEquals(0, cartItemRepository.updateQuantity(cart.getId(), productId, 7L));
+        assertTrue(cartItemRepository.findAllByCart(cart).isEmpty());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testUpsertQuantityMissingProduct() {
+        final Cart cart = cartRepository.saveAndFlush(new Cart(null, new HashSet<>(), null));
+
+        final DataIntegrityViolationException e = assertThrows(DataIntegrityViolationException.class,
+                () -> new TransactionTemplate(transactionManager).executeWithoutResult(
+                        status -> cartItemRepository.upsertQuantity(cart.getId(), -1L, 2L)));
+        assertEquals(CartItem.PRODUCT_CONSTRAINT, ((ConstraintViolationException) e.getCause()).getConstraintName());
+    }
+
+    @Test
+    public void testVersionTag() {
+        final Cart cart = cartRepository.saveAndFlush(new Cart(null, new HashSet<>(), null));
+        final Long productId = productRepository.findByName("p1").get().getId();
+
+        assertEquals(Optional.of("0.0"), cartRepository.findVersionTagById(cart.getId()));
+
+        cartItemRepository.upsertQuantity(cart.getId(), productId, 2L);
+        assertEquals(1, cartRepository.incrementVersion(cart.getId()));
+        assertEquals(Optional.of("1.0"), cartRepository.findVersionTagById(cart.getId()));
+
+        assertEquals(0, cartRepository.incrementVersion(cart.getId(), 0L));
+        assertEquals(1, cartRepository.incrementVersion(cart.getId(), 1L));
+        assertEquals(Optional.of("2.0"), cartRepository.findVersionTagById(cart.getId()));
+        assertTrue(cartRepository.findVersionTagById(-1L).isEmpty());
+    }
 }
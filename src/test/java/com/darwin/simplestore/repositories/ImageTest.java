@@ -6,14 +6,33 @@
 package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.TestcontainersConfiguration;
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageSourceDto;
+import com.darwin.simplestore.dto.ProductCategory;
 import com.darwin.simplestore.entities.Image;
+import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.LegacyImage;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.MigratedImage;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Import(TestcontainersConfiguration.class)
 @DataJpaTest
@@ -22,11 +41,165 @@ public class ImageTest {
     @Autowired
     private ImageRepository imageRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
     @Test
     public void testAddImage() {
-        Image image = new Image();
-        image.setBase64Image("base64Image");
+        Image image = new Image(null, null, "text/plain", 12L, "hash", "ab/key", null, null, null, null, 0);
 
         assertDoesNotThrow(() -> imageRepository.save(image));
     }
+
+    @Test
+    public void testFindLegacyImages() {
+        final byte[] content = "GIF89a world".getBytes(StandardCharsets.UTF_8);
+        imageRepository.save(new Image(null, null, "image/gif", 12L, "hash", "ab/key", null, null, null, null, 0));
+        final Image legacy = imageRepository.save(new Image(null, content, "image/gif", 12L, "legacy", null, null, null, null, null, 0));
+
+        final List<LegacyImage> images = imageRepository.findLegacyImages(Long.MIN_VALUE, 10, imageRepository.hasBase64Column());
+
+        assertEquals(List.of(legacy.getId()), images.stream().map(LegacyImage::id).toList());
+        assertArrayEquals(content, images.getFirst().content());
+        assertTrue(imageRepository.findLegacyImages(legacy.getId(), 10, false).isEmpty());
+    }
+
+    @Test
+    public void testFindLegacyImage() {
+        final byte[] content = "GIF89a world".getBytes(StandardCharsets.UTF_8);
+        final Image migrated = imageRepository.save(new Image(null, null, "image/gif", 12L, "hash", "ab/key", null, null, null, null, 0));
+        final Image legacy = imageRepository.save(new Image(null, content, "image/gif", 12L, "legacy", null, null, null, null, null, 0));
+        entityManager.flush();
+
+        assertArrayEquals(content, imageRepository.findLegacyImage(legacy.getId(), false).orElseThrow().decodedContent());
+        assertTrue(imageRepository.findLegacyImage(migrated.getId(), false).isEmpty());
+    }
+
+    @Test
+    public void testFindSourceById() {
+        final Image image = imageRepository.save(new Image(null, null, "image/gif", 12L, "hash", "ab/key", null, null, null, null, 0));
+
+        final ImageSourceDto source = imageRepository.findSourceById(image.getId()).orElseThrow();
+
+        assertEquals("ab/key", source.storageKey());
+        assertEquals("hash", source.hash());
+        assertTrue(imageRepository.findSourceById(image.getId() + 1).isEmpty());
+    }
+
+    @Test
+    public void testCompleteMigration() {
+        final Image legacy = imageRepository.save(new Image(
+                null, "GIF89a world".getBytes(StandardCharsets.UTF_8), "image/gif", null, null, null, null, null, null, null, 0));
+        final Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        assertEquals(1, imageRepository.completeMigration(
+                new MigratedImage(legacy.getId(), "ab/key", "hash", 12L, 30, 20, "image/gif", now), false));
+        assertEquals(0, imageRepository.completeMigration(
+                new MigratedImage(legacy.getId(), "ab/key", "hash", 12L, 30, 20, "image/gif", now), false));
+
+        entityManager.clear();
+
+        final Image migrated = imageRepository.findById(legacy.getId()).orElseThrow();
+
+        assertNull(migrated.getContent());
+        assertEquals("ab/key", migrated.getStorageKey());
+        assertEquals("image/gif", migrated.getMediaType());
+        assertEquals(now, migrated.getCreatedAt());
+        assertEquals(30, migrated.getWidth());
+    }
+
+    @Test
+    public void testFindByHash() {
+        final Image image = imageRepository.save(new Image(null, null, "text/plain", 12L, "hash", "ab/key", null, null, null, null, 0));
+
+        assertEquals(image.getId(), imageRepository.findByHash("hash").orElseThrow().getId());
+        assertTrue(imageRepository.findByHash("other").isEmpty());
+    }
+
+    @Test
+    public void testExistsByStorageKey() {
+        imageRepository.save(new Image(null, null, "text/plain", 12L, "hash", "ab/key", null, null, null, null, 0));
+
+        assertTrue(imageRepository.existsByStorageKey("ab/key"));
+        assertFalse(imageRepository.existsByStorageKey("ab/other"));
+    }
+
+    @Test
+    public void testLockContent() {
+        // The lock is reentrant within a transaction
+        assertEquals(1, imageRepository.lockContent("hash"));
+        assertEquals(1, imageRepository.lockContent("hash"));
+    }
+
+    @Test
+    public void testReferenceCount() {
+        final Long id = imageRepository.save(new Image(null, null, "text/plain", 12L, "hash", "ab/key", null, null, null, null, 0)).getId();
+
+        assertEquals(1, imageRepository.retain(id));
+        assertEquals(1, imageRepository.retain(id));
+        assertEquals(0, imageRepository.retain(-1L));
+
+        assertEquals(1, imageRepository.release(id));
+        assertEquals(0, imageRepository.deleteIfUnreferenced(id));
+        assertEquals(1, imageRepository.release(id));
+        assertEquals(0, imageRepository.release(id));
+        assertEquals(1, imageRepository.deleteIfUnreferenced(id));
+    }
+
+    @Test
+    public void testDeleteReferencedImage() {
+        // The reference count of an image created before the references were counted is 0
+        final Image image = imageRepository.save(new Image(null, null, "image/png", 12L, "hash", "ab/key", null, null, null, null, 0));
+        final Product product = new Product();
+        product.setName("test");
+        product.setDescription("test");
+        product.setPrice(1.0);
+        product.setQuantity(1L);
+        product.setCategory(ProductCategory.OTHER);
+        product.setImage(image);
+        productRepository.save(product);
+
+        assertEquals(0, imageRepository.deleteIfUnreferenced(image.getId()));
+        assertEquals(1, imageRepository.backfillReferenceCounts());
+        assertEquals(0, imageRepository.backfillReferenceCounts());
+
+        entityManager.clear();
+
+        assertEquals(1, imageRepository.findById(image.getId()).orElseThrow().getReferenceCount());
+    }
+
+    @Test
+    public void testFindMetadata() {
+        final Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        final Image image = imageRepository.save(new Image(null, null, "image/png", 12L, "hash", "ab/key", now, 30, 20, now, 0));
+
+        final ImageMetadataDto imageMetadataDto = imageRepository.findMetadataById(image.getId()).orElseThrow();
+
+        assertEquals(new ImageMetadataDto(image.getId(), "image/png", 12L, 30, 20, "hash", now, now), imageMetadataDto);
+        assertTrue(imageRepository.findMetadataById(-1L).isEmpty());
+
+        final Page<ImageMetadataDto> page = imageRepository.findAllMetadata(PageRequest.of(0, 5, Sort.by("id")));
+
+        assertEquals(1, page.getTotalElements());
+        assertEquals(imageMetadataDto, page.getContent().getFirst());
+    }
+
+    @Test
+    public void testFindMetadataByProductId() {
+        final Image image = imageRepository.save(new Image(null, null, "image/png", 12L, "hash", "ab/key", null, null, null, null, 1));
+        final Product product = new Product();
+        product.setName("test");
+        product.setDescription("test");
+        product.setPrice(1.0);
+        product.setQuantity(1L);
+        product.setCategory(ProductCategory.OTHER);
+        product.setImage(image);
+        final Long productId = productRepository.save(product).getId();
+
+        assertEquals(image.getId(), imageRepository.findMetadataByProductId(productId).orElseThrow().id());
+        assertTrue(imageRepository.findMetadataByProductId(-1L).isEmpty());
+    }
 }
@@ -7,21 +7,28 @@ package com.darwin.simplestore.repositories;
 
 import com.darwin.simplestore.TestcontainersConfiguration;
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductSortField;
+import com.darwin.simplestore.dto.ProductSummaryDto;
 import com.darwin.simplestore.entities.Product;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.AfterEach;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,6 +39,9 @@ class ProductTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     @BeforeEach
     public void setUp() {
         Product product = new Product();
@@ -92,8 +102,108 @@ class ProductTest {
         assertEquals(0, productsPage.getTotalElements());
     }
 
+    @Test
+    public void testFindSlice() {
+        Product product = new Product();
+        product.setName("test");
+        product.setDescription("desc");
+        product.setPrice(1.0);
+        product.setQuantity(10L);
+        product.setCategory(ProductCategory.FOOD);
+        productRepository.save(product);
+
+        final Pageable pageable = PageRequest.of(0, 1, Sort.by("id"));
+        Slice<Product> slice = productRepository.findAllBy(pageable);
+        assertEquals(1, slice.getNumberOfElements());
+        assertTrue(slice.hasNext());
+
+        slice = productRepository.findAllByCategory(ProductCategory.FOOD, pageable);
+        assertEquals("test", slice.getContent().getFirst().getName());
+        assertFalse(slice.hasNext());
+
+        assertEquals(1L, productRepository.countByCategory(ProductCategory.FOOD));
+        assertEquals(0L, productRepository.countByCategory(ProductCategory.CLOTHES));
+    }
+
+    @Test
+    public void testFindSummaries() {
+        Product product = new Product();
+        product.setName("test");
+        product.setDescription("desc");
+        product.setPrice(2.0);
+        product.setQuantity(5L);
+        product.setCategory(ProductCategory.FOOD);
+        productRepository.save(product);
+
+        final Pageable pageable = PageRequest.of(0, 1, Sort.by("name").descending());
+        Page<ProductSummaryDto> page = productRepository.findAllSummaries(pageable);
+        assertEquals(2, page.getTotalElements());
+        assertEquals("unique", page.getContent().getFirst().name());
+
+        page = productRepository.findSummariesByCategory(ProductCategory.FOOD, pageable);
+        assertEquals(1, page.getTotalElements());
+        assertEquals(new ProductSummaryDto(product.getId(), "test", 2.0, 5L, ProductCategory.FOOD), page.getContent().getFirst());
+
+        Slice<ProductSummaryDto> slice = productRepository.findSummarySlice(pageable);
+        assertEquals("unique", slice.getContent().getFirst().name());
+        assertTrue(slice.hasNext());
+
+        slice = productRepository.findSummarySliceByCategory(ProductCategory.OTHER, pageable);
+        assertEquals("unique", slice.getContent().getFirst().name());
+        assertFalse(slice.hasNext());
+    }
+
+    @Test
+    public void testFindPageAfter() {
+        for (String name : List.of("c", "a", "b")) {
+            Product product = new Product();
+            product.setName(name);
+            product.setDescription("desc");
+            product.setPrice(1.0);
+            product.setQuantity(10L);
+            product.setCategory(ProductCategory.FOOD);
+            productRepository.save(product);
+        }
+
+        List<Product> firstPage = productRepository.findPageAfter(ProductSortField.NAME, true, null, null, null, 2);
+        assertEquals(List.of("a", "b"), firstPage.stream().map(Product::getName).toList());
+
+        final Product last = firstPage.getLast();
+        List<Product> secondPage = productRepository.findPageAfter(ProductSortField.NAME, true, null, last.getName(), last.getId(), 2);
+        assertEquals(List.of("c", "unique"), secondPage.stream().map(Product::getName).toList());
+
+        List<Product> descending = productRepository.findPageAfter(ProductSortField.NAME, false, ProductCategory.FOOD, "c", Long.MAX_VALUE, 10);
+        assertEquals(List.of("c", "b", "a"), descending.stream().map(Product::getName).toList());
+
+        List<Product> byCategory = productRepository.findPageAfter(ProductSortField.ID, true, ProductCategory.OTHER, null, null, 10);
+        assertEquals(1, byCategory.size());
+        assertEquals("unique", byCategory.getFirst().getName());
+    }
+
     @Test
     public void testExistsByName() {
         assertTrue(productRepository.existsByName("unique"));
     }
+
+    @Test
+    public void testDecrementQuantities() {
+        final Long id = productRepository.findByName("unique").get().getId();
+
+        assertTrue(productRepository.decrementQuantities(Map.of(id, 4L)).isEmpty());
+        assertEquals(List.of(-1L, id), productRepository.decrementQuantities(Map.of(id, 7L, -1L, 1L)));
+
+        entityManager.clear();
+
+        assertEquals(6L, productRepository.findById(id).get().getQuantity());
+    }
+
+    @Test
+    public void testStreamAllProducts() {
+        try (Stream<ProductDto> products = productRepository.streamAllProducts()) {
+            final List<ProductDto> productList = products.toList();
+
+            assertEquals(1, productList.size());
+            assertEquals("unique", productList.getFirst().name());
+        }
+    }
 }
@@ -5,30 +5,33 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.ProductCache;
 import com.darwin.simplestore.dto.CartItemDto;
 import com.darwin.simplestore.dto.ProductCategory;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
 import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartItemRepository;
 import com.darwin.simplestore.repositories.CartRepository;
 import com.darwin.simplestore.repositories.ProductRepository;
 import org.apache.commons.compress.utils.Sets;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.sql.SQLException;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
@@ -44,11 +47,13 @@ public class CartItemServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductCache productCache;
+
     @InjectMocks
     private CartItemService cartItemService;
 
     private static Product product;
-    private static Cart emptyCart;
     private static Cart cart;
     private static CartItem cartItem;
 
@@ -61,13 +66,9 @@ public class CartItemServiceTest {
                 1.0,
                 5L,
                 ProductCategory.OTHER,
-                null
-        );
-        emptyCart = new Cart(
-                1L,
-                new HashSet<>()
-        );
-        cart = new Cart(2L, Collections.emptySet());
+                null,
+                null);
+        cart = new Cart(2L, Collections.emptySet(), null);
         cartItem = new CartItem(
                 1L,
                 5L,
@@ -75,128 +76,180 @@ public class CartItemServiceTest {
                 product);
 
         cart.setCartItems(Sets.newHashSet(cartItem));
-
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(emptyCart));
     }
 
     @Test
-    public void testAddProductToEmptyCart() {
-        assertDoesNotThrow(() -> cartItemService.addProductToCart(0L, 0L, 5L));
+    public void testAddProductToCart() {
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(true);
 
-        assertFalse(emptyCart.getCartItems().isEmpty());
-        assertEquals(5L, emptyCart.getCartItems().stream().findFirst().get().getQuantity());
+        assertDoesNotThrow(() -> cartItemService.addProductToCart(2L, 1L, 5L));
 
-        verify(cartRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
-        verify(cartRepository, times(1)).save(any(Cart.class));
+        verify(cartRepository, times(1)).existsById(2L);
+        verify(productRepository, times(1)).existsById(1L);
+        verify(cartItemRepository, times(1)).upsertQuantity(2L, 1L, 5L);
+        verify(cartRepository, times(1)).incrementVersion(2L);
+        verify(cartRepository, never()).findById(anyLong());
     }
 
     @Test
-    public void testAddProductToCart() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+    public void testAddCachedProductToCart() {
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productCache.getIfPresent(anyLong())).thenReturn(ProductService.toProductDto(product));
 
-        assertDoesNotThrow(() -> cartItemService.addProductToCart(0L, 0L, 5L));
-        assertEquals(10L, cart.getCartItems().stream().findFirst().get().getQuantity());
+        assertDoesNotThrow(() -> cartItemService.addProductToCart(2L, 1L, 5L));
 
-        verify(cartRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
-        verify(cartRepository, times(1)).save(any(Cart.class));
+        verify(productRepository, never()).existsById(anyLong());
+        verify(cartItemRepository, times(1)).upsertQuantity(2L, 1L, 5L);
     }
 
     @Test
     public void testAddProductToCartException() {
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.addProductToCart(0L, 0L, 5L));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.addProductToCart(0L, 0L, 5L));
 
-        verify(cartRepository, times(2)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
+        verify(cartRepository, times(2)).existsById(anyLong());
+        verify(productRepository, times(1)).existsById(anyLong());
+        verify(cartItemRepository, never()).upsertQuantity(anyLong(), anyLong(), anyLong());
+        verify(cartRepository, never()).incrementVersion(anyLong());
+    }
+
+    @Test
+    public void testAddDeletedProductToCart() {
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(true);
+        doThrow(foreignKeyViolation(CartItem.PRODUCT_CONSTRAINT))
+                .doThrow(foreignKeyViolation(CartItem.CART_CONSTRAINT))
+                .doThrow(foreignKeyViolation("other_constraint"))
+                .when(cartItemRepository).upsertQuantity(2L, 1L, 5L);
+
+        final ResourceNotFoundException productException = assertThrowsExactly(ResourceNotFoundException.class,
+                () -> cartItemService.addProductToCart(2L, 1L, 5L));
+        assertEquals("No product found with id: 1", productException.getMessage());
+
+        final ResourceNotFoundException cartException = assertThrowsExactly(ResourceNotFoundException.class,
+                () -> cartItemService.addProductToCart(2L, 1L, 5L));
+        assertEquals("No cart found with id: 2", cartException.getMessage());
+
+        assertThrowsExactly(DataIntegrityViolationException.class, () -> cartItemService.addProductToCart(2L, 1L, 5L));
+
+        verify(cartRepository, times(3)).existsById(2L);
+        verify(productRepository, times(3)).existsById(1L);
+        verify(cartRepository, never()).incrementVersion(anyLong());
     }
 
     @Test
     public void testGetCartItem() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+        when(cartItemRepository.findByCartIdAndProductId(anyLong(), anyLong())).thenReturn(Optional.of(cartItem));
 
-        final CartItemDto cartItemDto = assertDoesNotThrow(() -> cartItemService.getCartItem(0L, 0L));
+        final CartItemDto cartItemDto = assertDoesNotThrow(() -> cartItemService.getCartItem(2L, 1L));
         assertEquals(CartItemService.toCartItemDto(cartItem), cartItemDto);
 
-        verify(cartRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
+        verify(cartItemRepository, times(1)).findByCartIdAndProductId(2L, 1L);
+        verify(cartRepository, never()).findById(anyLong());
     }
 
     @Test
     public void testGetCartItemException() {
+        when(cartItemRepository.findByCartIdAndProductId(anyLong(), anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(true);
+
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.getCartItem(0L, 0L));
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(productRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.getCartItem(0L, 0L));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.getCartItem(0L, 0L));
 
-        verify(cartRepository, times(3)).findById(anyLong());
-        verify(productRepository, times(2)).findById(anyLong());
+        verify(cartItemRepository, times(3)).findByCartIdAndProductId(anyLong(), anyLong());
+        verify(cartRepository, times(3)).existsById(anyLong());
+        verify(productRepository, times(2)).existsById(anyLong());
     }
 
     @Test
     public void testUpdateItemQuantity() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+        when(cartItemRepository.updateQuantity(anyLong(), anyLong(), anyLong())).thenReturn(1);
 
-        assertDoesNotThrow(() -> cartItemService.updateItemQuantity(0L, 0L, 15L));
-        assertEquals(15L, cart.getCartItems().stream().findFirst().get().getQuantity());
+        assertDoesNotThrow(() -> cartItemService.updateItemQuantity(2L, 1L, 15L));
 
-        verify(cartRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
+        verify(cartItemRepository, times(1)).updateQuantity(2L, 1L, 15L);
+        verify(cartRepository, times(1)).incrementVersion(2L);
+        verify(cartRepository, never()).existsById(anyLong());
     }
 
     @Test
-    public void testUpdateItemQuantityException() {
-        assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.updateItemQuantity(0L, 0L, 15L));
+    public void testUpdateItemQuantityVersion() {
+        when(cartItemRepository.updateQuantity(anyLong(), anyLong(), anyLong())).thenReturn(1);
+        when(cartRepository.incrementVersion(2L, 3L)).thenReturn(1);
+        when(cartRepository.incrementVersion(2L, 4L)).thenReturn(0);
+
+        assertDoesNotThrow(() -> cartItemService.updateItemQuantity(2L, 1L, 15L, 3L));
+        assertThrowsExactly(PreconditionFailedException.class, () -> cartItemService.updateItemQuantity(2L, 1L, 15L, 4L));
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        verify(cartItemRepository, times(2)).updateQuantity(2L, 1L, 15L);
+        verify(cartRepository, never()).incrementVersion(anyLong());
+    }
+
+    @Test
+    public void testUpdateItemQuantityException() {
+        when(cartItemRepository.updateQuantity(anyLong(), anyLong(), anyLong())).thenReturn(0);
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(true);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.updateItemQuantity(0L, 0L, 15L));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        when(cartRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.updateItemQuantity(0L, 0L, 15L));
 
-        verify(cartRepository, times(3)).findById(anyLong());
-        verify(productRepository, times(2)).findById(anyLong());
+        verify(cartItemRepository, times(2)).updateQuantity(anyLong(), anyLong(), anyLong());
+        verify(cartRepository, times(2)).existsById(anyLong());
+        verify(productRepository, times(1)).existsById(anyLong());
     }
 
     @Test
     public void testDeleteItem() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+        when(cartItemRepository.deleteByCartIdAndProductId(anyLong(), anyLong())).thenReturn(1);
 
-        assertDoesNotThrow(() -> cartItemService.deleteItem(0L, 0L));
-        assertTrue(cart.getCartItems().isEmpty());
+        assertDoesNotThrow(() -> cartItemService.deleteItem(2L, 1L));
 
-        verify(cartRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
-        verify(cartItemRepository, times(1)).deleteById(anyLong());
-        verify(cartRepository, times(1)).save(any(Cart.class));
+        verify(cartItemRepository, times(1)).deleteByCartIdAndProductId(2L, 1L);
+        verify(cartRepository, times(1)).incrementVersion(2L);
+        verify(cartRepository, never()).existsById(anyLong());
     }
 
     @Test
     public void testDeleteItemException() {
+        when(cartItemRepository.deleteByCartIdAndProductId(anyLong(), anyLong())).thenReturn(0);
+        when(cartRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.existsById(anyLong())).thenReturn(false);
+
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.deleteItem(0L, 0L));
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.existsById(anyLong())).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.deleteItem(0L, 0L));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
 
-        assertThrowsExactly(ResourceNotFoundException.class, () -> cartItemService.deleteItem(0L, 0L));
+        verify(cartItemRepository, times(2)).deleteByCartIdAndProductId(anyLong(), anyLong());
+        verify(cartRepository, times(2)).existsById(anyLong());
+        verify(productRepository, times(1)).existsById(anyLong());
+    }
 
-        verify(cartRepository, times(3)).findById(anyLong());
-        verify(productRepository, times(2)).findById(anyLong());
+    /**
+     * Create the exception thrown when a write violates a foreign key
+     * @param constraintName The name of the violated foreign key
+     * @return The exception
+     */
+    private static DataIntegrityViolationException foreignKeyViolation(final String constraintName) {
+        return new DataIntegrityViolationException("test", new ConstraintViolationException(
+                "test", new SQLException("foreign key violated"), constraintName));
     }
 }
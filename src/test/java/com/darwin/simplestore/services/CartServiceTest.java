@@ -5,20 +5,32 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.RequestCoalescer;
 import com.darwin.simplestore.dto.CartDto;
+import com.darwin.simplestore.dto.CartItemDto;
+import com.darwin.simplestore.dto.CartItemSummaryDto;
+import com.darwin.simplestore.dto.CartSummaryDto;
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductDto;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartItemRepository;
 import com.darwin.simplestore.repositories.CartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,12 +46,18 @@ public class CartServiceTest {
     @Mock
     private CartRepository cartRepository;
 
+    @Spy
+    private RequestCoalescer requestCoalescer = new RequestCoalescer(new SimpleMeterRegistry());
+
+    @Spy
+    private MissingIdCache missingIdCache = new MissingIdCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+
     @InjectMocks
     private CartService cartService;
 
     @Test
     public void testCreateCart() {
-        Cart cart = new Cart(1L, Collections.emptySet());
+        Cart cart = new Cart(1L, Collections.emptySet(), null);
 
         when(cartRepository.save(any(Cart.class))).thenReturn(cart);
 
@@ -51,28 +69,78 @@ public class CartServiceTest {
 
     @Test
     public void testGetCart() {
-        Cart cart = new Cart(1L, Collections.emptySet());
+        Cart cart = new Cart(1L, Collections.emptySet(), null);
 
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(cart));
 
         final CartDto cartDto = assertDoesNotThrow(() -> cartService.getCart(1L));
         assertEquals(CartService.toCartDto(cart), cartDto);
 
-        verify(cartRepository, times(1)).findById(anyLong());
+        verify(cartRepository, times(1)).findWithItemsById(anyLong());
     }
 
     @Test
     public void testGetCartException() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCart(1L));
+
+        verify(cartRepository, times(1)).findWithItemsById(anyLong());
+    }
+
+    @Test
+    public void testGetCartMissing() {
+        final Cart cart = new Cart(1L, Collections.emptySet(), null);
 
+        when(cartRepository.findWithItemsById(1L)).thenReturn(Optional.empty(), Optional.of(cart));
+        when(cartRepository.save(any(Cart.class))).thenReturn(cart);
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCart(1L));
         assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCart(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCartSummary(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCartVersionTag(1L));
+
+        verify(cartRepository, times(1)).findWithItemsById(1L);
+        verifyNoInteractions(cartItemRepository);
+
+        assertDoesNotThrow(() -> cartService.createCart());
+        assertEquals(CartService.toCartDto(cart), cartService.getCart(1L));
+
+        verify(cartRepository, times(2)).findWithItemsById(1L);
+    }
+
+    @Test
+    public void testGetCartSummary() {
+        final List<CartItemSummaryDto> cartItems = List.of(new CartItemSummaryDto(1L, 1L, "Product", 1.0, 2L));
 
-        verify(cartRepository, times(1)).findById(anyLong());
+        when(cartItemRepository.findSummariesByCartId(1L)).thenReturn(cartItems);
+
+        final CartSummaryDto cartSummary = assertDoesNotThrow(() -> cartService.getCartSummary(1L));
+        assertEquals(new CartSummaryDto(1L, cartItems), cartSummary);
+
+        verify(cartRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    public void testGetCartSummaryEmpty() {
+        when(cartItemRepository.findSummariesByCartId(1L)).thenReturn(List.of());
+        when(cartRepository.existsById(1L)).thenReturn(true);
+
+        final CartSummaryDto cartSummary = assertDoesNotThrow(() -> cartService.getCartSummary(1L));
+        assertEquals(new CartSummaryDto(1L, List.of()), cartSummary);
+    }
+
+    @Test
+    public void testGetCartSummaryException() {
+        when(cartItemRepository.findSummariesByCartId(1L)).thenReturn(List.of());
+        when(cartRepository.existsById(1L)).thenReturn(false);
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCartSummary(1L));
     }
 
     @Test
     public void testClearCart() {
-        Cart cart = new Cart(1L, Collections.emptySet());
+        Cart cart = new Cart(1L, Collections.emptySet(), null);
 
         when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
         when(cartRepository.existsById(anyLong())).thenReturn(true);
@@ -80,9 +148,29 @@ public class CartServiceTest {
         assertDoesNotThrow(() -> cartService.clearCart(1L));
 
         verify(cartRepository, times(1)).existsById(anyLong());
+        verify(cartRepository, times(1)).incrementVersion(1L);
         verify(cartItemRepository, times(1)).deleteAllByCartId(anyLong());
     }
 
+    @Test
+    public void testGetCartVersionTag() {
+        when(cartRepository.findVersionTagById(1L)).thenReturn(Optional.of("2.5"));
+        when(cartRepository.findVersionTagById(2L)).thenReturn(Optional.empty());
+
+        assertEquals("2.5", cartService.getCartVersionTag(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> cartService.getCartVersionTag(2L));
+    }
+
+    @Test
+    public void testVersionTag() {
+        final ProductDto product1 = new ProductDto(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER, null, 2L);
+        final ProductDto product2 = new ProductDto(2L, "p2", "d2", 1.0, 1L, ProductCategory.OTHER, null, 3L);
+        final CartDto cartDto = new CartDto(1L, Set.of(new CartItemDto(1L, product1, 1L), new CartItemDto(2L, product2, 1L)), 4L);
+
+        assertEquals("4.5", CartService.versionTag(cartDto));
+        assertEquals("4.0", CartService.versionTag(new CartDto(1L, Set.of(), 4L)));
+    }
+
     @Test
     public void testClearCartException() {
         when(cartRepository.existsById(anyLong())).thenReturn(false);
@@ -94,7 +182,7 @@ public class CartServiceTest {
 
     @Test
     public void testDeleteCart() {
-        Cart cart = new Cart(1L, Collections.emptySet());
+        Cart cart = new Cart(1L, Collections.emptySet(), null);
 
         when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
         when(cartRepository.existsById(anyLong())).thenReturn(true);
@@ -5,98 +5,519 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.ImageContentCache;
+import com.darwin.simplestore.cache.RequestCoalescer;
+import com.darwin.simplestore.dto.Base64Content;
+import com.darwin.simplestore.dto.ImageContentDto;
 import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
+import com.darwin.simplestore.dto.ImageSourceDto;
+import com.darwin.simplestore.dto.ImageVariant;
 import com.darwin.simplestore.dto.NewImageDto;
 import com.darwin.simplestore.entities.Image;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
+import com.darwin.simplestore.repositories.ImageMigrationRepository.LegacyImage;
 import com.darwin.simplestore.repositories.ImageRepository;
+import com.darwin.simplestore.storage.FileSystemImageStorage;
+import com.darwin.simplestore.storage.ImageStorage;
+import com.darwin.simplestore.storage.StoredImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 @ActiveProfiles("dev")
 public class ImageServiceTest {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] CONTENT = "GIF89a world".getBytes(StandardCharsets.UTF_8);
+
     @Mock
     private ImageRepository imageRepository;
 
-    @InjectMocks
-    private ImageService imageService;
+    @Mock
+    private ImageVariantService imageVariantService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path storagePath;
 
+    private ImageStorage imageStorage;
+    private ImageContentCache imageContentCache;
+    private ImageService imageService;
     private Image image;
 
     @BeforeEach
-    public void setUp() {
-        image = new Image(
-                1L,
-                "base64"
-        );
+    public void setUp() throws Exception {
+        imageStorage = spy(new FileSystemImageStorage(storagePath));
+        imageContentCache = new ImageContentCache(new SimpleMeterRegistry(), DataSize.ofMegabytes(1));
+        imageService = new ImageService(imageRepository, imageStorage, imageVariantService, imageContentCache, new RequestCoalescer(new SimpleMeterRegistry()), transactionManager);
+
+        final StoredImage storedImage = imageStorage.store(new ByteArrayInputStream(CONTENT), Image.MAX_SIZE);
+        image = new Image(1L, null, "image/gif", storedImage.size(), storedImage.hash(), storedImage.key(), Instant.parse("2025-01-01T00:00:00Z"), null, null, null, 0);
+        clearInvocations(imageStorage);
     }
 
     @Test
-    public void testAddImage() {
-        when(imageRepository.save(any(Image.class))).thenReturn(image);
+    public void testAddImage() throws Exception {
+        final AtomicReference<Image> saved = new AtomicReference<>();
+        when(imageRepository.save(any(Image.class))).thenAnswer(i -> {
+            final Image newImage = i.getArgument(0);
+            newImage.setId(1L);
+            saved.set(newImage);
+
+            return newImage;
+        });
+        when(imageRepository.findSourceById(1L)).thenAnswer(i -> Optional.of(source(saved.get())));
 
-        final ImageDto imageDto = assertDoesNotThrow(() -> imageService.addImage(new NewImageDto("base64")));
+        final ImageDto imageDto = assertDoesNotThrow(() -> imageService.addImage(new NewImageDto(Base64Content.decode("R0lGODlhIHdvcmxk"))));
 
-        assertEquals(ImageService.toImageDto(image), imageDto);
+        assertEquals(1L, imageDto.id());
+        assertArrayEquals(CONTENT, imageDto.base64Content().getInputStream().readAllBytes());
 
         verify(imageRepository, times(1)).save(any(Image.class));
     }
 
     @Test
-    public void testGetImage() {
-        when(imageRepository.findById(anyLong())).thenReturn(Optional.of(image));
+    public void testAddImageContent() {
+        when(imageRepository.save(any(Image.class))).thenAnswer(i -> i.getArgument(0));
+
+        final ImageMetadataDto png = assertDoesNotThrow(() -> imageService.addImage(new ByteArrayInputStream(PNG_HEADER)));
+        final ImageMetadataDto gif = assertDoesNotThrow(() -> imageService.addImage(new ByteArrayInputStream(CONTENT)));
+
+        assertEquals("image/png", png.mediaType());
+        assertEquals(8L, png.size());
+        assertEquals(64, png.hash().length());
+        assertEquals("image/gif", gif.mediaType());
+
+        verify(imageRepository, times(2)).save(any(Image.class));
+        verify(imageVariantService, times(2)).generateVariants(anyString());
+    }
+
+    @Test
+    public void testAddUnsupportedImageContent() throws Exception {
+        final byte[] html = "<html><script>alert(1)</script></html>".getBytes(StandardCharsets.UTF_8);
+        final byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8);
+
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.addImage(new ByteArrayInputStream(html)));
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.addImage(new ByteArrayInputStream(svg)));
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.updateImage(
+                new ImageDto(1L, Base64Content.decode(Base64.getEncoder().encodeToString(html)))));
+
+        verify(imageStorage, never()).store(any(InputStream.class), anyLong());
+        verify(imageRepository, never()).save(any(Image.class));
+    }
+
+    @Test
+    public void testDetectMediaType() {
+        final byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0};
+        final byte[] webp = "RIFF\0\0\0\0WEBPVP8 ".getBytes(StandardCharsets.ISO_8859_1);
+        final byte[] riff = "RIFF\0\0\0\0WAVEfmt ".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertEquals(Optional.of("image/png"), ImageService.detectMediaType(PNG_HEADER));
+        assertEquals(Optional.of("image/jpeg"), ImageService.detectMediaType(jpeg));
+        assertEquals(Optional.of("image/gif"), ImageService.detectMediaType(CONTENT));
+        assertEquals(Optional.of("image/webp"), ImageService.detectMediaType(webp));
+        assertEquals(Optional.empty(), ImageService.detectMediaType(riff));
+        assertEquals(Optional.empty(), ImageService.detectMediaType(new byte[] {(byte) 0x89, 'P'}));
+    }
+
+    @Test
+    public void testAddImageDimensions() throws Exception {
+        when(imageRepository.save(any(Image.class))).thenAnswer(i -> i.getArgument(0));
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        final ImageMetadataDto decodable = assertDoesNotThrow(() -> imageService.addImage(
+                new ByteArrayInputStream(png.toByteArray())));
+        final ImageMetadataDto undecodable = assertDoesNotThrow(() -> imageService.addImage(
+                new ByteArrayInputStream(CONTENT)));
+
+        assertEquals(30, decodable.width());
+        assertEquals(20, decodable.height());
+        assertNotNull(decodable.createdAt());
+        assertNull(undecodable.width());
+        assertNull(undecodable.height());
+    }
+
+    @Test
+    public void testAddDuplicateImage() {
+        when(imageRepository.findByHash(image.getHash())).thenReturn(Optional.of(image));
+
+        final ImageMetadataDto imageMetadataDto = assertDoesNotThrow(() -> imageService.addImage(
+                new ByteArrayInputStream(CONTENT)));
+
+        assertEquals(ImageService.toImageMetadataDto(image), imageMetadataDto);
+        assertTrue(imageStorage.load(image.getStorageKey()).exists());
+
+        verify(imageRepository, never()).save(any(Image.class));
+        verify(imageStorage, never()).delete(anyString());
+        verify(imageVariantService, never()).generateVariants(anyString());
+    }
+
+    @Test
+    public void testAddConcurrentDuplicateImage() {
+        when(imageRepository.findByHash(anyString())).thenReturn(Optional.empty(), Optional.of(image));
+        when(imageRepository.save(any(Image.class))).thenThrow(new DataIntegrityViolationException("test"));
+
+        final ImageMetadataDto imageMetadataDto = assertDoesNotThrow(() -> imageService.addImage(
+                new ByteArrayInputStream(CONTENT)));
+
+        assertEquals(image.getId(), imageMetadataDto.id());
+
+        verify(imageStorage, never()).delete(anyString());
+    }
+
+    @Test
+    public void testAddImageException() {
+        final byte[] tooLarge = Arrays.copyOf(PNG_HEADER, Image.MAX_SIZE + 1);
+
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.addImage(new NewImageDto(null)));
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.addImage(
+                new ByteArrayInputStream(tooLarge)));
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.addImage(
+                new ByteArrayInputStream(new byte[0])));
+
+        verify(imageRepository, never()).save(any(Image.class));
+    }
+
+    @Test
+    public void testAddImageSaveFailure() {
+        when(imageRepository.save(any(Image.class))).thenThrow(new IllegalStateException("test"));
+
+        assertThrowsExactly(IllegalStateException.class, () -> imageService.addImage(new ByteArrayInputStream(PNG_HEADER)));
+
+        verify(imageStorage, times(1)).delete(anyString());
+    }
+
+    @Test
+    public void testAddImageContentDeleted() {
+        // The last image using the content is deleted after the upload stored it, before the upload takes the lock
+        when(imageRepository.lockContent(image.getHash())).thenAnswer(i -> {
+            imageStorage.delete(image.getStorageKey());
+            return 1;
+        });
+
+        assertThrowsExactly(IllegalStateException.class, () -> imageService.addImage(new ByteArrayInputStream(CONTENT)));
+
+        verify(imageRepository, never()).save(any(Image.class));
+    }
+
+    @Test
+    public void testAddImageLocksContent() {
+        when(imageRepository.save(any(Image.class))).thenAnswer(i -> i.getArgument(0));
+
+        assertDoesNotThrow(() -> imageService.addImage(new ByteArrayInputStream(CONTENT)));
+
+        final InOrder inOrder = inOrder(imageRepository);
+        inOrder.verify(imageRepository).lockContent(image.getHash());
+        inOrder.verify(imageRepository).findByHash(image.getHash());
+        inOrder.verify(imageRepository).save(any(Image.class));
+    }
+
+    @Test
+    public void testGetImage() throws Exception {
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
 
         final ImageDto imageDto = assertDoesNotThrow(() -> imageService.getImage(image.getId()));
-        assertEquals(ImageService.toImageDto(image), imageDto);
+        assertEquals(1L, imageDto.id());
+        assertArrayEquals(CONTENT, imageDto.base64Content().getInputStream().readAllBytes());
 
-        verify(imageRepository, times(1)).findById(anyLong());
+        verify(imageRepository, times(1)).findSourceById(anyLong());
+    }
+
+    @Test
+    public void testGetImageContent() throws Exception {
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(image.getId()));
+
+        assertEquals(image.getHash(), imageContent.hash());
+        assertEquals(12L, imageContent.size());
+        assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
+
+        verify(imageRepository, times(1)).findSourceById(anyLong());
+    }
+
+    @Test
+    public void testGetImageVariant() throws Exception {
+        final Resource variant = new ByteArrayResource(new byte[]{1, 2, 3});
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
+        when(imageVariantService.getVariant(image.getStorageKey(), ImageVariant.THUMB)).thenReturn(Optional.of(variant));
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(image.getId(), ImageVariant.THUMB));
+
+        assertEquals("image/jpeg", imageContent.mediaType());
+        assertEquals(3L, imageContent.size());
+        assertEquals(image.getHash() + "-thumb", imageContent.hash());
+        assertEquals(image.getLastModified(), imageContent.lastModified());
+        assertArrayEquals(new byte[]{1, 2, 3}, imageContent.content().getContentAsByteArray());
+    }
+
+    @Test
+    public void testGetImageVariantOriginal() throws Exception {
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
+        when(imageVariantService.getVariant(anyString(), any(ImageVariant.class))).thenReturn(Optional.empty());
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(image.getId(), ImageVariant.LARGE));
+
+        assertEquals("image/gif", imageContent.mediaType());
+        assertEquals(image.getHash(), imageContent.hash());
+        assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
+    }
+
+    @Test
+    public void testGetImageMetadata() {
+        when(imageRepository.findMetadataById(anyLong())).thenReturn(Optional.of(ImageService.toImageMetadataDto(image)));
+
+        final ImageMetadataDto imageMetadataDto = assertDoesNotThrow(() -> imageService.getImageMetadata(image.getId()));
+
+        assertEquals(ImageService.toImageMetadataDto(image), imageMetadataDto);
+        assertEquals(image.getLastModified(), imageMetadataDto.lastModified());
+
+        verify(imageRepository, never()).findById(anyLong());
+        verify(imageStorage, never()).load(anyString());
+    }
+
+    @Test
+    public void testGetImageMetadataException() {
+        when(imageRepository.findMetadataById(anyLong())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.getImageMetadata(1L));
+    }
+
+    @Test
+    public void testGetImagesMetadata() {
+        final Pageable pageable = PageRequest.of(0, 5);
+        final Page<ImageMetadataDto> page = new PageImpl<>(List.of(ImageService.toImageMetadataDto(image)), pageable, 1);
+        when(imageRepository.findAllMetadata(pageable)).thenReturn(page);
+
+        assertEquals(page, imageService.getImagesMetadata(pageable));
+
+        verify(imageStorage, never()).load(anyString());
+    }
+
+    @Test
+    public void testGetImageContentCached() throws Exception {
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
+
+        for (int i = 0; i < 3; i++) {
+            final ImageContentDto imageContent = imageService.getImageContent(image.getId());
+
+            assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
+        }
+
+        assertEquals(CONTENT.length, imageContentCache.residentBytes());
+
+        verify(imageStorage, times(1)).load(image.getStorageKey());
+    }
+
+    @Test
+    public void testGetLegacyImageContent() throws Exception {
+        final Image legacyImage = new Image(2L, null, "image/gif", 12L, image.getHash(), null, null, null, null, null, 0);
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(legacyImage)));
+        when(imageRepository.findLegacyImage(2L, false)).thenReturn(Optional.of(new LegacyImage(2L, CONTENT, null)));
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(legacyImage.getId()));
+
+        assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
+        assertEquals(CONTENT.length, imageContent.size());
+
+        verify(imageStorage, never()).load(anyString());
+        verify(imageRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testGetLegacyBase64ImageContent() throws Exception {
+        // Images of the original schema which were not migrated yet only have base64 content
+        final Image legacyImage = new Image(2L, null, "image/gif", 12L, image.getHash(), null, null, null, null, null, 0);
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(legacyImage)));
+        when(imageRepository.hasBase64Column()).thenReturn(true);
+        when(imageRepository.findLegacyImage(2L, true)).thenReturn(Optional.of(
+                new LegacyImage(2L, null, Base64.getEncoder().encodeToString(CONTENT))));
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(legacyImage.getId()));
+
+        assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
+    }
+
+    @Test
+    public void testGetLegacyImageWithoutContent() {
+        final Image legacyImage = new Image(2L, null, "image/gif", 12L, image.getHash(), null, null, null, null, null, 0);
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(legacyImage)));
+        when(imageRepository.findLegacyImage(2L, false)).thenReturn(Optional.of(new LegacyImage(2L, null, null)));
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.getImageContent(legacyImage.getId()));
+    }
+
+    @Test
+    public void testGetLegacyImageMigratedConcurrently() throws Exception {
+        final Image legacyImage = new Image(1L, null, "image/gif", 12L, image.getHash(), null, null, null, null, null, 0);
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(legacyImage)), Optional.of(source(image)));
+        when(imageRepository.findLegacyImage(1L, false)).thenReturn(Optional.empty());
+
+        final ImageContentDto imageContent = assertDoesNotThrow(() -> imageService.getImageContent(legacyImage.getId()));
+
+        assertArrayEquals(CONTENT, imageContent.content().getContentAsByteArray());
     }
 
     @Test
     public void testGetImageException() {
-        when(imageRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.empty());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.getImage(image.getId()));
 
-        verify(imageRepository, times(1)).findById(anyLong());
+        verify(imageRepository, times(1)).findSourceById(anyLong());
     }
 
     @Test
-    public void testUpdateImage() {
-        when(imageRepository.existsById(anyLong())).thenReturn(true);
-        when(imageRepository.save(any(Image.class))).thenAnswer(i -> {
-            final Image newImage = i.getArgument(0);
-            image.setBase64Image(newImage.getBase64Image());
+    public void testUpdateImage() throws Exception {
+        final String previousKey = image.getStorageKey();
+        when(imageRepository.findById(anyLong())).thenReturn(Optional.of(image));
+        when(imageRepository.save(any(Image.class))).thenAnswer(i -> i.getArgument(0));
 
-            return image;
-        });
+        assertDoesNotThrow(() -> imageService.updateImage(new ImageDto(1L, Base64Content.decode("R0lGODlh"))));
 
-        assertDoesNotThrow(() -> imageService.updateImage(new ImageDto(1L, "test")));
-        assertEquals("test", image.getBase64Image());
+        assertNotEquals(previousKey, image.getStorageKey());
+        assertEquals("R0lGODlh", Base64.getEncoder().encodeToString(imageStorage.load(image.getStorageKey()).getContentAsByteArray()));
+        assertFalse(imageStorage.load(previousKey).exists());
+        assertTrue(image.getLastModified().isAfter(Instant.parse("2025-01-01T00:00:00Z")));
 
-        verify(imageRepository, times(1)).existsById(anyLong());
+        verify(imageRepository, times(1)).findById(anyLong());
         verify(imageRepository, times(1)).save(any(Image.class));
     }
 
+    @Test
+    public void testUpdateImageDuplicate() {
+        final Image other = new Image(2L, null, "image/gif", 4L, "hash", "ab/key", null, null, null, null, 0);
+        when(imageRepository.findById(anyLong())).thenReturn(Optional.of(other));
+        when(imageRepository.findByHash(anyString())).thenReturn(Optional.of(image));
+
+        assertThrowsExactly(ResourceExistsException.class, () -> imageService.updateImage(new ImageDto(2L, Base64Content.decode("R0lGODlhIHdvcmxk"))));
+
+        assertTrue(imageStorage.load(image.getStorageKey()).exists());
+
+        verify(imageRepository, never()).save(any(Image.class));
+    }
+
+    @Test
+    public void testUpdateSharedImage() {
+        // Products which uploaded identical content share the image, so updating it would change all of them
+        final Image shared = new Image(1L, null, "image/gif", 12L, image.getHash(), image.getStorageKey(), null, null, null, null, 2);
+        when(imageRepository.findById(anyLong())).thenReturn(Optional.of(shared));
+
+        assertThrowsExactly(InvalidRequestException.class, () -> imageService.updateImage(new ImageDto(1L, Base64Content.decode("R0lGODlh"))));
+
+        assertEquals(image.getHash(), shared.getHash());
+        assertTrue(imageStorage.load(image.getStorageKey()).exists());
+
+        verify(imageRepository, never()).save(any(Image.class));
+        verify(imageStorage, times(1)).delete(anyString());
+        verify(imageStorage, never()).delete(image.getStorageKey());
+    }
+
     @Test
     public void testUpdateImageException() {
-        when(imageRepository.existsById(anyLong())).thenReturn(false);
+        when(imageRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.updateImage(new ImageDto(1L, Base64Content.decode("R0lGODlh"))));
+
+        verify(imageRepository, times(1)).findById(anyLong());
+    }
+
+    @Test
+    public void testReleaseImageContentReused() {
+        // An upload of the same content saved a new image before the content was checked
+        when(imageRepository.release(anyLong())).thenReturn(1);
+        when(imageRepository.deleteIfUnreferenced(anyLong())).thenReturn(1);
+        when(imageRepository.existsByStorageKey(image.getStorageKey())).thenReturn(true);
+
+        imageService.releaseImage(image);
+
+        assertTrue(imageStorage.load(image.getStorageKey()).exists());
 
-        assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.updateImage(new ImageDto(1L, "test")));
+        verify(imageRepository, times(2)).lockContent(image.getHash());
+        verify(imageStorage, never()).delete(anyString());
+    }
+
+    @Test
+    public void testRetainImage() {
+        when(imageRepository.retain(1L)).thenReturn(1);
+        when(imageRepository.retain(2L)).thenReturn(0);
+
+        assertDoesNotThrow(() -> imageService.retainImage(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> imageService.retainImage(2L));
+    }
+
+    @Test
+    public void testReleaseImage() {
+        when(imageRepository.findSourceById(anyLong())).thenReturn(Optional.of(source(image)));
+        when(imageRepository.release(anyLong())).thenReturn(1);
+        when(imageRepository.deleteIfUnreferenced(anyLong())).thenReturn(0, 1);
+
+        imageService.releaseImage(image);
+
+        assertTrue(imageStorage.load(image.getStorageKey()).exists());
+
+        imageService.getImageContent(image.getId());
+
+        assertEquals(CONTENT.length, imageContentCache.residentBytes());
+
+        imageService.releaseImage(image);
+        imageService.releaseImage(null);
+
+        assertFalse(imageStorage.load(image.getStorageKey()).exists());
+        assertEquals(0, imageContentCache.residentBytes());
+
+        verify(imageRepository, times(2)).release(image.getId());
+        verify(imageStorage, times(1)).delete(image.getStorageKey());
+    }
 
-        verify(imageRepository, times(1)).existsById(anyLong());
+    /**
+     * Get the content location of an image, as read by the repository
+     * @param image The image entity
+     * @return The image and the key of its content
+     */
+    private static ImageSourceDto source(final Image image) {
+        return new ImageSourceDto(image.getId(), image.getMediaType(), image.getSize(), image.getHash(), image.getStorageKey(), image.getLastModified());
     }
 }
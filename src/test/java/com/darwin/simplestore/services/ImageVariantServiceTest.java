@@ -0,0 +1,161 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import com.darwin.simplestore.dto.ImageVariant;
+import com.darwin.simplestore.storage.FileSystemImageStorage;
+import com.darwin.simplestore.storage.ImageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ImageVariantServiceTest {
+    @TempDir
+    private Path storagePath;
+
+    private ImageStorage imageStorage;
+    private ImageVariantService imageVariantService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        imageStorage = spy(new FileSystemImageStorage(storagePath));
+        imageVariantService = new ImageVariantService(imageStorage, 2, 10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        imageVariantService.shutdown();
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        final Optional<byte[]> resized = ImageVariantService.resize(new ByteArrayInputStream(png(300, 200)), 64);
+
+        assertTrue(resized.isPresent());
+
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(resized.get()));
+
+        assertEquals(64, image.getWidth());
+        assertEquals(43, image.getHeight());
+    }
+
+    @Test
+    public void testResizeOriginal() throws Exception {
+        assertTrue(ImageVariantService.resize(new ByteArrayInputStream(png(50, 40)), 64).isEmpty());
+        assertTrue(ImageVariantService.resize(new ByteArrayInputStream("Hello world!".getBytes(StandardCharsets.UTF_8)), 64).isEmpty());
+    }
+
+    @Test
+    public void testReadDimensions() throws Exception {
+        assertEquals(Optional.of(new Dimension(300, 200)), ImageVariantService.readDimensions(new ByteArrayInputStream(png(300, 200))));
+        assertTrue(ImageVariantService.readDimensions(new ByteArrayInputStream("Hello world!".getBytes(StandardCharsets.UTF_8))).isEmpty());
+    }
+
+    @Test
+    public void testGetVariant() throws Exception {
+        final String key = imageStorage.store(new ByteArrayInputStream(png(2000, 1000)), Integer.MAX_VALUE).key();
+
+        final Optional<Resource> thumb = imageVariantService.getVariant(key, ImageVariant.THUMB);
+
+        assertTrue(thumb.isPresent());
+        assertEquals(64, ImageIO.read(thumb.get().getInputStream()).getWidth());
+        assertTrue(imageStorage.loadVariant(key, "thumb").exists());
+
+        assertTrue(imageVariantService.getVariant(key, ImageVariant.THUMB).isPresent());
+
+        verify(imageStorage, times(1)).storeVariant(eq(key), eq("thumb"), any());
+    }
+
+    @Test
+    public void testGetVariantUndecodable() throws Exception {
+        final String key = imageStorage.store(new ByteArrayInputStream("Hello world!".getBytes(StandardCharsets.UTF_8)), 100).key();
+
+        assertTrue(imageVariantService.getVariant(key, ImageVariant.THUMB).isEmpty());
+        assertTrue(imageVariantService.getVariant(key, ImageVariant.THUMB).isEmpty());
+
+        verify(imageStorage, times(1)).load(key);
+        verify(imageStorage, never()).storeVariant(any(), any(), any());
+    }
+
+    @Test
+    public void testGetVariantCoalesced() throws Exception {
+        final String key = imageStorage.store(new ByteArrayInputStream(png(1000, 1000)), Integer.MAX_VALUE).key();
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final ExecutorService requests = Executors.newFixedThreadPool(4);
+
+        doAnswer(invocation -> {
+            loading.await();
+
+            return invocation.callRealMethod();
+        }).when(imageStorage).load(key);
+
+        try {
+            final List<Future<Optional<Resource>>> results = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                results.add(requests.submit(() -> {
+                    started.countDown();
+
+                    return imageVariantService.getVariant(key, ImageVariant.SMALL);
+                }));
+            }
+
+            started.await();
+            loading.countDown();
+
+            for (Future<Optional<Resource>> result : results) {
+                assertTrue(result.get().isPresent());
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+
+        verify(imageStorage, times(1)).load(key);
+        verify(imageStorage, times(1)).storeVariant(eq(key), eq("small"), any());
+    }
+
+    @Test
+    public void testGenerateVariants() throws Exception {
+        final String key = imageStorage.store(new ByteArrayInputStream(png(2000, 1000)), Integer.MAX_VALUE).key();
+
+        imageVariantService.generateVariants(key);
+
+        for (ImageVariant variant : ImageVariant.values()) {
+            assertTrue(imageVariantService.getVariant(key, variant).isPresent());
+        }
+
+        verify(imageStorage, times(ImageVariant.values().length)).storeVariant(eq(key), any(), any());
+    }
+
+    private static byte[] png(final int width, final int height) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", output);
+
+        return output.toByteArray();
+    }
+}
@@ -5,10 +5,12 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.ProductCache;
+import com.darwin.simplestore.cache.ProductPageCache;
 import com.darwin.simplestore.dto.OrderDto;
 import com.darwin.simplestore.dto.OrderStatus;
 import com.darwin.simplestore.dto.ProductCategory;
-import com.darwin.simplestore.dto.ProductDto;
 import com.darwin.simplestore.entities.Cart;
 import com.darwin.simplestore.entities.CartItem;
 import com.darwin.simplestore.entities.Order;
@@ -18,16 +20,21 @@ import com.darwin.simplestore.exceptions.NotEnoughProductsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.CartRepository;
 import com.darwin.simplestore.repositories.OrderRepository;
+import com.darwin.simplestore.repositories.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.Duration;
 import java.util.Collections;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -48,7 +55,16 @@ public class OrderServiceTest {
     private CartService cartService;
 
     @Mock
-    private ProductService productService;
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductCache productCache;
+
+    @Mock
+    private ProductPageCache productPageCache;
+
+    @Spy
+    private MissingIdCache missingIdCache = new MissingIdCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
 
     @InjectMocks
     private OrderService orderService;
@@ -68,8 +84,8 @@ public class OrderServiceTest {
                 5.0,
                 10L,
                 ProductCategory.OTHER,
-                null
-        );
+                null,
+                null);
         product2 = new Product(
                 2L,
                 "p2",
@@ -77,11 +93,11 @@ public class OrderServiceTest {
                 5.0,
                 5L,
                 ProductCategory.OTHER,
-                null
-        );
+                null,
+                null);
         cart = new Cart(1L,
-                null
-        );
+                null,
+                null);
         final CartItem cartItem1 = new CartItem(
                 1L,
                 10L,
@@ -97,12 +113,12 @@ public class OrderServiceTest {
         cart.setCartItems(Set.of(cartItem1, cartItem2));
         order = new Order(1L,
                 cart,
-                OrderStatus.AWAITING_PAYMENT);
+                OrderStatus.AWAITING_PAYMENT, null);
     }
 
     @Test
     public void testAllProductsAvailable() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(cart));
 
         assertTrue(orderService.allProductsAvailable(cart.getId()));
 
@@ -110,27 +126,24 @@ public class OrderServiceTest {
 
         assertFalse(orderService.allProductsAvailable(cart.getId()));
 
-        verify(cartRepository, times(2)).findById(anyLong());
+        verify(cartRepository, times(2)).findWithItemsById(anyLong());
     }
 
     @Test
     public void testAllProductsAvailableException() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.empty());
         assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.allProductsAvailable(cart.getId()));
     }
 
     @Test
     public void testPlaceOrder() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
-        doAnswer(i -> {
-            final ProductDto productDto = i.getArgument(0);
-            if (Objects.equals(productDto.id(), product1.getId())) {
-                product1.setQuantity(productDto.quantity());
-            } else {
-                product2.setQuantity(productDto.quantity());
-            }
-            return null;
-        }).when(productService).updateProductById(any(ProductDto.class));
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(cart));
+        when(productRepository.decrementQuantities(anyMap())).thenAnswer(i -> {
+            final Map<Long, Long> quantitiesById = i.getArgument(0);
+            product1.setQuantity(product1.getQuantity() - quantitiesById.get(product1.getId()));
+            product2.setQuantity(product2.getQuantity() - quantitiesById.get(product2.getId()));
+            return List.of();
+        });
 
         doAnswer(i -> {
             cart.setCartItems(Collections.emptySet());
@@ -138,8 +151,6 @@ public class OrderServiceTest {
         }).when(cartService).clearCart(anyLong());
 
         when(orderRepository.save(any(Order.class))).thenReturn(order);
-        when(cartService.getCart(anyLong())).thenReturn(CartService.toCartDto(cart));
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
 
         assertDoesNotThrow(() -> orderService.placeOrder(cart.getId()));
 
@@ -147,23 +158,32 @@ public class OrderServiceTest {
         assertEquals(0L, product1.getQuantity());
         assertEquals(1L, product2.getQuantity());
 
-        verify(cartRepository, times(2)).findById(anyLong());
-        verify(cartService, times(1)).getCart(anyLong());
+        verify(cartRepository, times(1)).findWithItemsById(anyLong());
+        verify(productRepository, times(1)).decrementQuantities(Map.of(1L, 10L, 2L, 4L));
+        verify(productCache, times(1)).invalidateAll(Set.of(1L, 2L));
+        verify(productPageCache, times(1)).invalidate(ProductCategory.OTHER);
         verify(cartService, times(1)).clearCart(anyLong());
-        verify(productService, times(2)).updateProductById(any(ProductDto.class));
     }
 
     @Test
     public void testPlaceOrderException() {
-        when(cartRepository.findById(anyLong())).thenReturn(Optional.of(cart));
-        product2.setQuantity(1L);
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(cart));
+        when(productRepository.decrementQuantities(anyMap())).thenReturn(List.of(2L));
 
         assertThrowsExactly(NotEnoughProductsException.class, () -> orderService.placeOrder(cart.getId()));
+
+        when(cartRepository.findWithItemsById(anyLong())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.placeOrder(cart.getId()));
+
+        verify(productRepository, times(1)).decrementQuantities(anyMap());
+        verify(cartService, never()).clearCart(anyLong());
+        verify(orderRepository, never()).save(any(Order.class));
     }
 
     @Test
     public void testGetOrder() {
-        when(orderRepository.findById(anyLong())).thenReturn(Optional.of(order));
+        when(orderRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(order));
 
         final OrderDto orderDto = OrderService.toOrderDto(order);
         final OrderDto foundDto = orderService.getOrder(order.getId());
@@ -173,16 +193,37 @@ public class OrderServiceTest {
 
     @Test
     public void testGetOrderException() {
-        when(orderRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(orderRepository.findWithItemsById(anyLong())).thenReturn(Optional.empty());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.getOrder(order.getId()));
 
-        verify(orderRepository, times(1)).findById(anyLong());
+        verify(orderRepository, times(1)).findWithItemsById(anyLong());
+    }
+
+    @Test
+    public void testGetOrderMissing() {
+        when(orderRepository.findWithItemsById(order.getId())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.getOrder(order.getId()));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.getOrder(order.getId()));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.getOrderVersionTag(order.getId()));
+
+        verify(orderRepository, times(1)).findWithItemsById(order.getId());
+        verify(orderRepository, never()).findVersionTagById(anyLong());
+    }
+
+    @Test
+    public void testGetOrderVersionTag() {
+        when(orderRepository.findVersionTagById(1L)).thenReturn(Optional.of("1.2.5"));
+        when(orderRepository.findVersionTagById(2L)).thenReturn(Optional.empty());
+
+        assertEquals("1.2.5", orderService.getOrderVersionTag(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.getOrderVersionTag(2L));
     }
 
     @Test
     public void testPayOrder() {
-        when(orderRepository.findById(anyLong())).thenReturn(Optional.of(order));
+        when(orderRepository.findWithItemsById(anyLong())).thenReturn(Optional.of(order));
         when(orderRepository.save(any(Order.class))).thenAnswer(i -> {
            final Order thisOrder = i.getArgument(0);
            order.setStatus(thisOrder.getStatus());
@@ -193,15 +234,15 @@ public class OrderServiceTest {
         assertEquals(OrderStatus.DELIVERED, order.getStatus());
 
         verify(orderRepository, times(1)).save(any(Order.class));
-        verify(orderRepository, times(1)).findById(anyLong());
+        verify(orderRepository, times(1)).findWithItemsById(anyLong());
     }
 
     @Test
     public void testPayOrderException() {
-        when(orderRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(orderRepository.findWithItemsById(anyLong())).thenReturn(Optional.empty());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> orderService.payOrder(order.getId()));
-        verify(orderRepository, times(1)).findById(anyLong());
+        verify(orderRepository, times(1)).findWithItemsById(anyLong());
     }
 
     @Test
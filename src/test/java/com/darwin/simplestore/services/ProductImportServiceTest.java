@@ -0,0 +1,272 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.services;
+
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.ProductCountCache;
+import com.darwin.simplestore.cache.ProductNameFilter;
+import com.darwin.simplestore.cache.ProductPageCache;
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductFileFormat;
+import com.darwin.simplestore.dto.ProductImportReportDto;
+import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.repositories.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@ActiveProfiles("dev")
+public class ProductImportServiceTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductCountCache productCountCache;
+
+    @Mock
+    private ProductPageCache productPageCache;
+
+    @Mock
+    private MissingIdCache missingIdCache;
+
+    @Mock
+    private ProductNameFilter productNameFilter;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ProductImportService productImportService;
+
+    @BeforeEach
+    public void setUp() {
+        productImportService = new ProductImportService(
+                productRepository,
+                productCountCache,
+                productPageCache,
+                missingIdCache,
+                productNameFilter,
+                new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                entityManager,
+                transactionManager,
+                2,
+                1);
+    }
+
+    private static InputStream body(final String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportCsv() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of("p2"));
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "name,description,price,quantity,category\n" +
+                "p1,\"Cheese, the tastiest\",1.5,4,food\n" +
+                "p2,d2,1.0,4,OTHER\n" +
+                "p3,d3,,4,OTHER\n" +
+                "p4,d4,2.0,1,OTHER\n"), ProductFileFormat.CSV));
+
+        assertEquals(2, report.imported());
+        assertEquals(2, report.failed());
+        assertEquals(1, report.errors().size());
+        assertEquals(3L, report.errors().getFirst().line());
+        assertTrue(report.errorsTruncated());
+
+        final ArgumentCaptor<List<Product>> captor = ArgumentCaptor.forClass(List.class);
+        verify(productRepository, times(2)).saveAll(captor.capture());
+
+        final Product cheese = captor.getAllValues().getFirst().getFirst();
+        assertEquals("Cheese, the tastiest", cheese.getDescription());
+        assertEquals(ProductCategory.FOOD, cheese.getCategory());
+
+        verify(productRepository, times(2)).findExistingNames(anyCollection());
+        verify(entityManager, times(2)).clear();
+        verify(productNameFilter, times(1)).put("p1");
+        verify(productNameFilter, times(1)).put("p4");
+        verify(productNameFilter, never()).put("p2");
+        verify(productCountCache, times(1)).invalidate();
+        verify(productPageCache, times(1)).invalidateAll();
+        verify(missingIdCache, times(1)).invalidateAll(MissingIdCache.ResourceType.PRODUCT);
+    }
+
+    @Test
+    public void testImportNdjson() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "{\"name\":\"p1\",\"price\":1.0,\"quantity\":4}\n" +
+                "\n" +
+                "{\"name\":\"p1\",\"price\":1.0,\"quantity\":4}\n" +
+                "not json\n"), ProductFileFormat.NDJSON));
+
+        assertEquals(1, report.imported());
+        assertEquals(2, report.failed());
+        assertEquals(3L, report.errors().getFirst().line());
+
+        verify(productRepository, times(1)).saveAll(any());
+    }
+
+    @Test
+    public void testImportConflict() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+        when(productRepository.saveAll(any())).thenThrow(constraintViolation(Product.NAME_CONSTRAINT));
+        when(productRepository.save(any(Product.class))).thenThrow(constraintViolation(Product.NAME_CONSTRAINT));
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "{\"name\":\"p1\",\"price\":1.0,\"quantity\":4}\n"), ProductFileFormat.NDJSON));
+
+        assertEquals(0, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals("Product with name p1 already exists", report.errors().getFirst().message());
+
+        verify(productCountCache, never()).invalidate();
+        verify(productPageCache, never()).invalidateAll();
+        verify(missingIdCache, never()).invalidateAll(any());
+    }
+
+    @Test
+    public void testImportChunkRetry() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+        when(productRepository.saveAll(any())).thenThrow(constraintViolation("products_category_check"));
+        when(productRepository.save(any(Product.class))).thenAnswer(i -> {
+            final Product product = i.getArgument(0);
+
+            if (product.getName().equals("p1")) {
+                throw constraintViolation("products_category_check");
+            }
+
+            return product;
+        });
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "{\"name\":\"p1\",\"price\":1.0,\"quantity\":4}\n" +
+                "{\"name\":\"p2\",\"price\":1.0,\"quantity\":4}\n"), ProductFileFormat.NDJSON));
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals(1L, report.errors().getFirst().line());
+        assertEquals("Product could not be saved: constraint violated", report.errors().getFirst().message());
+
+        verify(productRepository, times(2)).save(any(Product.class));
+        verify(productNameFilter, times(1)).put("p2");
+        verify(productNameFilter, never()).put("p1");
+        verify(productCountCache, times(1)).invalidate();
+    }
+
+    @Test
+    public void testImportMultiLineCsv() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "name,description,price,quantity\n" +
+                "p1,\"First line\n\n\"\"Quoted\"\" line\",1.5,4\n" +
+                "p2,\"unterminated,1.0,4\n"), ProductFileFormat.CSV));
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals(5L, report.errors().getFirst().line());
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<Product>> captor = ArgumentCaptor.forClass(List.class);
+        verify(productRepository, times(1)).saveAll(captor.capture());
+
+        assertEquals("First line\n\n\"Quoted\" line", captor.getValue().getFirst().getDescription());
+    }
+
+    @Test
+    public void testImportNameTooLong() {
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "{\"name\":\"" + "p".repeat(256) + "\",\"price\":1.0,\"quantity\":4}\n"), ProductFileFormat.NDJSON));
+
+        assertEquals(0, report.imported());
+        assertEquals("Product name can be at most 255 characters long", report.errors().getFirst().message());
+
+        verify(productRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void testImportRowTooLong() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "{\"name\":\"" + "p".repeat(ProductCsv.MAX_RECORD_LENGTH) + "\",\"price\":1.0,\"quantity\":4}\r\n" +
+                "{\"name\":\"p2\",\"price\":1.0,\"quantity\":4}\r\n"), ProductFileFormat.NDJSON));
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals(1L, report.errors().getFirst().line());
+        assertEquals("Row can be at most " + ProductCsv.MAX_RECORD_LENGTH + " characters long", report.errors().getFirst().message());
+
+        verify(productNameFilter, times(1)).put("p2");
+    }
+
+    @Test
+    public void testImportMultiLineCsvTooLong() {
+        when(productRepository.findExistingNames(anyCollection())).thenReturn(List.of());
+
+        final ProductImportReportDto report = assertDoesNotThrow(() -> productImportService.importProducts(body(
+                "name,description,price,quantity\n" +
+                "p1,\"First line\n" + "d".repeat(ProductCsv.MAX_RECORD_LENGTH) + "\",1.5,4\n" +
+                "p2,d2,1.0,4\n"), ProductFileFormat.CSV));
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals(2L, report.errors().getFirst().line());
+
+        verify(productNameFilter, times(1)).put("p2");
+    }
+
+    @Test
+    public void testImportException() {
+        assertThrowsExactly(InvalidRequestException.class, () -> productImportService.importProducts(
+                body("name,weight\np1,5\n"), ProductFileFormat.CSV));
+        assertThrowsExactly(InvalidRequestException.class, () -> productImportService.importProducts(
+                body("price,quantity\n1.0,5\n"), ProductFileFormat.CSV));
+        assertThrowsExactly(InvalidRequestException.class, () -> productImportService.importProducts(
+                body("name," + "x".repeat(ProductCsv.MAX_RECORD_LENGTH) + "\np1\n"), ProductFileFormat.CSV));
+
+        verify(productRepository, never()).saveAll(any());
+    }
+
+    /**
+     * Create the exception thrown when a write violates a database constraint
+     * @param constraintName The name of the violated constraint
+     * @return The exception
+     */
+    private static DataIntegrityViolationException constraintViolation(final String constraintName) {
+        return new DataIntegrityViolationException("test", new ConstraintViolationException(
+                "test", new SQLException("constraint violated"), constraintName));
+    }
+}
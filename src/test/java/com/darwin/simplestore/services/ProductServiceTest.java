@@ -5,28 +5,61 @@
 
 package com.darwin.simplestore.services;
 
+import com.darwin.simplestore.cache.MissingIdCache;
+import com.darwin.simplestore.cache.ProductCache;
+import com.darwin.simplestore.cache.ProductCountCache;
+import com.darwin.simplestore.cache.ProductNameFilter;
+import com.darwin.simplestore.cache.ProductPageCache;
+import com.darwin.simplestore.cache.RequestCoalescer;
+import com.darwin.simplestore.dto.Base64Content;
+import com.darwin.simplestore.dto.CursorPageDto;
+import com.darwin.simplestore.dto.ImageDto;
+import com.darwin.simplestore.dto.ImageMetadataDto;
 import com.darwin.simplestore.dto.NewProductDto;
+import com.darwin.simplestore.dto.ProductBatchDto;
 import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.dto.ProductCursor;
 import com.darwin.simplestore.dto.ProductDto;
+import com.darwin.simplestore.dto.ProductFileFormat;
+import com.darwin.simplestore.dto.ProductSortField;
 import com.darwin.simplestore.entities.Image;
 import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import com.darwin.simplestore.exceptions.PreconditionFailedException;
 import com.darwin.simplestore.exceptions.ResourceExistsException;
 import com.darwin.simplestore.exceptions.ResourceNotFoundException;
 import com.darwin.simplestore.repositories.ImageRepository;
 import com.darwin.simplestore.repositories.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.context.ActiveProfiles;
-
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -42,6 +75,30 @@ public class ProductServiceTest {
     @Mock
     private ImageRepository imageRepository;
 
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private ProductCountCache productCountCache;
+
+    @Mock
+    private ProductPageCache productPageCache;
+
+    @Spy
+    private RequestCoalescer requestCoalescer = new RequestCoalescer(new SimpleMeterRegistry());
+
+    @Spy
+    private MissingIdCache missingIdCache = new MissingIdCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+
+    @Spy
+    private ProductNameFilter productNameFilter = new ProductNameFilter(mock(ProductRepository.class), mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), 100, 0.01);
+
+    @Spy
+    private ProductCache productCache = new ProductCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     @InjectMocks
     private ProductService productService;
 
@@ -69,6 +126,10 @@ public class ProductServiceTest {
         assertEquals(ProductCategory.OTHER, productDto.category());
 
         verify(productRepository, times(1)).save(any(Product.class));
+        verify(productRepository, times(1)).flush();
+        verify(productNameFilter, times(1)).put("tst");
+        verify(productCountCache, times(1)).invalidate();
+        verify(productPageCache, times(1)).invalidate(ProductCategory.OTHER);
     }
 
     @Test
@@ -86,6 +147,36 @@ public class ProductServiceTest {
         assertThrowsExactly(ResourceExistsException.class, () -> productService.createProduct(newProductDto));
 
         verify(productRepository, times(1)).existsByName(anyString());
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    @Test
+    public void testCreateProductConflict() {
+        final NewProductDto newProductDto = new NewProductDto(
+                "tst",
+                "tstDesc",
+                1.0,
+                3L,
+                ProductCategory.OTHER
+        );
+
+        when(productRepository.save(any(Product.class))).thenThrow(constraintViolation(Product.NAME_CONSTRAINT));
+
+        assertThrowsExactly(ResourceExistsException.class, () -> productService.createProduct(newProductDto));
+
+        verify(productNameFilter, never()).put(anyString());
+        verify(productCountCache, never()).invalidate();
+    }
+
+    @Test
+    public void testCreateProductOtherConstraintViolation() {
+        final NewProductDto newProductDto = new NewProductDto("tst", "tstDesc", 1.0, 3L, ProductCategory.OTHER);
+
+        when(productRepository.save(any(Product.class))).thenThrow(constraintViolation("products_image_id_fkey"));
+
+        assertThrowsExactly(DataIntegrityViolationException.class, () -> productService.createProduct(newProductDto));
+
+        verify(productNameFilter, never()).put(anyString());
     }
 
     @Test
@@ -98,8 +189,8 @@ public class ProductServiceTest {
                         1.0,
                         2L,
                         ProductCategory.OTHER,
-                        null
-                ),
+                        null,
+                        null),
                 new Product(
                         2L,
                         "p2",
@@ -107,8 +198,8 @@ public class ProductServiceTest {
                         1.0,
                         2L,
                         ProductCategory.OTHER,
-                        null
-                )
+                        null,
+                        null)
         );
 
         when(productRepository.findAll()).thenReturn(products);
@@ -130,6 +221,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
         final Product p2 = new Product(
                 2L,
@@ -138,6 +230,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
 
         final Pageable pageable1 = PageRequest.of(0, 1);
@@ -161,6 +254,71 @@ public class ProductServiceTest {
         verify(productRepository, times(2)).findAll(any(Pageable.class));
     }
 
+    @Test
+    public void testExportProducts() {
+        final ProductDto p1 = new ProductDto(1L, "p1", "d1, with a comma", 1.0, 2L, ProductCategory.OTHER);
+        final ProductDto p2 = new ProductDto(2L, "p2", "d2", 2.0, 3L, ProductCategory.FOOD);
+        final ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        final ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+
+        when(productRepository.streamAllProducts()).thenAnswer(i -> Stream.of(p1, p2));
+
+        assertDoesNotThrow(() -> productService.exportProducts(csv, ProductFileFormat.CSV));
+        assertEquals("id,name,description,price,quantity,category\n" +
+                "1,p1,\"d1, with a comma\",1.0,2,OTHER\n" +
+                "2,p2,d2,2.0,3,FOOD\n", csv.toString(StandardCharsets.UTF_8));
+
+        assertDoesNotThrow(() -> productService.exportProducts(ndjson, ProductFileFormat.NDJSON));
+        final String[] lines = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(p2, assertDoesNotThrow(() -> objectMapper.readValue(lines[1], ProductDto.class)));
+
+        verify(productRepository, times(2)).streamAllProducts();
+    }
+
+    @Test
+    public void testGetProductsSlice() {
+        final Product p1 = new Product(
+                1L,
+                "p1",
+                "d1",
+                1.0,
+                2L,
+                ProductCategory.OTHER,
+                null,
+                null);
+
+        final Pageable pageable = PageRequest.of(0, 1);
+        final Slice<Product> slice = new SliceImpl<>(List.of(p1), pageable, true);
+
+        when(productRepository.findAllBy(pageable)).thenReturn(slice);
+        when(productRepository.findAllByCategory(ProductCategory.OTHER, pageable)).thenReturn(slice);
+
+        Slice<ProductDto> allSlice = productService.getProductsSlice(pageable);
+
+        assertEquals(1, allSlice.getNumberOfElements());
+        assertEquals(1L, allSlice.getContent().getFirst().id());
+        assertTrue(allSlice.hasNext());
+
+        Slice<ProductDto> categorySlice = productService.getProductsSliceByCategory(pageable, ProductCategory.OTHER);
+
+        assertEquals(1, categorySlice.getNumberOfElements());
+        assertTrue(categorySlice.hasNext());
+
+        verify(productRepository, times(1)).findAllBy(any(Pageable.class));
+        verify(productRepository, times(1)).findAllByCategory(any(ProductCategory.class), any(Pageable.class));
+        verify(productRepository, never()).count();
+    }
+
+    @Test
+    public void testCountProducts() {
+        when(productCountCache.count(ProductCategory.FOOD)).thenReturn(3L);
+
+        assertEquals(3L, productService.countProducts(ProductCategory.FOOD));
+
+        verify(productCountCache, times(1)).count(ProductCategory.FOOD);
+    }
+
     @Test
     public void testGetProductById() {
         final Product product = new Product(
@@ -170,6 +328,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
 
         when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
@@ -180,6 +339,99 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findById(anyLong());
     }
 
+    @Test
+    public void testGetProductsByIds() {
+        final Product product2 = new Product(2L, "p2", "d2", 2.0, 2L, ProductCategory.OTHER, null, null);
+        final Product product3 = new Product(3L, "p3", "d3", 3.0, 3L, ProductCategory.OTHER, null, null);
+
+        productCache.put(new ProductDto(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER));
+        when(productRepository.findAllById(any())).thenReturn(List.of(product3, product2));
+
+        final ProductBatchDto batch = assertDoesNotThrow(() -> productService.getProductsByIds(List.of(3L, 4L, 1L, 2L, 3L)));
+
+        assertEquals(List.of(3L, 1L, 2L), batch.products().stream().map(ProductDto::id).toList());
+        assertEquals(List.of(4L), batch.missingIds());
+
+        verify(productRepository, times(1)).findAllById(argThat(ids -> Set.copyOf((Collection<?>) ids).equals(Set.of(2L, 3L, 4L))));
+        verify(productRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testGetProductsByIdsCached() {
+        productCache.put(new ProductDto(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER));
+
+        final ProductBatchDto batch = assertDoesNotThrow(() -> productService.getProductsByIds(List.of(1L)));
+
+        assertEquals(1, batch.products().size());
+        assertTrue(batch.missingIds().isEmpty());
+
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testGetProductsByIdsInvalid() {
+        final List<Long> tooMany = LongStream.rangeClosed(1, ProductService.MAX_BATCH_SIZE + 1).boxed().toList();
+
+        assertThrowsExactly(InvalidRequestException.class, () -> productService.getProductsByIds(tooMany));
+        assertThrowsExactly(InvalidRequestException.class, () -> productService.getProductsByIds(Arrays.asList(1L, null)));
+
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testGetProductByIdWithImage() {
+        final Product product = new Product(
+                1L,
+                "p1",
+                "d1",
+                1.0,
+                2L,
+                ProductCategory.OTHER,
+                null,
+                null);
+        final ImageMetadataDto imageMetadataDto = new ImageMetadataDto(1L, "image/png", 3L, 1, 1, "hash", null, null);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        when(imageRepository.findMetadataByProductId(1L)).thenReturn(Optional.of(imageMetadataDto), Optional.empty());
+
+        ProductDto productDto = assertDoesNotThrow(() -> productService.getProductById(1L, true));
+        assertEquals(imageMetadataDto, productDto.image());
+
+        productDto = assertDoesNotThrow(() -> productService.getProductById(1L, true));
+        assertNull(productDto.image());
+
+        productDto = assertDoesNotThrow(() -> productService.getProductById(1L, false));
+        assertNull(productDto.image());
+
+        verify(imageRepository, times(2)).findMetadataByProductId(1L);
+        verify(imageRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testGetProductByIdCached() {
+        final Product product = new Product(
+                1L,
+                "p1",
+                "d1",
+                1.0,
+                2L,
+                ProductCategory.OTHER,
+                null,
+                null);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+
+        assertDoesNotThrow(() -> productService.getProductById(1L));
+        ProductDto productDto = assertDoesNotThrow(() -> productService.getProductByName("p1"));
+        assertEquals(1L, productDto.id());
+
+        productService.deleteProductById(1L);
+        assertDoesNotThrow(() -> productService.getProductById(1L));
+
+        verify(productRepository, times(3)).findById(anyLong());
+        verify(productRepository, never()).findByName(anyString());
+    }
+
     @Test
     public void testGetProductByIdException() {
         when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
@@ -189,6 +441,28 @@ public class ProductServiceTest {
         verify(productRepository, times(1)).findById(anyLong());
     }
 
+    @Test
+    public void testGetProductByIdMissing() {
+        final NewProductDto newProductDto = new NewProductDto("p1", "d1", 1.0, 2L, ProductCategory.OTHER);
+        final Product product = ProductService.fromNewProductDto(newProductDto);
+        product.setId(1L);
+
+        when(productRepository.findById(1L)).thenReturn(Optional.empty(), Optional.of(product));
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.getProductById(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.getProductById(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.getProductVersionTag(1L));
+
+        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, never()).findVersionById(anyLong());
+
+        assertDoesNotThrow(() -> productService.createProduct(newProductDto));
+        assertEquals(1L, productService.getProductById(1L).id());
+
+        verify(productRepository, times(2)).findById(1L);
+    }
+
     @Test
     public void testGetProductByName() {
         final Product product = new Product(
@@ -198,6 +472,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
 
         when(productRepository.findByName(anyString())).thenReturn(Optional.of(product));
@@ -226,6 +501,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
         final Product p2 = new Product(
                 2L,
@@ -234,6 +510,7 @@ public class ProductServiceTest {
                 1.0,
                 2L,
                 ProductCategory.OTHER,
+                null,
                 null);
 
         final Pageable pageable1 = PageRequest.of(0, 1);
@@ -262,113 +539,239 @@ public class ProductServiceTest {
         verify(productRepository, times(3)).findByCategory(any(Pageable.class), any(ProductCategory.class));
     }
 
+    @Test
+    public void testGetProductsAfter() {
+        final Product p1 = new Product(
+                1L,
+                "p1",
+                "d1",
+                1.0,
+                2L,
+                ProductCategory.OTHER,
+                null,
+                null);
+        final Product p2 = new Product(
+                2L,
+                "p2",
+                "d2",
+                1.0,
+                2L,
+                ProductCategory.OTHER,
+                null,
+                null);
+
+        final ProductCursor firstCursor = ProductCursor.first(ProductSortField.NAME, true, null);
+
+        when(productRepository.findPageAfter(ProductSortField.NAME, true, null, null, null, 2)).thenReturn(List.of(p1, p2));
+        when(productRepository.findPageAfter(ProductSortField.NAME, true, null, "p1", 1L, 2)).thenReturn(List.of(p2));
+
+        final CursorPageDto<ProductDto> firstPage = productService.getProductsAfter(firstCursor, 1);
+
+        assertEquals(1, firstPage.content().size());
+        assertEquals(1L, firstPage.content().getFirst().id());
+        assertTrue(firstPage.hasNext());
+
+        final ProductCursor nextCursor = ProductCursor.decode(firstPage.nextCursor());
+
+        assertEquals("p1", nextCursor.lastValue());
+        assertEquals(1L, nextCursor.lastId());
+
+        final CursorPageDto<ProductDto> secondPage = productService.getProductsAfter(nextCursor, 1);
+
+        assertEquals(1, secondPage.content().size());
+        assertEquals(2L, secondPage.content().getFirst().id());
+        assertFalse(secondPage.hasNext());
+        assertNull(secondPage.nextCursor());
+
+        verify(productRepository, times(2)).findPageAfter(any(ProductSortField.class), anyBoolean(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testGetProductsAfterException() {
+        final ProductCursor cursor = ProductCursor.first(ProductSortField.NAME, true, null);
+
+        assertThrowsExactly(InvalidRequestException.class, () -> productService.getProductsAfter(cursor, 0));
+    }
+
     @Test
     public void testUpdateProductById() {
-        final Product product = mock(Product.class);
-        when(product.getId()).thenReturn(1L);
+        final Product product = new Product(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 3L);
+        final ProductDto productDto = new ProductDto(1L, "p2", "d2", 2.0, 4L, ProductCategory.FOOD);
 
-        when(productRepository.existsById(anyLong())).thenReturn(true);
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
         when(productRepository.save(any(Product.class))).thenReturn(product);
 
-        assertDoesNotThrow(() -> productService.updateProductById(ProductService.toProductDto(product)));
+        assertDoesNotThrow(() -> productService.updateProductById(productDto));
 
-        verify(product, times(1)).getId();
-        verify(productRepository, times(1)).existsById(anyLong());
-        verify(productRepository, times(1)).save(any(Product.class));
+        assertEquals("p2", product.getName());
+        assertEquals(ProductCategory.FOOD, product.getCategory());
+        assertEquals(3L, product.getVersion());
+        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).save(product);
+        verify(productNameFilter, times(1)).put("p2");
+        verify(productNameFilter, times(1)).remove("p1");
+        verify(productPageCache, times(1)).invalidate(ProductCategory.OTHER, ProductCategory.FOOD);
+    }
+
+    @Test
+    public void testUpdateProductByIdConflict() {
+        final Product product = new Product(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 3L);
+        final ProductDto productDto = new ProductDto(1L, "p2", "d2", 2.0, 4L, ProductCategory.FOOD);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        doThrow(constraintViolation(Product.NAME_CONSTRAINT)).when(productRepository).flush();
+
+        assertThrowsExactly(ResourceExistsException.class, () -> productService.updateProductById(productDto));
+
+        verify(productNameFilter, never()).put(anyString());
+        verify(productNameFilter, never()).remove(anyString());
+        verify(productCache, never()).invalidate(anyLong());
     }
 
     @Test
     public void testUpdateProductByIdException() {
-        final Product product = mock(Product.class);
-        when(product.getId()).thenReturn(1L);
+        final ProductDto productDto = new ProductDto(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER);
 
-        when(productRepository.existsById(anyLong())).thenReturn(false);
+        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.updateProductById(productDto));
+
+        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    @Test
+    public void testUpdateProductByIdVersion() {
+        final Product product = new Product(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 3L);
+        final ProductDto productDto = new ProductDto(1L, "p2", "d2", 2.0, 4L, ProductCategory.FOOD);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        when(productRepository.save(any(Product.class))).thenReturn(product);
 
-        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.updateProductById(ProductService.toProductDto(product)));
+        assertThrowsExactly(PreconditionFailedException.class, () -> productService.updateProductById(productDto, 2L));
+        assertEquals("p1", product.getName());
+        verify(productRepository, never()).save(any(Product.class));
 
-        verify(product, times(1)).getId();
-        verify(productRepository, times(1)).existsById(anyLong());
+        assertDoesNotThrow(() -> productService.updateProductById(productDto, 3L));
+        assertEquals("p2", product.getName());
+        verify(productRepository, times(1)).save(product);
     }
 
     @Test
     public void testUpdateProductByName() {
-        final Product product = mock(Product.class);
-        when(product.getName()).thenReturn("p1");
+        final Product product = new Product(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 0L);
+        final ProductDto productDto = new ProductDto(null, "p1", "d2", 2.0, 4L, ProductCategory.FOOD);
 
         when(productRepository.findByName(anyString())).thenReturn(Optional.of(product));
-        when(productRepository.existsByName(anyString())).thenReturn(true);
         when(productRepository.save(any(Product.class))).thenReturn(product);
 
-        assertDoesNotThrow(() -> productService.updateProductByName(ProductService.toProductDto(product)));
+        assertDoesNotThrow(() -> productService.updateProductByName(productDto));
 
-        verify(product, times(1)).getName();
-        verify(productRepository, times(1)).existsByName(anyString());
-        verify(productRepository, times(1)).existsByName(anyString());
-        verify(productRepository, times(1)).save(any(Product.class));
+        assertEquals(1L, product.getId());
+        assertEquals("d2", product.getDescription());
+        verify(productRepository, times(1)).findByName("p1");
+        verify(productRepository, times(1)).save(product);
     }
 
     @Test
     public void testUpdateProductByNameException() {
-        final Product product = new Product(
-                1L,
-                "p1",
-                "d1",
-                1.0,
-                2L,
-                ProductCategory.OTHER,
-                null);
+        final ProductDto productDto = new ProductDto(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER);
+
+        when(productRepository.findByName(anyString())).thenReturn(Optional.empty());
+
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.updateProductByName(productDto));
 
-        when(productRepository.existsById(anyLong())).thenReturn(false);
+        verify(productRepository, times(1)).findByName("p1");
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    @Test
+    public void testGetProductVersionTag() {
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(4L));
+        when(productRepository.findVersionById(2L)).thenReturn(Optional.empty());
+
+        assertEquals("4", productService.getProductVersionTag(1L));
+        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.getProductVersionTag(2L));
+    }
+
+    @Test
+    public void testGetProductVersionTagWithImage() {
+        final ImageMetadataDto imageMetadataDto = new ImageMetadataDto(2L, "image/png", 3L, 1, 1, "hash", null, null);
+        final ProductDto productDto = new ProductDto(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 4L);
+
+        when(productRepository.findVersionById(1L)).thenReturn(Optional.of(4L));
+        when(imageRepository.findMetadataByProductId(1L)).thenReturn(Optional.of(imageMetadataDto), Optional.empty());
 
-        assertThrowsExactly(ResourceNotFoundException.class, () -> productService.updateProductById(ProductService.toProductDto(product)));
+        assertEquals("4.2-hash", productService.getProductVersionTag(1L, true));
+        assertEquals("4.2-hash", ProductService.versionTag(productDto.withImage(imageMetadataDto)));
+        assertEquals("4", productService.getProductVersionTag(1L, true));
+        assertEquals("4", productService.getProductVersionTag(1L, false));
 
-        verify(productRepository, times(1)).existsById(anyLong());
+        verify(imageRepository, times(2)).findMetadataByProductId(1L);
+    }
+
+    @Test
+    public void testGetProductVersionTagCached() {
+        final Product product = new Product(1L, "p1", "d1", 1.0, 2L, ProductCategory.OTHER, null, 5L);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+
+        final ProductDto productDto = productService.getProductById(1L);
+
+        assertEquals(ProductService.versionTag(productDto), productService.getProductVersionTag(1L));
+        assertEquals("5", productService.getProductVersionTag(1L));
+        verify(productRepository, never()).findVersionById(anyLong());
     }
 
     @Test
     public void testDeleteProductById() {
-        when(productRepository.existsById(anyLong())).thenReturn(true);
+        final Image image = new Image(1L, null, "image/png", 3L, "hash", "key", null, null, null, null, 1);
+        final Product product = new Product(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER, image, null);
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
 
         assertDoesNotThrow(() -> productService.deleteProductById(1L));
 
-        verify(productRepository, times(1)).existsById(anyLong());
-        verify(productRepository, times(1)).deleteById(anyLong());
+        verify(productRepository, times(1)).findById(anyLong());
+        verify(productRepository, times(1)).delete(product);
+        verify(imageService, times(1)).releaseImage(image);
+        verify(productNameFilter, times(1)).remove("p1");
+        verify(productCountCache, times(1)).invalidate();
     }
 
     @Test
     public void testDeleteProductByIdException() {
-        when(productRepository.existsById(anyLong())).thenReturn(false);
+        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> productService.deleteProductById(1L));
 
-        verify(productRepository, times(1)).existsById(anyLong());
+        verify(productRepository, times(1)).findById(anyLong());
+        verify(productRepository, never()).delete(any(Product.class));
     }
 
     @Test
     public void testDeleteProductByName() {
-        when(productRepository.existsByName(anyString())).thenReturn(true);
+        final Product product = new Product(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER, null, null);
+        when(productRepository.findByName(anyString())).thenReturn(Optional.of(product));
 
         assertDoesNotThrow(() -> productService.deleteProductByName("p1"));
 
-        verify(productRepository, times(1)).existsByName(anyString());
-        verify(productRepository, times(1)).deleteByName(anyString());
+        verify(productRepository, times(1)).findByName(anyString());
+        verify(productRepository, times(1)).delete(product);
+        verify(imageService, times(1)).releaseImage(null);
     }
 
     @Test
     public void testDeleteProductByNameException() {
-        when(productRepository.existsByName(anyString())).thenReturn(false);
+        when(productRepository.findByName(anyString())).thenReturn(Optional.empty());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> productService.deleteProductByName("p1"));
 
-        verify(productRepository, times(1)).existsByName(anyString());
+        verify(productRepository, times(1)).findByName(anyString());
     }
 
     @Test
     public void testSetImage() {
-        final Image image = new Image(
-                1L,
-                "base64"
-        );
+        final Image image = new Image(1L, null, "image/png", 3L, "hash", "key", null, null, null, null, 1);
 
         final Product product = new Product(
                 1L,
@@ -377,72 +780,83 @@ public class ProductServiceTest {
                 1.0,
                 1L,
                 ProductCategory.OTHER,
-                null
-        );
+                null,
+                null);
 
         when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(imageRepository.findById(anyLong())).thenReturn(Optional.of(image));
+        when(imageRepository.getReferenceById(anyLong())).thenReturn(image);
 
         assertDoesNotThrow(() -> productService.setImage(1L, 1L));
         assertEquals(image, product.getImage());
+        assertDoesNotThrow(() -> productService.setImage(1L, 1L));
 
-        verify(imageRepository, times(1)).findById(anyLong());
-        verify(productRepository, times(1)).findById(anyLong());
+        verify(imageService, times(1)).retainImage(1L);
+        verify(imageService, times(1)).releaseImage(null);
+        verify(productRepository, times(2)).findById(anyLong());
+        verify(productCache, times(1)).invalidate(1L);
+    }
+
+    @Test
+    public void testSetImageReplace() {
+        final Image previous = new Image(2L, null, "image/png", 3L, "previous", "previous", null, null, null, null, 1);
+        final Image image = new Image(1L, null, "image/png", 3L, "hash", "key", null, null, null, null, 0);
+        final Product product = new Product(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER, previous, null);
+
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        when(imageRepository.getReferenceById(anyLong())).thenReturn(image);
+
+        assertDoesNotThrow(() -> productService.setImage(1L, 1L));
+        assertEquals(image, product.getImage());
+
+        verify(imageService, times(1)).retainImage(1L);
+        verify(imageService, times(1)).releaseImage(previous);
+        verify(productCache, times(1)).invalidate(1L);
     }
 
     @Test
     public void testSetImageException() {
         assertThrowsExactly(ResourceNotFoundException.class, () -> productService.setImage(1L, 1L));
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(productRepository.findById(anyLong())).thenReturn(Optional.of(
+                new Product(1L, "p1", "d1", 1.0, 1L, ProductCategory.OTHER, null, null)));
+        doThrow(new ResourceNotFoundException("test")).when(imageService).retainImage(anyLong());
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> productService.setImage(1L, 1L));
 
         verify(productRepository, times(2)).findById(anyLong());
+        verify(imageService, never()).releaseImage(any());
     }
 
     @Test
     public void testGetImage() {
-        final Image image = new Image(
-                1L,
-                "base64"
-        );
-
-        final Product product = new Product(
-                1L,
-                "p1",
-                "d1",
-                1.0,
-                1L,
-                ProductCategory.OTHER,
-                null
-        );
+        final ImageMetadataDto imageMetadataDto = new ImageMetadataDto(2L, "image/png", 3L, 1, 1, "hash", null, null);
+        final ImageDto imageDto = new ImageDto(2L, Base64Content.of(new byte[]{1, 2, 3}));
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        when(imageRepository.findMetadataByProductId(1L)).thenReturn(Optional.empty(), Optional.of(imageMetadataDto));
+        when(productRepository.existsById(1L)).thenReturn(true);
+        when(imageService.getImage(2L)).thenReturn(imageDto);
 
         assertFalse(productService.getImage(1L).isPresent());
+        assertEquals(Optional.of(imageDto), productService.getImage(1L));
 
-        product.setImage(image);
-
-        assertTrue(productService.getImage(1L).isPresent());
-        assertEquals(ImageService.toImageDto(image), productService.getImage(1L).get());
+        verify(imageService, times(1)).getImage(2L);
+        verify(productRepository, times(1)).existsById(1L);
+        verify(productRepository, never()).findById(anyLong());
     }
 
     @Test
     public void testGetImageException() {
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(imageRepository.findMetadataByProductId(1L)).thenReturn(Optional.empty());
+        when(productRepository.existsById(1L)).thenReturn(false);
 
         assertThrowsExactly(ResourceNotFoundException.class, () -> productService.getImage(1L));
 
-        verify(productRepository, times(1)).findById(anyLong());
+        verify(imageService, never()).getImage(anyLong());
     }
 
     @Test
     public void testRemoveImage() {
-        final Image image = new Image(
-                1L,
-                "base64"
-        );
+        final Image image = new Image(1L, null, "image/png", 3L, "hash", "key", null, null, null, null, 1);
 
         final Product product = new Product(
                 1L,
@@ -451,8 +865,8 @@ public class ProductServiceTest {
                 1.0,
                 1L,
                 ProductCategory.OTHER,
-                null
-        );
+                image,
+                null);
 
         when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
 
@@ -460,6 +874,8 @@ public class ProductServiceTest {
         assertNull(product.getImage());
 
         verify(productRepository, times(1)).findById(anyLong());
+        verify(imageService, times(1)).releaseImage(image);
+        verify(productCache, times(1)).invalidate(1L);
     }
 
     @Test
@@ -470,4 +886,13 @@ public class ProductServiceTest {
 
         verify(productRepository, times(1)).findById(anyLong());
     }
+
+    /**
+     * Create the exception thrown when a write violates a database constraint
+     * @param constraintName The name of the violated constraint
+     * @return The exception
+     */
+    private static DataIntegrityViolationException constraintViolation(final String constraintName) {
+        return new DataIntegrityViolationException("test", new ConstraintViolationException("test", new SQLException(), constraintName));
+    }
 }
@@ -0,0 +1,105 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+import com.darwin.simplestore.exceptions.InvalidRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSystemImageStorageTest {
+    private static final byte[] CONTENT = "Hello world!".getBytes(StandardCharsets.UTF_8);
+    private static final String CONTENT_HASH = "c0535e4be2b79ffd93291305436bf889314e4a3faec05ecffcbb7df31ad9e51a";
+
+    @TempDir
+    private Path root;
+
+    private FileSystemImageStorage storage;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        storage = new FileSystemImageStorage(root);
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        final StoredImage storedImage = storage.store(new ByteArrayInputStream(CONTENT), 100);
+
+        assertEquals(CONTENT.length, storedImage.size());
+        assertEquals(CONTENT_HASH, storedImage.hash());
+
+        final Resource resource = storage.load(storedImage.key());
+
+        assertTrue(resource.exists());
+        assertArrayEquals(CONTENT, resource.getContentAsByteArray());
+        assertTemporaryDirectoryEmpty();
+    }
+
+    @Test
+    public void testStoreDuplicate() throws Exception {
+        final StoredImage first = storage.store(new ByteArrayInputStream(CONTENT), 100);
+        final StoredImage second = storage.store(new ByteArrayInputStream(CONTENT), 100);
+
+        assertTrue(first.created());
+        assertFalse(second.created());
+        assertEquals(first.key(), second.key());
+        assertTrue(first.key().endsWith(CONTENT_HASH));
+        assertTemporaryDirectoryEmpty();
+    }
+
+    @Test
+    public void testStoreTooLarge() throws Exception {
+        assertThrowsExactly(InvalidRequestException.class, () -> storage.store(new ByteArrayInputStream(CONTENT), CONTENT.length - 1));
+
+        assertTemporaryDirectoryEmpty();
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        final StoredImage storedImage = storage.store(new ByteArrayInputStream(CONTENT), 100);
+
+        storage.delete(storedImage.key());
+
+        assertFalse(storage.load(storedImage.key()).exists());
+        assertDoesNotThrow(() -> storage.delete(storedImage.key()));
+    }
+
+    @Test
+    public void testVariants() throws Exception {
+        final StoredImage storedImage = storage.store(new ByteArrayInputStream(CONTENT), 100);
+
+        assertFalse(storage.loadVariant(storedImage.key(), "thumb").exists());
+
+        storage.storeVariant(storedImage.key(), "thumb", new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, storage.loadVariant(storedImage.key(), "thumb").getContentAsByteArray());
+
+        storage.delete(storedImage.key());
+
+        assertFalse(storage.loadVariant(storedImage.key(), "thumb").exists());
+        assertThrowsExactly(IllegalArgumentException.class, () -> storage.loadVariant(storedImage.key(), "../thumb"));
+    }
+
+    @Test
+    public void testInvalidKey() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> storage.load("../outside"));
+    }
+
+    private void assertTemporaryDirectoryEmpty() throws Exception {
+        try (Stream<Path> files = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+// Copyright (c) 2025 Dan Sirbu
+//
+// This software is released under the MIT License.
+// https://opensource.org/licenses/MIT
+
+package com.darwin.simplestore.storage;
+
+import com.darwin.simplestore.TestcontainersConfiguration;
+import com.darwin.simplestore.dto.ProductCategory;
+import com.darwin.simplestore.entities.Image;
+import com.darwin.simplestore.entities.Product;
+import com.darwin.simplestore.repositories.ImageRepository;
+import com.darwin.simplestore.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import(TestcontainersConfiguration.class)
+@DataJpaTest
+@ActiveProfiles("dev")
+public class ImageContentMigrationTest {
+    private static final byte[] CONTENT = "GIF89a world".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_CONTENT = "GIF89a other".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path storagePath;
+
+    private ImageStorage imageStorage;
+    private ImageContentMigration imageContentMigration;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        imageStorage = new FileSystemImageStorage(storagePath);
+        imageContentMigration = new ImageContentMigration(imageRepository, imageStorage, transactionManager, 2);
+    }
+
+    @Test
+    public void testMigrateBase64Content() throws Exception {
+        jdbcTemplate.execute("alter table images add column base64_image text");
+        insertBase64Image(1001L, "not base64!");
+        insertBase64Image(1002L, Base64.getEncoder().encodeToString(CONTENT));
+        jdbcTemplate.update("insert into images (id, content, media_type, reference_count) values (?, ?, ?, 0)",
+                1003L, OTHER_CONTENT, "image/gif");
+
+        assertEquals(2, imageContentMigration.migrate());
+
+        final Image migrated = imageRepository.findById(1002L).orElseThrow();
+
+        assertEquals("image/gif", migrated.getMediaType());
+        assertEquals(CONTENT.length, migrated.getSize());
+        assertNotNull(migrated.getCreatedAt());
+        assertArrayEquals(CONTENT, imageStorage.load(migrated.getStorageKey()).getContentAsByteArray());
+        assertLegacyContentCleared(1002L);
+
+        final Image other = imageRepository.findById(1003L).orElseThrow();
+
+        assertArrayEquals(OTHER_CONTENT, imageStorage.load(other.getStorageKey()).getContentAsByteArray());
+        assertLegacyContentCleared(1003L);
+
+        // The image with invalid content is kept, and does not block the images after it
+        assertNull(imageRepository.findById(1001L).orElseThrow().getStorageKey());
+        assertEquals(0, imageContentMigration.migrate());
+    }
+
+    @Test
+    public void testMigrateWithoutBase64Column() throws Exception {
+        jdbcTemplate.update("insert into images (id, content, reference_count) values (?, ?, 0)", 1001L, CONTENT);
+
+        assertEquals(1, imageContentMigration.migrate());
+
+        final Image migrated = imageRepository.findById(1001L).orElseThrow();
+
+        assertEquals("image/gif", migrated.getMediaType());
+        assertNull(migrated.getContent());
+        assertArrayEquals(CONTENT, imageStorage.load(migrated.getStorageKey()).getContentAsByteArray());
+    }
+
+    @Test
+    public void testMigrateDuplicateContent() throws Exception {
+        final StoredImage storedImage = imageStorage.store(new ByteArrayInputStream(CONTENT), Image.MAX_SIZE);
+        final Image existing = imageRepository.save(new Image(
+                null, null, "image/gif", 12L, storedImage.hash(), storedImage.key(), null, null, null, null, 0));
+        jdbcTemplate.execute("alter table images add column base64_image text");
+        insertBase64Image(1001L, Base64.getEncoder().encodeToString(CONTENT));
+        insertBase64Image(1002L, Base64.getEncoder().encodeToString(CONTENT));
+
+        final Long first = saveProduct("p1", existing.getId());
+        final Long second = saveProduct("p2", 1001L);
+        final Long third = saveProduct("p3", 1002L);
+
+        assertEquals(0, imageContentMigration.migrate());
+
+        entityManager.clear();
+
+        assertTrue(imageRepository.findById(1001L).isEmpty());
+        assertTrue(imageRepository.findById(1002L).isEmpty());
+        assertEquals(3, imageRepository.findById(existing.getId()).orElseThrow().getReferenceCount());
+
+        for (final Long productId : List.of(first, second, third)) {
+            assertEquals(existing.getId(), productRepository.findById(productId).orElseThrow().getImage().getId());
+        }
+
+        assertTrue(imageStorage.load(storedImage.key()).exists());
+    }
+
+    @Test
+    public void testBackfillReferenceCounts() {
+        final Image image = imageRepository.save(new Image(null, null, "image/gif", 12L, "hash", "ab/key", null, null, null, null, 0));
+        saveProduct("p1", image.getId());
+        saveProduct("p2", image.getId());
+
+        imageContentMigration.migrate();
+        entityManager.clear();
+
+        assertEquals(2, imageRepository.findById(image.getId()).orElseThrow().getReferenceCount());
+    }
+
+    /**
+     * Save a product referencing an image
+     * @param name The name of the product
+     * @param imageId The id of the image
+     * @return The id of the product
+     */
+    private Long saveProduct(final String name, final Long imageId) {
+        final Product product = new Product();
+        product.setName(name);
+        product.setDescription("test");
+        product.setPrice(1.0);
+        product.setQuantity(1L);
+        product.setCategory(ProductCategory.OTHER);
+        product.setImage(imageRepository.getReferenceById(imageId));
+
+        return productRepository.save(product).getId();
+    }
+
+    /**
+     * Insert an image of the original schema, with base64 content
+     * @param id The id of the image
+     * @param base64Content The base64 content
+     */
+    private void insertBase64Image(final Long id, final String base64Content) {
+        jdbcTemplate.update("insert into images (id, base64_image, reference_count) values (?, ?, 0)", id, base64Content);
+    }
+
+    /**
+     * Check that both legacy content columns of an image were cleared
+     * @param id The id of the image
+     */
+    private void assertLegacyContentCleared(final Long id) {
+        final Map<String, Object> row = jdbcTemplate.queryForMap("select content, base64_image from images where id = ?", id);
+
+        assertNull(row.get("content"));
+        assertNull(row.get("base64_image"));
+    }
+}